@@ -0,0 +1,84 @@
+package cn.vorbote.web.reactive;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.Charset;
+
+/**
+ * The reactive counterpart of {@code cn.vorbote.web.filter.CharacterEncodingFilter}. A reactive stack has no
+ * character encoding of its own, the charset parameter of {@code Content-Type} decides how text is decoded and
+ * declared, therefore this filter adds the configured charset to the {@code Content-Type} of the request and the
+ * response whenever it has none. An explicit charset is never overwritten.<br>
+ * The charsets are resolved once at construction, an unknown name fails fast.
+ *
+ * @author vorbote
+ */
+public class ReactiveCharacterEncodingFilter implements WebFilter {
+
+    private final Charset requestCharset;
+
+    private final Charset responseCharset;
+
+    /**
+     * Create a filter.
+     *
+     * @param requestEncoding  The encoding of requests, or {@code null} for {@code UTF-8}.
+     * @param responseEncoding The encoding of responses, or {@code null} for {@code UTF-8}.
+     * @throws java.nio.charset.UnsupportedCharsetException If an encoding is not supported.
+     */
+    public ReactiveCharacterEncodingFilter(String requestEncoding, String responseEncoding) {
+        this.requestCharset = Charset.forName(requestEncoding == null ? "UTF-8" : requestEncoding);
+        this.responseCharset = Charset.forName(responseEncoding == null ? "UTF-8" : responseEncoding);
+    }
+
+    /**
+     * Create a filter using {@code UTF-8} for both requests and responses.
+     */
+    public ReactiveCharacterEncodingFilter() {
+        this("UTF-8", "UTF-8");
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.beforeCommit(() -> {
+            HttpHeaders headers = response.getHeaders();
+            MediaType contentType = headers.getContentType();
+            if (contentType != null && contentType.getCharset() == null && isText(contentType)) {
+                headers.setContentType(new MediaType(contentType, responseCharset));
+            }
+            return Mono.empty();
+        });
+
+        ServerHttpRequest request = exchange.getRequest();
+        MediaType contentType = request.getHeaders().getContentType();
+        if (contentType == null || contentType.getCharset() != null || !isText(contentType)) {
+            return chain.filter(exchange);
+        }
+        MediaType withCharset = new MediaType(contentType, requestCharset);
+        return chain.filter(exchange.mutate()
+                .request(request.mutate().headers((headers) -> headers.setContentType(withCharset)).build())
+                .build());
+    }
+
+    /**
+     * Check whether the content is text, whose charset matters.
+     *
+     * @param contentType The content type.
+     * @return Value {@code true} if the content is text, or {@code false}.
+     */
+    private static boolean isText(MediaType contentType) {
+        String subtype = contentType.getSubtype();
+        return "text".equals(contentType.getType())
+                || MediaType.APPLICATION_FORM_URLENCODED.includes(contentType)
+                || "json".equals(subtype) || subtype.endsWith("+json")
+                || "xml".equals(subtype) || subtype.endsWith("+xml");
+    }
+}
@@ -0,0 +1,150 @@
+package cn.vorbote.web.reactive;
+
+import cn.vorbote.web.cors.CorsDecision;
+import cn.vorbote.web.cors.CorsPolicy;
+import cn.vorbote.web.cors.CorsRequestType;
+import cn.vorbote.web.cors.CorsRouteTable;
+import cn.vorbote.web.utils.PathPatternTrie;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * The reactive counterpart of {@code cn.vorbote.web.filter.CorsFilter}, sharing the same compiled
+ * {@link CorsPolicy policies} and {@link CorsRouteTable route tables}.<br>
+ * The filter never blocks: it only reads the request headers and writes the response headers. A preflight request is
+ * answered by completing with {@link Mono#empty()} without invoking the chain, the response is then committed by the
+ * web handler, therefore no publisher is created for it.
+ *
+ * @author vorbote
+ */
+@Slf4j
+public class ReactiveCorsFilter implements WebFilter {
+
+    /**
+     * The compiled snapshot of the configuration, replaced as a whole.
+     */
+    private volatile CorsRouteTable routeTable;
+
+    /**
+     * Create a filter applying one policy to every path.
+     *
+     * @param policy The policy.
+     */
+    public ReactiveCorsFilter(CorsPolicy policy) {
+        this(new CorsRouteTable(policy));
+    }
+
+    /**
+     * Create a filter applying policies scoped to path patterns.
+     *
+     * @param routeTable The route table.
+     */
+    public ReactiveCorsFilter(CorsRouteTable routeTable) {
+        this.routeTable = routeTable;
+    }
+
+    /**
+     * Get the route table currently in effect.
+     *
+     * @return The route table.
+     */
+    public CorsRouteTable getRouteTable() {
+        return routeTable;
+    }
+
+    /**
+     * Replace the route table, requests in flight keep the one they have read.
+     *
+     * @param routeTable The new route table.
+     */
+    public void setRouteTable(CorsRouteTable routeTable) {
+        this.routeTable = routeTable;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        HttpHeaders requestHeaders = request.getHeaders();
+        String origin = requestHeaders.getFirst(HttpHeaders.ORIGIN);
+        String requestMethod = requestHeaders.getFirst(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD);
+        CorsRequestType type = CorsRequestType.classify(origin, request.getMethodValue(), requestMethod);
+        if (type == CorsRequestType.NON_CORS) {
+            return chain.filter(exchange);
+        }
+
+        CorsRouteTable routeTable = this.routeTable;
+        CorsPolicy policy = routeTable.getRoutes().isEmpty()
+                ? routeTable.getDefaultPolicy() : routeTable.resolve(pathWithinApplication(request), 0);
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders responseHeaders = response.getHeaders();
+        String allowedOrigin = policy.resolveOrigin(origin);
+        if (CorsPolicy.isVaryByOrigin(allowedOrigin)) {
+            responseHeaders.add(HttpHeaders.VARY, HttpHeaders.ORIGIN);
+        }
+
+        if (type == CorsRequestType.PREFLIGHT) {
+            CorsDecision decision = policy.checkPreflight(origin, requestMethod,
+                    requestHeaders.getFirst(HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS));
+            if (decision != CorsDecision.ALLOWED) {
+                log.debug("Preflight request from [{}] rejected: {}", origin, decision);
+                response.setStatusCode(HttpStatus.FORBIDDEN);
+                return Mono.empty();
+            }
+            response.setStatusCode(HttpStatus.NO_CONTENT);
+            responseHeaders.add(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, allowedOrigin);
+            if (policy.isAllowCredentials()) {
+                responseHeaders.add(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, policy.getAllowCredentialsValue());
+            }
+            responseHeaders.add(HttpHeaders.ACCESS_CONTROL_ALLOW_METHODS, policy.getAllowMethodsValue());
+            if (!policy.getAllowHeadersValue().isEmpty()) {
+                responseHeaders.add(HttpHeaders.ACCESS_CONTROL_ALLOW_HEADERS, policy.getAllowHeadersValue());
+            }
+            if (policy.getMaxAgeValue() != null) {
+                responseHeaders.add(HttpHeaders.ACCESS_CONTROL_MAX_AGE, policy.getMaxAgeValue());
+            }
+            return Mono.empty();
+        }
+
+        if (!allowedOrigin.isEmpty()) {
+            responseHeaders.add(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, allowedOrigin);
+            if (policy.isAllowCredentials()) {
+                responseHeaders.add(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, policy.getAllowCredentialsValue());
+            }
+            if (!policy.getExposeHeadersValue().isEmpty()) {
+                responseHeaders.add(HttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS, policy.getExposeHeadersValue());
+            }
+        }
+        return chain.filter(exchange);
+    }
+
+    /**
+     * Get the path of a request within the application, decoded, stripped of path parameters and normalised: the raw
+     * path would let {@code /public/../admin} or {@code /public/%2e%2e/admin} match the policy of {@code /public}.
+     * The raw path is taken as it is unless it holds an escape, a path parameter or a dot-segment, so the common
+     * request allocates nothing.
+     *
+     * @param request The request.
+     * @return The path.
+     */
+    private static String pathWithinApplication(ServerHttpRequest request) {
+        PathContainer pathWithinApplication = request.getPath().pathWithinApplication();
+        String value = pathWithinApplication.value();
+        if (value.indexOf('%') < 0 && value.indexOf(';') < 0 && !value.contains("/.")) {
+            return value;
+        }
+        StringBuilder path = new StringBuilder(value.length());
+        for (PathContainer.Element element : pathWithinApplication.elements()) {
+            path.append(element instanceof PathContainer.PathSegment
+                    ? ((PathContainer.PathSegment) element).valueToMatch() : element.value());
+        }
+        return PathPatternTrie.normalize(path.toString());
+    }
+}
@@ -0,0 +1,253 @@
+package cn.vorbote.web.cache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A finished response kept by a {@link ResponseCache}: its status, content type, the headers set by the handler and
+ * its body, held on the heap or in the slabs of a {@link DirectBufferPool}.<br>
+ * The slabs of an off-heap body are reference counted: the cache holds one reference while the response is cached,
+ * a reader takes one with every lookup and gives it back with {@link #release()}, and the slabs return to the pool
+ * once the last reference is gone, so a response evicted while it is being replayed is never overwritten.
+ *
+ * @author vorbote
+ */
+public final class CachedResponse {
+
+    private static final int COPY_CHUNK_SIZE = 8192;
+
+    private final int status;
+
+    private final String contentType;
+
+    /**
+     * The headers as alternating names and values.
+     */
+    private final List<String> headers;
+
+    private final byte[] heapBody;
+
+    private final ByteBuffer[] directBody;
+
+    private final DirectBufferPool pool;
+
+    private final int bodyLength;
+
+    private final long createdAt;
+
+    private final long expiresAt;
+
+    private final int weight;
+
+    /**
+     * The references to the off-heap body.
+     */
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /**
+     * Create a cached response keeping its body on the heap.
+     *
+     * @param status      The status.
+     * @param contentType The content type, might be {@code null}.
+     * @param headers     The headers as alternating names and values.
+     * @param body        The body, copied.
+     * @param offset      The offset of the body.
+     * @param length      The length of the body.
+     * @param createdAt   When the response was produced, from {@link System#nanoTime()}.
+     * @param expiresAt   When the response expires, from {@link System#nanoTime()}.
+     */
+    public CachedResponse(int status, String contentType, List<String> headers, byte[] body, int offset, int length,
+                          long createdAt, long expiresAt) {
+        this(status, contentType, headers, copy(body, offset, length), null, null, length, createdAt, expiresAt,
+                weigh(headers, length));
+    }
+
+    private CachedResponse(int status, String contentType, List<String> headers, byte[] heapBody,
+                           ByteBuffer[] directBody, DirectBufferPool pool, int bodyLength, long createdAt,
+                           long expiresAt, int weight) {
+        this.status = status;
+        this.contentType = contentType;
+        this.headers = headers;
+        this.heapBody = heapBody;
+        this.directBody = directBody;
+        this.pool = pool;
+        this.bodyLength = bodyLength;
+        this.createdAt = createdAt;
+        this.expiresAt = expiresAt;
+        this.weight = weight;
+    }
+
+    /**
+     * Create a cached response keeping its body in the slabs of a pool. The slabs are taken and filled before the
+     * response is offered to the cache, without holding any of its locks.
+     *
+     * @param status      The status.
+     * @param contentType The content type, might be {@code null}.
+     * @param headers     The headers as alternating names and values.
+     * @param body        The body, copied.
+     * @param offset      The offset of the body.
+     * @param length      The length of the body.
+     * @param pool        The pool of the slabs.
+     * @param createdAt   When the response was produced, from {@link System#nanoTime()}.
+     * @param expiresAt   When the response expires, from {@link System#nanoTime()}.
+     * @return The response, or {@code null} if the pool has no room left for the body.
+     */
+    public static CachedResponse offHeap(int status, String contentType, List<String> headers, byte[] body,
+                                         int offset, int length, DirectBufferPool pool, long createdAt,
+                                         long expiresAt) {
+        ByteBuffer[] slabs = pool.acquire(length);
+        if (slabs == null) {
+            return null;
+        }
+        int position = offset;
+        int end = offset + length;
+        for (ByteBuffer slab : slabs) {
+            int count = Math.min(slab.remaining(), end - position);
+            slab.put(body, position, count).flip();
+            position += count;
+        }
+        int weight = weigh(headers, 0) + slabs.length * pool.getSlabSize();
+        return new CachedResponse(status, contentType, headers, null, slabs, pool, length, createdAt, expiresAt,
+                weight);
+    }
+
+    private static byte[] copy(byte[] body, int offset, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(body, offset, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * Get the number of bytes a response with its body on the heap accounts for in the cache, before creating it.
+     *
+     * @param headers    The headers as alternating names and values.
+     * @param bodyLength The length of the body.
+     * @return The weight in bytes.
+     */
+    public static int weigh(List<String> headers, int bodyLength) {
+        int weight = bodyLength + 64;
+        for (String header : headers) {
+            weight += header.length() * 2 + 16;
+        }
+        return weight;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Get the headers.
+     *
+     * @return The headers as alternating names and values.
+     */
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Get the length of the body.
+     *
+     * @return The length in bytes.
+     */
+    public int getBodyLength() {
+        return bodyLength;
+    }
+
+    /**
+     * Check whether the body is kept off the heap.
+     *
+     * @return Value {@code true} if the body is in direct buffers, or {@code false}.
+     */
+    public boolean isOffHeap() {
+        return directBody != null;
+    }
+
+    /**
+     * Write the body. The caller must hold a reference to the response.
+     *
+     * @param out The output stream.
+     * @throws IOException If the body cannot be written.
+     */
+    public void writeBody(OutputStream out) throws IOException {
+        if (heapBody != null) {
+            out.write(heapBody, 0, bodyLength);
+            return;
+        }
+        byte[] chunk = new byte[Math.min(Math.max(bodyLength, 1), COPY_CHUNK_SIZE)];
+        for (ByteBuffer slab : directBody) {
+            ByteBuffer view = slab.duplicate();
+            while (view.hasRemaining()) {
+                int count = Math.min(chunk.length, view.remaining());
+                view.get(chunk, 0, count);
+                out.write(chunk, 0, count);
+            }
+        }
+    }
+
+    /**
+     * Take a reference to the body.
+     *
+     * @return Value {@code true} if the reference has been taken, or {@code false} if the body has been released.
+     */
+    boolean retain() {
+        if (directBody == null) {
+            return true;
+        }
+        while (true) {
+            int count = references.get();
+            if (count <= 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Give back a reference to the body, obtained from {@link ResponseCache#get(String, long)} or held by the creator
+     * of a response the cache has refused. The slabs of an off-heap body return to their pool with the last one.
+     */
+    public void release() {
+        if (directBody != null && references.decrementAndGet() == 0) {
+            pool.release(directBody);
+        }
+    }
+
+    /**
+     * Get the number of bytes this response accounts for in the cache, whole slabs for an off-heap body.
+     *
+     * @return The weight in bytes.
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Get the age of the response.
+     *
+     * @param now The current time, from {@link System#nanoTime()}.
+     * @return The age in seconds.
+     */
+    public long getAgeSeconds(long now) {
+        return Math.max(0L, (now - createdAt) / 1_000_000_000L);
+    }
+
+    /**
+     * Check whether the response has expired.
+     *
+     * @param now The current time, from {@link System#nanoTime()}.
+     * @return Value {@code true} if the response must not be served anymore, or {@code false}.
+     */
+    public boolean isExpired(long now) {
+        return now - expiresAt >= 0;
+    }
+}
@@ -0,0 +1,115 @@
+package cn.vorbote.web.cache;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of fixed-size direct buffers (slabs) holding the bodies a {@link ResponseCache} keeps off the heap. A body
+ * spans as many slabs as it needs; the slabs of an evicted body go back to the pool and are reused, so the direct
+ * memory does not depend on the garbage collector running the cleaners of dropped buffers.<br>
+ * The pool never allocates more than its budget: once every slab is in use, a body is refused instead. Slabs are
+ * allocated lazily and without holding any lock, and are only freed by the garbage collector after {@link #clear()}.
+ *
+ * @author vorbote
+ */
+public final class DirectBufferPool {
+
+    /**
+     * The default size of a slab.
+     */
+    public static final int DEFAULT_SLAB_SIZE = 4096;
+
+    private final int slabSize;
+
+    private final int maxSlabs;
+
+    private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    /**
+     * Create a pool.
+     *
+     * @param maxBytes The budget of direct memory.
+     * @param slabSize The size of a slab.
+     * @throws IllegalArgumentException If the budget or the size is not positive.
+     */
+    public DirectBufferPool(long maxBytes, int slabSize) {
+        if (maxBytes <= 0 || slabSize <= 0) {
+            throw new IllegalArgumentException("The budget and the slab size of a pool must be positive, got "
+                    + maxBytes + " and " + slabSize);
+        }
+        this.slabSize = slabSize;
+        this.maxSlabs = (int) Math.min(Integer.MAX_VALUE, Math.max(1L, maxBytes / slabSize));
+    }
+
+    public int getSlabSize() {
+        return slabSize;
+    }
+
+    /**
+     * Get the number of slabs a body needs.
+     *
+     * @param length The length of the body.
+     * @return The number of slabs.
+     */
+    public int slabsFor(int length) {
+        return (int) (((long) length + slabSize - 1) / slabSize);
+    }
+
+    /**
+     * Take the slabs of a body, reusing released slabs first.
+     *
+     * @param length The length of the body.
+     * @return The cleared slabs, or {@code null} if the budget is exhausted.
+     */
+    public ByteBuffer[] acquire(int length) {
+        ByteBuffer[] slabs = new ByteBuffer[slabsFor(length)];
+        for (int i = 0; i < slabs.length; i++) {
+            ByteBuffer slab = free.poll();
+            if (slab == null) {
+                if (allocated.incrementAndGet() > maxSlabs) {
+                    allocated.decrementAndGet();
+                    release(slabs);
+                    return null;
+                }
+                slab = ByteBuffer.allocateDirect(slabSize);
+            }
+            slab.clear();
+            slabs[i] = slab;
+        }
+        return slabs;
+    }
+
+    /**
+     * Give slabs back to the pool.
+     *
+     * @param slabs The slabs, {@code null} elements are skipped.
+     */
+    public void release(ByteBuffer[] slabs) {
+        for (ByteBuffer slab : slabs) {
+            if (slab != null) {
+                free.offer(slab);
+            }
+        }
+    }
+
+    /**
+     * Drop the released slabs, so the garbage collector can free them.
+     */
+    public void clear() {
+        while (free.poll() != null) {
+            allocated.decrementAndGet();
+        }
+    }
+
+    /**
+     * Get the direct memory allocated by the pool, in use or not.
+     *
+     * @return The number of bytes.
+     */
+    public long getAllocatedBytes() {
+        return (long) allocated.get() * slabSize;
+    }
+}
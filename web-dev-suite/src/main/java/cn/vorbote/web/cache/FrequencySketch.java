@@ -0,0 +1,105 @@
+package cn.vorbote.web.cache;
+
+/**
+ * A count-min sketch of 4-bit counters estimating how often keys have been seen recently, the frequency filter of
+ * TinyLFU. Every key has one counter in each of four rows packed sixteen to a {@code long}; its frequency is the
+ * smallest of them. Once as many increments as ten times the width have been recorded, every counter is halved, so the
+ * estimates follow the recent popularity.<br>
+ * The sketch is not synchronized: a racing increment may be lost, which only makes an estimate slightly low.
+ *
+ * @author vorbote
+ */
+public final class FrequencySketch {
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+            0xcbf29ce484222325L};
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+
+    private final int tableMask;
+
+    private final int sampleSize;
+
+    private int additions;
+
+    /**
+     * Create a sketch.
+     *
+     * @param expectedEntries The number of entries the cache is expected to hold.
+     */
+    public FrequencySketch(int expectedEntries) {
+        int width = 16;
+        while (width < expectedEntries && width < (1 << 24)) {
+            width <<= 1;
+        }
+        this.table = new long[width];
+        this.tableMask = width - 1;
+        this.sampleSize = width * 10;
+    }
+
+    /**
+     * Estimate the frequency of a key.
+     *
+     * @param hash The hash of the key.
+     * @return The estimate, from {@code 0} to {@code 15}.
+     */
+    public int frequency(int hash) {
+        int frequency = 15;
+        for (int row = 0; row < 4; row++) {
+            long h = spread(hash, row);
+            int shift = counterShift(h);
+            frequency = Math.min(frequency, (int) ((table[index(h)] >>> shift) & 0xf));
+        }
+        return frequency;
+    }
+
+    /**
+     * Record an occurrence of a key.
+     *
+     * @param hash The hash of the key.
+     */
+    public void increment(int hash) {
+        boolean added = false;
+        for (int row = 0; row < 4; row++) {
+            long h = spread(hash, row);
+            int index = index(h);
+            int shift = counterShift(h);
+            long value = table[index];
+            if (((value >>> shift) & 0xf) < 15) {
+                table[index] = value + (1L << shift);
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Halve every counter.
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions >>>= 1;
+    }
+
+    private static long spread(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        return h ^ (h >>> 32);
+    }
+
+    private int index(long h) {
+        return (int) (h >>> 8) & tableMask;
+    }
+
+    /**
+     * The low bits of the spread hash pick one of the sixteen counters of a {@code long}.
+     */
+    private static int counterShift(long h) {
+        return (int) ((h & 0x3f) >>> 2 << 2);
+    }
+}
@@ -0,0 +1,242 @@
+package cn.vorbote.web.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A concurrent cache of {@link CachedResponse}s bounded by their total weight in bytes.<br>
+ * The cache is split into independently locked stripes, each holding an LRU list and an equal share of the budget.
+ * Every lookup and every candidate is recorded in a {@link FrequencySketch}; when a new response would need room, it
+ * is only admitted if it has been requested more often than the least recently used response it would evict
+ * (TinyLFU admission). A burst of one-off URLs therefore cannot flush the responses that are actually hot.<br>
+ * A response looked up is retained and must be {@link CachedResponse#release() released} by the caller; a response
+ * removed from the cache is released by it, see {@link CachedResponse} for the off-heap bodies this protects.
+ *
+ * @author vorbote
+ */
+public final class ResponseCache {
+
+    private static final int MAX_STRIPES = 16;
+
+    private final Stripe[] stripes;
+
+    private final int mask;
+
+    private final FrequencySketch sketch;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * Create a cache.
+     *
+     * @param maxBytes        The total budget in bytes.
+     * @param expectedEntries The number of responses the cache is expected to hold, sizing the frequency sketch.
+     * @throws IllegalArgumentException If the budget is not positive.
+     */
+    public ResponseCache(long maxBytes, int expectedEntries) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The budget of a response cache must be positive, got " + maxBytes);
+        }
+        int count = 1;
+        while (count < MAX_STRIPES && count < Runtime.getRuntime().availableProcessors()) {
+            count <<= 1;
+        }
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(Math.max(1L, maxBytes / count));
+        }
+        this.mask = count - 1;
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Get the largest response a stripe can hold.
+     *
+     * @return The weight in bytes.
+     */
+    public long getMaxEntryWeight() {
+        return stripes[0].capacity;
+    }
+
+    /**
+     * Look up a response.
+     *
+     * @param key The key.
+     * @param now The current time, from {@link System#nanoTime()}.
+     * @return The retained response, to be released once written, or {@code null} if none is cached or it has
+     * expired.
+     */
+    public CachedResponse get(String key, long now) {
+        int hash = hash(key);
+        Stripe stripe = stripes[hash & mask];
+        CachedResponse response;
+        synchronized (stripe) {
+            sketch.increment(hash);
+            response = stripe.entries.get(key);
+            if (response != null && response.isExpired(now)) {
+                stripe.entries.remove(key);
+                stripe.weight -= response.getWeight();
+                response.release();
+                response = null;
+            } else if (response != null) {
+                // A cached response holds a reference of the cache, so it cannot have been released yet.
+                response.retain();
+            }
+        }
+        (response != null ? hits : misses).increment();
+        return response;
+    }
+
+    /**
+     * Offer a response to the cache, which takes over the reference of the caller if it admits the response.
+     *
+     * @param key      The key.
+     * @param response The response.
+     * @return Value {@code true} if the response has been admitted, or {@code false} if the caller still has to
+     * release it.
+     */
+    public boolean put(String key, CachedResponse response) {
+        return put(key, response.getWeight(), () -> response);
+    }
+
+    /**
+     * Offer a response to the cache, the response is only created once it has been admitted, so a refused response
+     * costs no copy of its body. Meant for bodies on the heap, an off-heap body is better copied before.
+     *
+     * @param key      The key.
+     * @param weight   The weight of the response, see {@link CachedResponse#weigh(java.util.List, int)}.
+     * @param response The factory of the response, called under the lock of a stripe.
+     * @return Value {@code true} if the response has been admitted, or {@code false}.
+     */
+    public boolean put(String key, int weight, Supplier<CachedResponse> response) {
+        int hash = hash(key);
+        Stripe stripe = stripes[hash & mask];
+        if (weight > stripe.capacity) {
+            rejections.increment();
+            return false;
+        }
+        synchronized (stripe) {
+            CachedResponse previous = stripe.entries.remove(key);
+            if (previous != null) {
+                stripe.weight -= previous.getWeight();
+                previous.release();
+            }
+            if (stripe.weight + weight > stripe.capacity) {
+                Iterator<Map.Entry<String, CachedResponse>> iterator = stripe.entries.entrySet().iterator();
+                if (iterator.hasNext() && previous == null) {
+                    Map.Entry<String, CachedResponse> victim = iterator.next();
+                    if (sketch.frequency(hash) <= sketch.frequency(hash(victim.getKey()))) {
+                        rejections.increment();
+                        return false;
+                    }
+                    iterator = stripe.entries.entrySet().iterator();
+                }
+                while (stripe.weight + weight > stripe.capacity && iterator.hasNext()) {
+                    CachedResponse evicted = iterator.next().getValue();
+                    iterator.remove();
+                    stripe.weight -= evicted.getWeight();
+                    evicted.release();
+                    evictions.increment();
+                }
+            }
+            stripe.entries.put(key, response.get());
+            stripe.weight += weight;
+        }
+        return true;
+    }
+
+    /**
+     * Remove a response.
+     *
+     * @param key The key.
+     */
+    public void invalidate(String key) {
+        Stripe stripe = stripes[hash(key) & mask];
+        synchronized (stripe) {
+            CachedResponse previous = stripe.entries.remove(key);
+            if (previous != null) {
+                stripe.weight -= previous.getWeight();
+                previous.release();
+            }
+        }
+    }
+
+    /**
+     * Remove every response.
+     */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.entries.values().forEach(CachedResponse::release);
+                stripe.entries.clear();
+                stripe.weight = 0;
+            }
+        }
+    }
+
+    /**
+     * Get the total weight of the cached responses.
+     *
+     * @return The weight in bytes.
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                weight += stripe.weight;
+            }
+        }
+        return weight;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the number of responses refused by the admission policy or for their size.
+     *
+     * @return The number of responses.
+     */
+    public long getRejectionCount() {
+        return rejections.sum();
+    }
+
+    /**
+     * An LRU list with its own budget.
+     */
+    private static final class Stripe {
+
+        private final long capacity;
+
+        private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        private long weight;
+
+        private Stripe(long capacity) {
+            this.capacity = capacity;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package cn.vorbote.web.codec;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the {@code data} of a result in a binary format, the counterpart of {@link JsonDataEncoder} for
+ * {@link BinaryResultEncoder}.
+ *
+ * @author vorbote
+ */
+@FunctionalInterface
+public interface BinaryDataEncoder {
+
+    /**
+     * Write a value.
+     *
+     * @param data   The value, might be {@code null}.
+     * @param writer The writer.
+     * @throws IOException If the value cannot be written.
+     */
+    void encode(Object data, BinaryWriter writer) throws IOException;
+
+    /**
+     * Get the encoder of plain values, the same as {@link JsonDataEncoder#simple()}, except that a {@code byte[]} is
+     * written as a byte string.
+     *
+     * @return The encoder.
+     */
+    static BinaryDataEncoder simple() {
+        return BinaryDataEncoder::encodeSimple;
+    }
+
+    /**
+     * Write a plain value, see {@link #simple()}.
+     *
+     * @param data   The value, might be {@code null}.
+     * @param writer The writer.
+     * @throws IOException If the value cannot be written.
+     */
+    static void encodeSimple(Object data, BinaryWriter writer) throws IOException {
+        if (data == null) {
+            writer.writeNull();
+        } else if (data instanceof String) {
+            writer.writeString((String) data);
+        } else if (data instanceof Integer || data instanceof Long || data instanceof Short || data instanceof Byte) {
+            writer.writeLong(((Number) data).longValue());
+        } else if (data instanceof Double || data instanceof Float) {
+            writer.writeDouble(((Number) data).doubleValue());
+        } else if (data instanceof Number) {
+            writer.writeString(data.toString());
+        } else if (data instanceof Boolean) {
+            writer.writeBoolean((Boolean) data);
+        } else if (data instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) data;
+            writer.beginMap(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writer.writeString(String.valueOf(entry.getKey()));
+                encodeSimple(entry.getValue(), writer);
+            }
+        } else if (data instanceof Iterable) {
+            Collection<?> collection;
+            if (data instanceof Collection) {
+                collection = (Collection<?>) data;
+            } else {
+                List<Object> list = new ArrayList<>();
+                ((Iterable<?>) data).forEach(list::add);
+                collection = list;
+            }
+            writer.beginArray(collection.size());
+            for (Object element : collection) {
+                encodeSimple(element, writer);
+            }
+        } else if (data instanceof byte[]) {
+            writer.writeBinary((byte[]) data);
+        } else if (data.getClass().isArray()) {
+            int length = Array.getLength(data);
+            writer.beginArray(length);
+            for (int i = 0; i < length; i++) {
+                encodeSimple(Array.get(data, i), writer);
+            }
+        } else if (data instanceof Enum) {
+            writer.writeString(((Enum<?>) data).name());
+        } else {
+            writer.writeString(data.toString());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package cn.vorbote.web.codec;
+
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * The binary encodings of results, selected by the media type a client accepts.
+ *
+ * @author vorbote
+ */
+public enum BinaryFormat {
+
+    /**
+     * CBOR, RFC 8949.
+     */
+    CBOR("application/cbor") {
+        @Override
+        BinaryWriter newWriter(OutputStream out, int bufferSize) {
+            return new CborWriter(out, bufferSize);
+        }
+
+        @Override
+        public BinaryReader reader(byte[] bytes, int offset, int length) {
+            return new CborReader(bytes, offset, length);
+        }
+    },
+
+    /**
+     * MessagePack, also accepted under its unregistered media types.
+     */
+    MESSAGE_PACK("application/msgpack", "application/x-msgpack", "application/vnd.msgpack") {
+        @Override
+        BinaryWriter newWriter(OutputStream out, int bufferSize) {
+            return new MessagePackWriter(out, bufferSize);
+        }
+
+        @Override
+        public BinaryReader reader(byte[] bytes, int offset, int length) {
+            return new MessagePackReader(bytes, offset, length);
+        }
+    };
+
+    private final String[] mediaTypes;
+
+    BinaryFormat(String... mediaTypes) {
+        this.mediaTypes = mediaTypes;
+    }
+
+    /**
+     * Get the media type the results of this format are sent with.
+     *
+     * @return The media type.
+     */
+    public String getContentType() {
+        return mediaTypes[0];
+    }
+
+    /**
+     * Find the format of a media type.
+     *
+     * @param mediaType The media type, its parameters are ignored.
+     * @return The format, or {@code null} if the media type is not a binary format.
+     */
+    public static BinaryFormat forMediaType(String mediaType) {
+        if (mediaType == null) {
+            return null;
+        }
+        int end = mediaType.indexOf(';');
+        String type = (end < 0 ? mediaType : mediaType.substring(0, end)).trim().toLowerCase(Locale.ROOT);
+        for (BinaryFormat format : values()) {
+            for (String candidate : format.mediaTypes) {
+                if (candidate.equals(type)) {
+                    return format;
+                }
+            }
+        }
+        return null;
+    }
+
+    abstract BinaryWriter newWriter(OutputStream out, int bufferSize);
+
+    /**
+     * Create a writer streaming to an output stream.
+     *
+     * @param out The output stream.
+     * @return The writer.
+     */
+    public BinaryWriter streaming(OutputStream out) {
+        return newWriter(out, JsonWriter.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a writer accumulating the whole document in memory.
+     *
+     * @return The writer.
+     */
+    public BinaryWriter accumulating() {
+        return newWriter(null, JsonWriter.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a reader of encoded bytes.
+     *
+     * @param bytes  The bytes.
+     * @param offset The offset of the document.
+     * @param length The length of the document.
+     * @return The reader.
+     */
+    public abstract BinaryReader reader(byte[] bytes, int offset, int length);
+
+    /**
+     * Create a reader of encoded bytes.
+     *
+     * @param bytes The bytes.
+     * @return The reader.
+     */
+    public BinaryReader reader(byte[] bytes) {
+        return reader(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,133 @@
+package cn.vorbote.web.codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A reader of a binary encoding of the JSON data model, CBOR or MessagePack, see {@link BinaryFormat}. It turns the
+ * encoded values into plain Java values, with no reflection: {@code null}, {@link Boolean}, {@link Integer} or
+ * {@link Long}, {@link Double}, {@link String}, {@code byte[]}, {@link java.util.List} and
+ * {@link java.util.LinkedHashMap}.<br>
+ * Declared lengths are checked against the bytes left and nesting is bounded, so malformed input fails with an
+ * {@link IllegalArgumentException} instead of exhausting the memory or the stack.
+ *
+ * @author vorbote
+ */
+public abstract class BinaryReader {
+
+    /**
+     * The deepest nesting of maps and arrays accepted.
+     */
+    static final int MAX_DEPTH = 256;
+
+    private final byte[] bytes;
+
+    private int position;
+
+    private final int limit;
+
+    BinaryReader(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Read the next value.
+     *
+     * @return The value.
+     * @throws IllegalArgumentException If the input is malformed or truncated.
+     */
+    public final Object readValue() {
+        return readValue(0);
+    }
+
+    /**
+     * Read the next value, nested in some containers.
+     *
+     * @param depth The number of enclosing containers.
+     * @return The value.
+     */
+    abstract Object readValue(int depth);
+
+    /**
+     * Check whether every byte has been read.
+     *
+     * @return Value {@code true} if the input is exhausted, or {@code false}.
+     */
+    public final boolean isExhausted() {
+        return position >= limit;
+    }
+
+    final int readByte() {
+        if (position >= limit) {
+            throw new IllegalArgumentException("Truncated input at byte " + position);
+        }
+        return bytes[position++] & 0xff;
+    }
+
+    final long readBigEndian(int length) {
+        require(length);
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = value << 8 | (bytes[position++] & 0xff);
+        }
+        return value;
+    }
+
+    final String readUtf8(long length) {
+        int count = require(length);
+        String value = new String(bytes, position, count, StandardCharsets.UTF_8);
+        position += count;
+        return value;
+    }
+
+    final byte[] readBytes(long length) {
+        int count = require(length);
+        byte[] value = new byte[count];
+        System.arraycopy(bytes, position, value, 0, count);
+        position += count;
+        return value;
+    }
+
+    /**
+     * Check that a container of some entries can fit in the bytes left, each entry taking one byte at least.
+     *
+     * @param size  The number of entries.
+     * @param depth The number of enclosing containers.
+     * @return The number of entries.
+     */
+    final int checkContainer(long size, int depth) {
+        if (depth >= MAX_DEPTH) {
+            throw new IllegalArgumentException("Nesting deeper than " + MAX_DEPTH);
+        }
+        return require(size);
+    }
+
+    private int require(long length) {
+        if (length < 0 || length > limit - position) {
+            throw new IllegalArgumentException("Length " + length + " exceeds the " + (limit - position)
+                    + " bytes left at byte " + position);
+        }
+        return (int) length;
+    }
+
+    /**
+     * Narrow an integer to an {@link Integer} when it fits.
+     *
+     * @param value The integer.
+     * @return The boxed integer.
+     */
+    static Object integer(long value) {
+        return value == (int) value ? (Object) (int) value : (Object) value;
+    }
+
+    /**
+     * Get the key of a map entry as a string.
+     *
+     * @param key The decoded key.
+     * @return The string.
+     */
+    static String key(Object key) {
+        return key instanceof String ? (String) key : String.valueOf(key);
+    }
+}
@@ -0,0 +1,106 @@
+package cn.vorbote.web.codec;
+
+import cn.vorbote.web.model.ResponseResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Decodes a {@link ResponseResult} encoded by {@link BinaryResultEncoder}, for the Java clients of a service, with no
+ * reflection: the envelope is read field by field, its data as plain Java values (see {@link BinaryReader}) which a
+ * mapper function may turn into the type the client expects. The fields may come in any order.
+ *
+ * @author vorbote
+ */
+public final class BinaryResultDecoder {
+
+    private final BinaryFormat format;
+
+    /**
+     * Create a decoder.
+     *
+     * @param format The format.
+     */
+    public BinaryResultDecoder(BinaryFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * Get the decoder of the content type of a response.
+     *
+     * @param contentType The content type.
+     * @return The decoder, or {@code null} if the content type is not a binary format.
+     */
+    public static BinaryResultDecoder forContentType(String contentType) {
+        BinaryFormat format = BinaryFormat.forMediaType(contentType);
+        return format == null ? null : new BinaryResultDecoder(format);
+    }
+
+    public BinaryFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Decode a result, its data as plain values.
+     *
+     * @param bytes The encoded result.
+     * @return The result.
+     * @throws IllegalArgumentException If the bytes are not an encoded result.
+     */
+    public ResponseResult<Object> decode(byte[] bytes) {
+        return decode(bytes, Function.identity());
+    }
+
+    /**
+     * Decode a result.
+     *
+     * @param bytes      The encoded result.
+     * @param dataMapper The function turning the plain values of the data into the expected type.
+     * @param <T>        The type of the data.
+     * @return The result.
+     * @throws IllegalArgumentException If the bytes are not an encoded result.
+     */
+    public <T> ResponseResult<T> decode(byte[] bytes, Function<Object, ? extends T> dataMapper) {
+        BinaryReader reader = format.reader(bytes);
+        Object envelope = reader.readValue();
+        if (!(envelope instanceof Map)) {
+            throw new IllegalArgumentException("The envelope of a result must be a map");
+        }
+        if (!reader.isExhausted()) {
+            throw new IllegalArgumentException("Unexpected bytes after the envelope of a result");
+        }
+        Map<?, ?> fields = (Map<?, ?>) envelope;
+        Object code = fields.get("code");
+        Object timestamp = fields.get("timestamp");
+        Object message = fields.get("message");
+        if (!(code instanceof Number) || !(timestamp instanceof Number)) {
+            throw new IllegalArgumentException("The code and the timestamp of a result must be integers");
+        }
+        if (message != null && !(message instanceof String)) {
+            throw new IllegalArgumentException("The message of a result must be a string");
+        }
+        Object data = fields.get("data");
+        return new ResponseResult<>(((Number) code).intValue(), data == null ? null : dataMapper.apply(data),
+                ((Number) timestamp).longValue(), (String) message);
+    }
+
+    /**
+     * Decode a result read from a stream to its end, its data as plain values.
+     *
+     * @param in The stream, not closed.
+     * @return The result.
+     * @throws IOException              If the stream cannot be read.
+     * @throws IllegalArgumentException If the bytes are not an encoded result.
+     */
+    public ResponseResult<Object> decode(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        for (int count = in.read(chunk); count >= 0; count = in.read(chunk)) {
+            bytes.write(chunk, 0, count);
+        }
+        return decode(bytes.toByteArray());
+    }
+}
@@ -0,0 +1,118 @@
+package cn.vorbote.web.codec;
+
+import cn.vorbote.web.model.ResponseResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Encodes a {@link ResponseResult} in a {@link BinaryFormat}, through the same field-level model as
+ * {@link JsonResultEncoder}: the envelope is a map of the four fields in declaration order, whose header and keys are
+ * encoded once and copied as bytes, only the {@code data} is handed to the pluggable {@link BinaryDataEncoder}.<br>
+ * An encoder is immutable and thread-safe. {@link BinaryResultDecoder} reads the results back.
+ *
+ * @author vorbote
+ */
+public final class BinaryResultEncoder implements ResultEncoder {
+
+    private static final Map<BinaryFormat, BinaryResultEncoder> SIMPLE = new EnumMap<>(BinaryFormat.class);
+
+    static {
+        for (BinaryFormat format : BinaryFormat.values()) {
+            SIMPLE.put(format, new BinaryResultEncoder(format, BinaryDataEncoder.simple()));
+        }
+    }
+
+    private final BinaryFormat format;
+
+    private final BinaryDataEncoder dataEncoder;
+
+    /**
+     * The header of the envelope and the key of the code.
+     */
+    private final byte[] code;
+
+    private final byte[] data;
+
+    private final byte[] timestamp;
+
+    private final byte[] message;
+
+    /**
+     * Create an encoder.
+     *
+     * @param format      The format.
+     * @param dataEncoder The encoder of the data.
+     */
+    public BinaryResultEncoder(BinaryFormat format, BinaryDataEncoder dataEncoder) {
+        this.format = format;
+        this.dataEncoder = dataEncoder;
+        try {
+            this.code = format.accumulating().beginMap(4).writeString("code").toByteArray();
+            this.data = format.accumulating().writeString("data").toByteArray();
+            this.timestamp = format.accumulating().writeString("timestamp").toByteArray();
+            this.message = format.accumulating().writeString("message").toByteArray();
+        } catch (IOException e) {
+            // An accumulating writer has no stream to fail on.
+            throw new IllegalStateException("Failed to encode the keys of the envelope", e);
+        }
+    }
+
+    /**
+     * Get the encoder of a format writing the data with {@link BinaryDataEncoder#simple()}.
+     *
+     * @param format The format.
+     * @return The encoder.
+     */
+    public static BinaryResultEncoder of(BinaryFormat format) {
+        return SIMPLE.get(format);
+    }
+
+    public BinaryFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public String getContentType() {
+        return format.getContentType();
+    }
+
+    /**
+     * Write a result.
+     *
+     * @param result The result.
+     * @param writer The writer, of the format of this encoder.
+     * @throws IOException If the result cannot be written.
+     */
+    public void encode(ResponseResult<?> result, BinaryWriter writer) throws IOException {
+        writer.writeRaw(code).writeLong(result.code()).writeRaw(data);
+        dataEncoder.encode(result.data(), writer);
+        writer.writeRaw(timestamp).writeLong(result.timestamp()).writeRaw(message);
+        if (result.message() == null) {
+            writer.writeNull();
+        } else {
+            writer.writeString(result.message());
+        }
+    }
+
+    @Override
+    public void encode(ResponseResult<?> result, OutputStream out) throws IOException {
+        BinaryWriter writer = format.streaming(out);
+        encode(result, writer);
+        writer.flush();
+    }
+
+    @Override
+    public byte[] toBytes(ResponseResult<?> result) {
+        BinaryWriter writer = format.accumulating();
+        try {
+            encode(result, writer);
+        } catch (IOException e) {
+            // An accumulating writer has no stream to fail on, only the data encoder could.
+            throw new IllegalStateException("Failed to encode the data of a result", e);
+        }
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,230 @@
+package cn.vorbote.web.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A writer of a binary encoding of the JSON data model, CBOR or MessagePack, see {@link BinaryFormat}. Like
+ * {@link JsonWriter} it writes straight into a byte buffer, streaming it to an {@link OutputStream} whenever it fills
+ * up or accumulating the whole document, and it does not track the structure: maps and arrays are announced with
+ * their number of entries, then their entries are written.<br>
+ * A writer is not thread-safe and is meant to live for a single document.
+ *
+ * @author vorbote
+ */
+public abstract class BinaryWriter {
+
+    /**
+     * The stream the buffer is written to, or {@code null} if the document is accumulated.
+     */
+    private final OutputStream out;
+
+    private byte[] buffer;
+
+    private int position;
+
+    BinaryWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+    }
+
+    /**
+     * Start a map.
+     *
+     * @param size The number of entries, each written as a key then a value.
+     * @return The writer itself.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    public abstract BinaryWriter beginMap(int size) throws IOException;
+
+    /**
+     * Start an array.
+     *
+     * @param size The number of elements.
+     * @return The writer itself.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    public abstract BinaryWriter beginArray(int size) throws IOException;
+
+    public abstract BinaryWriter writeNull() throws IOException;
+
+    public abstract BinaryWriter writeBoolean(boolean value) throws IOException;
+
+    /**
+     * Write an integer in its shortest form.
+     *
+     * @param value The integer.
+     * @return The writer itself.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    public abstract BinaryWriter writeLong(long value) throws IOException;
+
+    /**
+     * Write a floating point number as a 64-bit float.
+     *
+     * @param value The number.
+     * @return The writer itself.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    public abstract BinaryWriter writeDouble(double value) throws IOException;
+
+    /**
+     * Write a string, encoded to UTF-8.
+     *
+     * @param value The string.
+     * @return The writer itself.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    public abstract BinaryWriter writeString(CharSequence value) throws IOException;
+
+    /**
+     * Write a byte string.
+     *
+     * @param value The bytes.
+     * @return The writer itself.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    public abstract BinaryWriter writeBinary(byte[] value) throws IOException;
+
+    /**
+     * Make room for some bytes, writing the buffer out or growing it.
+     *
+     * @param length The number of bytes.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    final void require(int length) throws IOException {
+        if (position + length <= buffer.length) {
+            return;
+        }
+        if (out != null) {
+            flush();
+            if (length <= buffer.length) {
+                return;
+            }
+        }
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + length));
+    }
+
+    final void put(int b) throws IOException {
+        if (position == buffer.length) {
+            require(1);
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    /**
+     * Put a big-endian integer of some bytes.
+     *
+     * @param value The integer.
+     * @param bytes The number of bytes.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    final void putBigEndian(long value, int bytes) throws IOException {
+        require(bytes);
+        for (int shift = (bytes - 1) << 3; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (value >>> shift);
+        }
+    }
+
+    /**
+     * Write bytes as is, e.g. a precomputed key.
+     *
+     * @param bytes The bytes.
+     * @return The writer itself.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    public final BinaryWriter writeRaw(byte[] bytes) throws IOException {
+        if (out != null && bytes.length > buffer.length) {
+            flush();
+            out.write(bytes);
+            return this;
+        }
+        require(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+        return this;
+    }
+
+    /**
+     * Get the length of a string once encoded to UTF-8, a lone surrogate counting as the one byte of {@code ?}.
+     *
+     * @param value The string.
+     * @return The number of bytes.
+     */
+    static int utf8Length(CharSequence value) {
+        int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x800) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    bytes += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    bytes += 2;
+                }
+            } else if (c >= 0x80) {
+                bytes++;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Put the UTF-8 bytes of a string, as many as {@link #utf8Length(CharSequence)} tells.
+     *
+     * @param value The string.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    final void putUtf8(CharSequence value) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (buffer.length - position < 4) {
+                require(4);
+            }
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xc0 | c >> 6);
+                buffer[position++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xf0 | codePoint >> 18);
+                buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                buffer[position++] = (byte) (0x80 | codePoint & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                buffer[position++] = '?';
+            } else {
+                buffer[position++] = (byte) (0xe0 | c >> 12);
+                buffer[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+                buffer[position++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+    }
+
+    /**
+     * Write the buffered bytes to the output stream, without flushing the stream itself. Nothing happens for an
+     * accumulating writer.
+     *
+     * @throws IOException If the bytes cannot be written.
+     */
+    public final void flush() throws IOException {
+        if (out != null && position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    /**
+     * Get a copy of the bytes in the buffer.
+     *
+     * @return The bytes.
+     */
+    public final byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+}
@@ -0,0 +1,172 @@
+package cn.vorbote.web.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link BinaryReader} of CBOR (RFC 8949). Tags are skipped, indefinite-length arrays, maps and strings are
+ * supported, {@code undefined} reads as {@code null}.
+ *
+ * @author vorbote
+ */
+final class CborReader extends BinaryReader {
+
+    private static final int BREAK = 0xff;
+
+    CborReader(byte[] bytes, int offset, int length) {
+        super(bytes, offset, length);
+    }
+
+    @Override
+    Object readValue(int depth) {
+        int initial = readByte();
+        return readValue(initial, depth);
+    }
+
+    private Object readValue(int initial, int depth) {
+        // A tag only annotates the item following it, tags are skipped in a loop so a run of them costs no stack.
+        while (initial >>> 5 == 6) {
+            readArgument(initial & 0x1f);
+            initial = readByte();
+        }
+        int major = initial >>> 5;
+        int info = initial & 0x1f;
+        if (major == 7) {
+            return readSimple(info);
+        }
+        if (info == 31) {
+            return readIndefinite(major, depth);
+        }
+        long argument = readArgument(info);
+        switch (major) {
+            case 0:
+                if (argument < 0) {
+                    throw new IllegalArgumentException("Unsigned integer out of range");
+                }
+                return integer(argument);
+            case 1:
+                if (argument < 0) {
+                    throw new IllegalArgumentException("Negative integer out of range");
+                }
+                return integer(-1 - argument);
+            case 2:
+                return readBytes(argument);
+            case 3:
+                return readUtf8(argument);
+            case 4: {
+                int size = checkContainer(argument, depth);
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(depth + 1));
+                }
+                return list;
+            }
+            case 5: {
+                int size = checkContainer(argument, depth);
+                Map<String, Object> map = new LinkedHashMap<>(size * 4 / 3 + 1);
+                for (int i = 0; i < size; i++) {
+                    String key = key(readValue(depth + 1));
+                    map.put(key, readValue(depth + 1));
+                }
+                return map;
+            }
+            default:
+                throw new IllegalArgumentException("Unexpected major type " + major);
+        }
+    }
+
+    private long readArgument(int info) {
+        if (info < 24) {
+            return info;
+        }
+        switch (info) {
+            case 24:
+                return readBigEndian(1);
+            case 25:
+                return readBigEndian(2);
+            case 26:
+                return readBigEndian(4);
+            case 27:
+                return readBigEndian(8);
+            default:
+                throw new IllegalArgumentException("Reserved additional information " + info);
+        }
+    }
+
+    private Object readSimple(int info) {
+        switch (info) {
+            case 20:
+                return Boolean.FALSE;
+            case 21:
+                return Boolean.TRUE;
+            case 22:
+            case 23:
+                return null;
+            case 25:
+                return (double) halfToFloat((int) readBigEndian(2));
+            case 26:
+                return (double) Float.intBitsToFloat((int) readBigEndian(4));
+            case 27:
+                return Double.longBitsToDouble(readBigEndian(8));
+            default:
+                throw new IllegalArgumentException("Unsupported simple value " + info);
+        }
+    }
+
+    private Object readIndefinite(int major, int depth) {
+        switch (major) {
+            case 2:
+            case 3: {
+                ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+                for (int initial = readByte(); initial != BREAK; initial = readByte()) {
+                    if (initial >>> 5 != major || (initial & 0x1f) == 31) {
+                        throw new IllegalArgumentException("Malformed chunk of an indefinite-length string");
+                    }
+                    byte[] chunk = readBytes(readArgument(initial & 0x1f));
+                    chunks.write(chunk, 0, chunk.length);
+                }
+                return major == 2 ? chunks.toByteArray() : new String(chunks.toByteArray(), StandardCharsets.UTF_8);
+            }
+            case 4: {
+                checkContainer(0, depth);
+                List<Object> list = new ArrayList<>();
+                for (int initial = readByte(); initial != BREAK; initial = readByte()) {
+                    list.add(readValue(initial, depth + 1));
+                }
+                return list;
+            }
+            case 5: {
+                checkContainer(0, depth);
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int initial = readByte(); initial != BREAK; initial = readByte()) {
+                    String key = key(readValue(initial, depth + 1));
+                    map.put(key, readValue(depth + 1));
+                }
+                return map;
+            }
+            default:
+                throw new IllegalArgumentException("Indefinite length on major type " + major);
+        }
+    }
+
+    /**
+     * Convert an IEEE 754 half-precision float.
+     */
+    private static float halfToFloat(int half) {
+        int exponent = half >>> 10 & 0x1f;
+        int mantissa = half & 0x3ff;
+        float magnitude;
+        if (exponent == 0) {
+            magnitude = mantissa * 0x1p-24f;
+        } else if (exponent == 31) {
+            magnitude = mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+        } else {
+            magnitude = (mantissa + 1024) * (float) Math.pow(2, exponent - 25);
+        }
+        return (half & 0x8000) != 0 ? -magnitude : magnitude;
+    }
+}
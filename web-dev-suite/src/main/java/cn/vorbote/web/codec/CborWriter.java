@@ -0,0 +1,107 @@
+package cn.vorbote.web.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A {@link BinaryWriter} of CBOR (RFC 8949), with definite lengths and integers in their shortest form.
+ *
+ * @author vorbote
+ */
+final class CborWriter extends BinaryWriter {
+
+    private static final int UNSIGNED = 0;
+
+    private static final int NEGATIVE = 1 << 5;
+
+    private static final int BYTES = 2 << 5;
+
+    private static final int TEXT = 3 << 5;
+
+    private static final int ARRAY = 4 << 5;
+
+    private static final int MAP = 5 << 5;
+
+    CborWriter(OutputStream out, int bufferSize) {
+        super(out, bufferSize);
+    }
+
+    /**
+     * Put the head of an item: its major type and its argument in the shortest form.
+     *
+     * @param major    The major type, shifted.
+     * @param argument The argument, unsigned.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    private void head(int major, long argument) throws IOException {
+        if (argument >= 0 && argument < 24) {
+            put(major | (int) argument);
+        } else if (argument >= 0 && argument <= 0xff) {
+            put(major | 24);
+            put((int) argument);
+        } else if (argument >= 0 && argument <= 0xffff) {
+            put(major | 25);
+            putBigEndian(argument, 2);
+        } else if (argument >= 0 && argument <= 0xffffffffL) {
+            put(major | 26);
+            putBigEndian(argument, 4);
+        } else {
+            put(major | 27);
+            putBigEndian(argument, 8);
+        }
+    }
+
+    @Override
+    public BinaryWriter beginMap(int size) throws IOException {
+        head(MAP, size);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter beginArray(int size) throws IOException {
+        head(ARRAY, size);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter writeNull() throws IOException {
+        put(0xf6);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter writeBoolean(boolean value) throws IOException {
+        put(value ? 0xf5 : 0xf4);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter writeLong(long value) throws IOException {
+        if (value >= 0) {
+            head(UNSIGNED, value);
+        } else {
+            head(NEGATIVE, -1 - value);
+        }
+        return this;
+    }
+
+    @Override
+    public BinaryWriter writeDouble(double value) throws IOException {
+        put(0xfb);
+        putBigEndian(Double.doubleToLongBits(value), 8);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter writeString(CharSequence value) throws IOException {
+        head(TEXT, utf8Length(value));
+        putUtf8(value);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter writeBinary(byte[] value) throws IOException {
+        head(BYTES, value.length);
+        return writeRaw(value);
+    }
+}
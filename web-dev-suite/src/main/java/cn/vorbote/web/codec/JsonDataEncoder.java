@@ -0,0 +1,95 @@
+package cn.vorbote.web.codec;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.Map;
+
+/**
+ * Writes the {@code data} of a result, the only part of the envelope whose shape is not known beforehand. An
+ * application plugs in its own encoder for its payloads, e.g. one generated per type or backed by its JSON mapper;
+ * the envelope around it is still written by {@link JsonResultEncoder}.
+ *
+ * @author vorbote
+ */
+@FunctionalInterface
+public interface JsonDataEncoder {
+
+    /**
+     * Write a value.
+     *
+     * @param data   The value, might be {@code null}.
+     * @param writer The writer.
+     * @throws IOException If the value cannot be written.
+     */
+    void encode(Object data, JsonWriter writer) throws IOException;
+
+    /**
+     * Get the encoder of plain values: {@code null}, numbers, booleans, strings, chars and enums, and maps, iterables
+     * and arrays of them. Any other object is written as the string of its {@link Object#toString()}, no field is
+     * ever read reflectively.
+     *
+     * @return The encoder.
+     */
+    static JsonDataEncoder simple() {
+        return JsonDataEncoder::encodeSimple;
+    }
+
+    /**
+     * Write a plain value, see {@link #simple()}.
+     *
+     * @param data   The value, might be {@code null}.
+     * @param writer The writer.
+     * @throws IOException If the value cannot be written.
+     */
+    static void encodeSimple(Object data, JsonWriter writer) throws IOException {
+        if (data == null) {
+            writer.writeNull();
+        } else if (data instanceof String) {
+            writer.writeString((String) data);
+        } else if (data instanceof Integer || data instanceof Long || data instanceof Short || data instanceof Byte) {
+            writer.writeLong(((Number) data).longValue());
+        } else if (data instanceof Double || data instanceof Float) {
+            writer.writeDouble(((Number) data).doubleValue());
+        } else if (data instanceof Number) {
+            writer.writeAscii(data.toString());
+        } else if (data instanceof Boolean) {
+            writer.writeBoolean((Boolean) data);
+        } else if (data instanceof Map) {
+            writer.beginObject();
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) data).entrySet()) {
+                if (!first) {
+                    writer.writeSeparator();
+                }
+                first = false;
+                writer.writeName(String.valueOf(entry.getKey()));
+                encodeSimple(entry.getValue(), writer);
+            }
+            writer.endObject();
+        } else if (data instanceof Iterable) {
+            writer.beginArray();
+            boolean first = true;
+            for (Object element : (Iterable<?>) data) {
+                if (!first) {
+                    writer.writeSeparator();
+                }
+                first = false;
+                encodeSimple(element, writer);
+            }
+            writer.endArray();
+        } else if (data.getClass().isArray()) {
+            writer.beginArray();
+            for (int i = 0, length = Array.getLength(data); i < length; i++) {
+                if (i > 0) {
+                    writer.writeSeparator();
+                }
+                encodeSimple(Array.get(data, i), writer);
+            }
+            writer.endArray();
+        } else if (data instanceof Enum) {
+            writer.writeString(((Enum<?>) data).name());
+        } else {
+            writer.writeString(data.toString());
+        }
+    }
+}
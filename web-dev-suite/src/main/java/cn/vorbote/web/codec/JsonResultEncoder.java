@@ -0,0 +1,206 @@
+package cn.vorbote.web.codec;
+
+import cn.vorbote.web.model.ResponseResult;
+import cn.vorbote.web.model.StreamingResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+
+/**
+ * Encodes a {@link ResponseResult} as JSON without a general purpose mapper. The envelope always has the same four
+ * fields in declaration order ({@code code}, {@code data}, {@code timestamp}, {@code message}), so their names are
+ * encoded once, with their quotes, colons and separators, and copied as bytes; the numbers and the message go through
+ * {@link JsonWriter}, only the {@code data} is handed to the pluggable {@link JsonDataEncoder}.<br>
+ * An encoder is immutable and thread-safe.
+ *
+ * @author vorbote
+ */
+public final class JsonResultEncoder implements ResultEncoder {
+
+    /**
+     * The content type of the encoded results.
+     */
+    public static final String CONTENT_TYPE = "application/json;charset=UTF-8";
+
+    private static final byte[] CODE = bytes("{\"code\":");
+
+    private static final byte[] DATA = bytes(",\"data\":");
+
+    private static final byte[] TIMESTAMP = bytes(",\"timestamp\":");
+
+    private static final byte[] MESSAGE = bytes(",\"message\":");
+
+    private static final byte[] STREAM_DATA = bytes("{\"data\":[");
+
+    private static final byte[] STREAM_TIMESTAMP = bytes("],\"timestamp\":");
+
+    private static final byte[] STREAM_CODE = bytes(",\"code\":");
+
+    private static final JsonResultEncoder SIMPLE = new JsonResultEncoder(JsonDataEncoder.simple());
+
+    private final JsonDataEncoder dataEncoder;
+
+    /**
+     * Create an encoder.
+     *
+     * @param dataEncoder The encoder of the data.
+     */
+    public JsonResultEncoder(JsonDataEncoder dataEncoder) {
+        this.dataEncoder = dataEncoder;
+    }
+
+    /**
+     * Get the encoder writing the data with {@link JsonDataEncoder#simple()}.
+     *
+     * @return The encoder.
+     */
+    public static JsonResultEncoder simple() {
+        return SIMPLE;
+    }
+
+    @Override
+    public String getContentType() {
+        return CONTENT_TYPE;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write a result. A result backed by a {@link ResultTemplate} it still matches is copied from the template, only
+     * its timestamp is formatted.
+     *
+     * @param result The result.
+     * @param writer The writer.
+     * @throws IOException If the result cannot be written.
+     */
+    public void encode(ResponseResult<?> result, JsonWriter writer) throws IOException {
+        ResultTemplate template = result.template();
+        if (template != null && template.matches(result)) {
+            template.encode(result.timestamp(), writer);
+            return;
+        }
+        encodeHead(result, writer);
+        writer.writeLong(result.timestamp());
+        encodeTail(result, writer);
+    }
+
+    /**
+     * Write a result up to the value of its timestamp.
+     *
+     * @param result The result.
+     * @param writer The writer.
+     * @throws IOException If the result cannot be written.
+     */
+    void encodeHead(ResponseResult<?> result, JsonWriter writer) throws IOException {
+        writer.writeRaw(CODE).writeInt(result.code()).writeRaw(DATA);
+        dataEncoder.encode(result.data(), writer);
+        writer.writeRaw(TIMESTAMP);
+    }
+
+    /**
+     * Write a result after the value of its timestamp.
+     *
+     * @param result The result.
+     * @param writer The writer.
+     * @throws IOException If the result cannot be written.
+     */
+    void encodeTail(ResponseResult<?> result, JsonWriter writer) throws IOException {
+        writer.writeRaw(MESSAGE);
+        if (result.message() == null) {
+            writer.writeNull();
+        } else {
+            writer.writeString(result.message());
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Write a result to an output stream, e.g. the one of a servlet response. The stream is not flushed.
+     *
+     * @param result The result.
+     * @param out    The output stream.
+     * @throws IOException If the result cannot be written.
+     */
+    @Override
+    public void encode(ResponseResult<?> result, OutputStream out) throws IOException {
+        JsonWriter writer = JsonWriter.streaming(out);
+        encode(result, writer);
+        writer.flush();
+    }
+
+    /**
+     * Write a streaming result to an output stream, one element at a time, see {@link StreamingResult} for the layout.
+     * The stream is flushed after every batch of elements, so what is buffered stays bounded and the producer is only
+     * pulled as fast as the client reads: a blocking stream holds the writing thread, and with it the source, until
+     * the batch has gone out.<br>
+     * A failure of the source or of the encoding of an element is recorded with {@link StreamingResult#fail(Throwable)}
+     * and ends the data after the last complete element, unless that element has already been partly written out, in
+     * which case the failure is thrown. A failure of the output stream is thrown.
+     *
+     * @param result The streaming result.
+     * @param out    The output stream.
+     * @throws IOException If the result cannot be written.
+     */
+    public void encode(StreamingResult<?> result, OutputStream out) throws IOException {
+        JsonWriter writer = JsonWriter.streaming(out);
+        writer.writeRaw(STREAM_DATA);
+        int batchSize = result.batchSize();
+        int count = 0;
+        Iterator<?> source = result.source();
+        while (true) {
+            long mark = writer.mark();
+            try {
+                if (!source.hasNext()) {
+                    break;
+                }
+                Object element = source.next();
+                if (count > 0) {
+                    writer.writeSeparator();
+                }
+                dataEncoder.encode(element, writer);
+            } catch (RuntimeException e) {
+                if (!writer.rewind(mark)) {
+                    throw e;
+                }
+                result.fail(e);
+                break;
+            }
+            if (++count % batchSize == 0) {
+                writer.flush();
+                out.flush();
+            }
+        }
+        writer.writeRaw(STREAM_TIMESTAMP).writeLong(ResponseResult.currentTimestamp())
+                .writeRaw(STREAM_CODE).writeInt(result.code())
+                .writeRaw(MESSAGE);
+        if (result.message() == null) {
+            writer.writeNull();
+        } else {
+            writer.writeString(result.message());
+        }
+        writer.endObject();
+        writer.flush();
+    }
+
+    /**
+     * Encode a result to bytes.
+     *
+     * @param result The result.
+     * @return The UTF-8 bytes of the JSON document.
+     */
+    @Override
+    public byte[] toBytes(ResponseResult<?> result) {
+        JsonWriter writer = JsonWriter.accumulating();
+        try {
+            encode(result, writer);
+        } catch (IOException e) {
+            // An accumulating writer has no stream to fail on, only the data encoder could.
+            throw new IllegalStateException("Failed to encode the data of a result", e);
+        }
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,465 @@
+package cn.vorbote.web.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A minimal JSON writer producing UTF-8 bytes straight into a byte buffer, with no intermediate {@link String}, no
+ * tree and no reflection. It either streams to an {@link OutputStream}, writing the buffer out whenever it fills up,
+ * or accumulates the whole document, e.g. to know its length before sending it.<br>
+ * The writer does not track the structure: the caller writes the separators, which is what an encoder of a fixed
+ * shape does best. Integers are formatted two digits at a time from lookup tables, strings are escaped per char from
+ * a lookup table.<br>
+ * A writer is not thread-safe and is meant to live for a single document.
+ *
+ * @author vorbote
+ */
+public final class JsonWriter {
+
+    /**
+     * The default size of the buffer.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 2048;
+
+    private static final byte[] DIGIT_TENS = new byte[100];
+
+    private static final byte[] DIGIT_ONES = new byte[100];
+
+    /**
+     * The escape sequences of the ASCII chars, {@code null} for chars written as is.
+     */
+    private static final byte[][] ESCAPES = new byte[128][];
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+
+    static {
+        for (int i = 0; i < 100; i++) {
+            DIGIT_TENS[i] = (byte) ('0' + i / 10);
+            DIGIT_ONES[i] = (byte) ('0' + i % 10);
+        }
+        for (int c = 0; c < 0x20; c++) {
+            ESCAPES[c] = new byte[]{'\\', 'u', '0', '0', HEX[c >> 4], HEX[c & 0xf]};
+        }
+        ESCAPES['"'] = new byte[]{'\\', '"'};
+        ESCAPES['\\'] = new byte[]{'\\', '\\'};
+        ESCAPES['\n'] = new byte[]{'\\', 'n'};
+        ESCAPES['\r'] = new byte[]{'\\', 'r'};
+        ESCAPES['\t'] = new byte[]{'\\', 't'};
+        ESCAPES['\b'] = new byte[]{'\\', 'b'};
+        ESCAPES['\f'] = new byte[]{'\\', 'f'};
+    }
+
+    /**
+     * The stream the buffer is written to, or {@code null} if the document is accumulated.
+     */
+    private final OutputStream out;
+
+    private byte[] buffer;
+
+    private int position;
+
+    /**
+     * The number of bytes written out to the stream so far.
+     */
+    private long written;
+
+    private JsonWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+    }
+
+    /**
+     * Create a writer streaming to an output stream.
+     *
+     * @param out The output stream.
+     * @return The writer.
+     */
+    public static JsonWriter streaming(OutputStream out) {
+        return new JsonWriter(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a writer streaming to an output stream.
+     *
+     * @param out        The output stream.
+     * @param bufferSize The size of the buffer.
+     * @return The writer.
+     */
+    public static JsonWriter streaming(OutputStream out, int bufferSize) {
+        return new JsonWriter(out, bufferSize);
+    }
+
+    /**
+     * Create a writer accumulating the whole document in memory.
+     *
+     * @return The writer.
+     */
+    public static JsonWriter accumulating() {
+        return new JsonWriter(null, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Make room for some bytes, writing the buffer out or growing it.
+     *
+     * @param length The number of bytes.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    private void require(int length) throws IOException {
+        if (position + length <= buffer.length) {
+            return;
+        }
+        if (out != null) {
+            flush();
+            if (length <= buffer.length) {
+                return;
+            }
+        }
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + length));
+    }
+
+    /**
+     * Write a byte as is, typically a structural char of JSON.
+     *
+     * @param b The byte.
+     * @return The writer itself.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    public JsonWriter writeByte(int b) throws IOException {
+        if (position == buffer.length) {
+            require(1);
+        }
+        buffer[position++] = (byte) b;
+        return this;
+    }
+
+    /**
+     * Write bytes as is, e.g. a precomputed field name.
+     *
+     * @param bytes The bytes.
+     * @return The writer itself.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    public JsonWriter writeRaw(byte[] bytes) throws IOException {
+        return writeRaw(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Write bytes as is, e.g. a document encoded beforehand.
+     *
+     * @param bytes  The bytes.
+     * @param offset The offset of the bytes.
+     * @param length The number of the bytes.
+     * @return The writer itself.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    public JsonWriter writeRaw(byte[] bytes, int offset, int length) throws IOException {
+        if (out != null && length > buffer.length) {
+            flush();
+            out.write(bytes, offset, length);
+            written += length;
+            return this;
+        }
+        require(length);
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+        return this;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return writeByte('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return writeByte('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return writeByte('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return writeByte(']');
+    }
+
+    /**
+     * Write the separator of two values.
+     *
+     * @return The writer itself.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    public JsonWriter writeSeparator() throws IOException {
+        return writeByte(',');
+    }
+
+    /**
+     * Write the name of a member followed by its colon.
+     *
+     * @param name The name.
+     * @return The writer itself.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    public JsonWriter writeName(CharSequence name) throws IOException {
+        writeString(name);
+        return writeByte(':');
+    }
+
+    public JsonWriter writeNull() throws IOException {
+        return writeRaw(NULL);
+    }
+
+    public JsonWriter writeBoolean(boolean value) throws IOException {
+        return writeRaw(value ? TRUE : FALSE);
+    }
+
+    /**
+     * Write an integer.
+     *
+     * @param value The integer.
+     * @return The writer itself.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    public JsonWriter writeInt(int value) throws IOException {
+        return writeLong(value);
+    }
+
+    /**
+     * Write an integer, two digits at a time.
+     *
+     * @param value The integer.
+     * @return The writer itself.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    public JsonWriter writeLong(long value) throws IOException {
+        require(20);
+        position = putLong(buffer, position, value);
+        return this;
+    }
+
+    /**
+     * Get the number of bytes of an integer in decimal.
+     *
+     * @param value The integer.
+     * @return The number of bytes, including the sign.
+     */
+    static int sizeOf(long value) {
+        if (value == Long.MIN_VALUE) {
+            return MIN_LONG.length;
+        }
+        return value < 0 ? digits(-value) + 1 : digits(value);
+    }
+
+    /**
+     * Put an integer in decimal into an array, two digits at a time.
+     *
+     * @param bytes    The array, with room for {@link #sizeOf(long)} bytes.
+     * @param position The position to put the integer at.
+     * @param value    The integer.
+     * @return The position after the integer.
+     */
+    static int putLong(byte[] bytes, int position, long value) {
+        if (value == Long.MIN_VALUE) {
+            System.arraycopy(MIN_LONG, 0, bytes, position, MIN_LONG.length);
+            return position + MIN_LONG.length;
+        }
+        if (value < 0) {
+            bytes[position++] = '-';
+            value = -value;
+        }
+        int end = position + digits(value);
+        int i = end;
+        while (value >= 100) {
+            int pair = (int) (value % 100);
+            value /= 100;
+            bytes[--i] = DIGIT_ONES[pair];
+            bytes[--i] = DIGIT_TENS[pair];
+        }
+        int pair = (int) value;
+        bytes[--i] = DIGIT_ONES[pair];
+        if (pair >= 10) {
+            bytes[--i] = DIGIT_TENS[pair];
+        }
+        return end;
+    }
+
+    /**
+     * Count the digits of a non-negative integer.
+     */
+    private static int digits(long value) {
+        long bound = 10;
+        for (int digits = 1; digits < 19; digits++) {
+            if (value < bound) {
+                return digits;
+            }
+            bound *= 10;
+        }
+        return 19;
+    }
+
+    /**
+     * Write a floating point number, the non-finite ones as {@code null} since JSON has no literal for them.
+     *
+     * @param value The number.
+     * @return The writer itself.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    public JsonWriter writeDouble(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return writeNull();
+        }
+        if (value == (long) value && Math.abs(value) < 1e15) {
+            return writeLong((long) value);
+        }
+        return writeAscii(Double.toString(value));
+    }
+
+    /**
+     * Write a string known to hold only ASCII chars needing no escape, e.g. the text of a number.
+     *
+     * @param value The string.
+     * @return The writer itself.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    public JsonWriter writeAscii(String value) throws IOException {
+        int length = value.length();
+        require(length);
+        for (int i = 0; i < length; i++) {
+            buffer[position++] = (byte) value.charAt(i);
+        }
+        return this;
+    }
+
+    /**
+     * Write a quoted string, encoded to UTF-8 and escaped. A lone surrogate is written as {@code ?}, like the standard
+     * encoder does.
+     *
+     * @param value The string.
+     * @return The writer itself.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    public JsonWriter writeString(CharSequence value) throws IOException {
+        int length = value.length();
+        // Room for a short string at once, a longer one is written out piece by piece instead of growing the buffer.
+        require(Math.min(length + 2, buffer.length));
+        byte[] buffer = this.buffer;
+        int position = this.position;
+        buffer[position++] = '"';
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (buffer.length - position < 7) {
+                this.position = position;
+                require(7);
+                buffer = this.buffer;
+                position = this.position;
+            }
+            if (c < 0x80) {
+                byte[] escape = ESCAPES[c];
+                if (escape == null) {
+                    buffer[position++] = (byte) c;
+                } else {
+                    System.arraycopy(escape, 0, buffer, position, escape.length);
+                    position += escape.length;
+                }
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xc0 | c >> 6);
+                buffer[position++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xf0 | codePoint >> 18);
+                buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                buffer[position++] = (byte) (0x80 | codePoint & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                buffer[position++] = '?';
+            } else {
+                buffer[position++] = (byte) (0xe0 | c >> 12);
+                buffer[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+                buffer[position++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        if (position == buffer.length) {
+            this.position = position;
+            require(1);
+            buffer = this.buffer;
+            position = this.position;
+        }
+        buffer[position++] = '"';
+        this.position = position;
+        return this;
+    }
+
+    /**
+     * Write the buffered bytes to the output stream, without flushing the stream itself, so a servlet response is not
+     * committed early. Nothing happens for an accumulating writer.
+     *
+     * @throws IOException If the bytes cannot be written.
+     */
+    public void flush() throws IOException {
+        if (out != null && position > 0) {
+            out.write(buffer, 0, position);
+            written += position;
+            position = 0;
+        }
+    }
+
+    /**
+     * Mark the current position in the document, e.g. before a value which might fail to encode.
+     *
+     * @return The mark.
+     * @see #rewind(long)
+     */
+    public long mark() {
+        return written + position;
+    }
+
+    /**
+     * Drop what has been written since a mark, if it has not been written out to the stream yet.
+     *
+     * @param mark The mark.
+     * @return Value {@code true} if the document is back at the mark, or {@code false} if it cannot be.
+     */
+    public boolean rewind(long mark) {
+        if (mark < written || mark > written + position) {
+            return false;
+        }
+        position = (int) (mark - written);
+        return true;
+    }
+
+    /**
+     * Get the number of bytes in the buffer, the length of the document for an accumulating writer.
+     *
+     * @return The number of bytes.
+     */
+    public int size() {
+        return position;
+    }
+
+    /**
+     * Get a copy of the bytes in the buffer.
+     *
+     * @return The bytes.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * Write the bytes in the buffer to an output stream, e.g. once the length of the document has been sent.
+     *
+     * @param outputStream The output stream.
+     * @throws IOException If the bytes cannot be written.
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(buffer, 0, position);
+    }
+}
@@ -0,0 +1,112 @@
+package cn.vorbote.web.codec;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link BinaryReader} of MessagePack. Extension types are not supported.
+ *
+ * @author vorbote
+ */
+final class MessagePackReader extends BinaryReader {
+
+    MessagePackReader(byte[] bytes, int offset, int length) {
+        super(bytes, offset, length);
+    }
+
+    @Override
+    Object readValue(int depth) {
+        int b = readByte();
+        if (b < 0x80) {
+            return b;
+        }
+        if (b >= 0xe0) {
+            return (int) (byte) b;
+        }
+        if (b < 0x90) {
+            return readMap(b & 0x0f, depth);
+        }
+        if (b < 0xa0) {
+            return readArray(b & 0x0f, depth);
+        }
+        if (b < 0xc0) {
+            return readUtf8(b & 0x1f);
+        }
+        switch (b) {
+            case 0xc0:
+                return null;
+            case 0xc2:
+                return Boolean.FALSE;
+            case 0xc3:
+                return Boolean.TRUE;
+            case 0xc4:
+                return readBytes(readBigEndian(1));
+            case 0xc5:
+                return readBytes(readBigEndian(2));
+            case 0xc6:
+                return readBytes(readBigEndian(4));
+            case 0xca:
+                return (double) Float.intBitsToFloat((int) readBigEndian(4));
+            case 0xcb:
+                return Double.longBitsToDouble(readBigEndian(8));
+            case 0xcc:
+                return (int) readBigEndian(1);
+            case 0xcd:
+                return (int) readBigEndian(2);
+            case 0xce:
+                return integer(readBigEndian(4));
+            case 0xcf: {
+                long value = readBigEndian(8);
+                if (value < 0) {
+                    throw new IllegalArgumentException("Unsigned integer out of range");
+                }
+                return integer(value);
+            }
+            case 0xd0:
+                return (int) (byte) readBigEndian(1);
+            case 0xd1:
+                return (int) (short) readBigEndian(2);
+            case 0xd2:
+                return (int) readBigEndian(4);
+            case 0xd3:
+                return integer(readBigEndian(8));
+            case 0xd9:
+                return readUtf8(readBigEndian(1));
+            case 0xda:
+                return readUtf8(readBigEndian(2));
+            case 0xdb:
+                return readUtf8(readBigEndian(4));
+            case 0xdc:
+                return readArray(readBigEndian(2), depth);
+            case 0xdd:
+                return readArray(readBigEndian(4), depth);
+            case 0xde:
+                return readMap(readBigEndian(2), depth);
+            case 0xdf:
+                return readMap(readBigEndian(4), depth);
+            default:
+                throw new IllegalArgumentException("Unsupported MessagePack type 0x" + Integer.toHexString(b));
+        }
+    }
+
+    private List<Object> readArray(long length, int depth) {
+        int size = checkContainer(length, depth);
+        List<Object> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(readValue(depth + 1));
+        }
+        return list;
+    }
+
+    private Map<String, Object> readMap(long length, int depth) {
+        int size = checkContainer(length, depth);
+        Map<String, Object> map = new LinkedHashMap<>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            String key = key(readValue(depth + 1));
+            map.put(key, readValue(depth + 1));
+        }
+        return map;
+    }
+}
@@ -0,0 +1,123 @@
+package cn.vorbote.web.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A {@link BinaryWriter} of MessagePack, with integers, strings, arrays and maps in their shortest form.
+ *
+ * @author vorbote
+ */
+final class MessagePackWriter extends BinaryWriter {
+
+    MessagePackWriter(OutputStream out, int bufferSize) {
+        super(out, bufferSize);
+    }
+
+    /**
+     * Put the head of a container or a string: its fix form when the size fits, else the 8 (strings and binaries
+     * only), 16 or 32-bit form.
+     *
+     * @param size     The size.
+     * @param fix      The fix form, or {@code -1} if none.
+     * @param fixLimit The exclusive limit of the fix form.
+     * @param head8    The 8-bit form, or {@code -1} if none.
+     * @param head16   The 16-bit form.
+     * @param head32   The 32-bit form.
+     * @throws IOException If the buffer cannot be written out.
+     */
+    private void head(int size, int fix, int fixLimit, int head8, int head16, int head32) throws IOException {
+        if (fix >= 0 && size < fixLimit) {
+            put(fix | size);
+        } else if (head8 >= 0 && size <= 0xff) {
+            put(head8);
+            put(size);
+        } else if (size <= 0xffff) {
+            put(head16);
+            putBigEndian(size, 2);
+        } else {
+            put(head32);
+            putBigEndian(size, 4);
+        }
+    }
+
+    @Override
+    public BinaryWriter beginMap(int size) throws IOException {
+        head(size, 0x80, 16, -1, 0xde, 0xdf);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter beginArray(int size) throws IOException {
+        head(size, 0x90, 16, -1, 0xdc, 0xdd);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter writeNull() throws IOException {
+        put(0xc0);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter writeBoolean(boolean value) throws IOException {
+        put(value ? 0xc3 : 0xc2);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter writeLong(long value) throws IOException {
+        if (value >= 0) {
+            if (value < 0x80) {
+                put((int) value);
+            } else if (value <= 0xff) {
+                put(0xcc);
+                put((int) value);
+            } else if (value <= 0xffff) {
+                put(0xcd);
+                putBigEndian(value, 2);
+            } else if (value <= 0xffffffffL) {
+                put(0xce);
+                putBigEndian(value, 4);
+            } else {
+                put(0xcf);
+                putBigEndian(value, 8);
+            }
+        } else if (value >= -32) {
+            put((int) value & 0xff);
+        } else if (value >= Byte.MIN_VALUE) {
+            put(0xd0);
+            put((int) value & 0xff);
+        } else if (value >= Short.MIN_VALUE) {
+            put(0xd1);
+            putBigEndian(value, 2);
+        } else if (value >= Integer.MIN_VALUE) {
+            put(0xd2);
+            putBigEndian(value, 4);
+        } else {
+            put(0xd3);
+            putBigEndian(value, 8);
+        }
+        return this;
+    }
+
+    @Override
+    public BinaryWriter writeDouble(double value) throws IOException {
+        put(0xcb);
+        putBigEndian(Double.doubleToLongBits(value), 8);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter writeString(CharSequence value) throws IOException {
+        head(utf8Length(value), 0xa0, 32, 0xd9, 0xda, 0xdb);
+        putUtf8(value);
+        return this;
+    }
+
+    @Override
+    public BinaryWriter writeBinary(byte[] value) throws IOException {
+        head(value.length, -1, 0, 0xc4, 0xc5, 0xc6);
+        return writeRaw(value);
+    }
+}
@@ -0,0 +1,84 @@
+package cn.vorbote.web.codec;
+
+import cn.vorbote.web.model.ResponseResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Encodes a {@link ResponseResult} in one format: JSON, see {@link JsonResultEncoder}, or a binary one, see
+ * {@link BinaryResultEncoder}.
+ *
+ * @author vorbote
+ */
+public interface ResultEncoder {
+
+    /**
+     * Get the content type of the encoded results.
+     *
+     * @return The content type.
+     */
+    String getContentType();
+
+    /**
+     * Write a result to an output stream. The stream is not flushed.
+     *
+     * @param result The result.
+     * @param out    The output stream.
+     * @throws IOException If the result cannot be written.
+     */
+    void encode(ResponseResult<?> result, OutputStream out) throws IOException;
+
+    /**
+     * Encode a result to bytes.
+     *
+     * @param result The result.
+     * @return The bytes.
+     */
+    byte[] toBytes(ResponseResult<?> result);
+
+    /**
+     * Choose the encoder of a request from its {@code Accept} header: the binary format with the highest quality, as
+     * long as it is preferred to JSON. JSON stays the default, so a browser accepting {@code *}{@code /*} still gets
+     * it, as does a request without the header.
+     *
+     * @param accept The {@code Accept} header, might be {@code null}.
+     * @return The encoder, with the simple data encoders.
+     */
+    static ResultEncoder negotiate(String accept) {
+        if (accept == null || accept.indexOf('/') < 0) {
+            return JsonResultEncoder.simple();
+        }
+        BinaryFormat best = null;
+        double bestQuality = 0;
+        double jsonQuality = 0;
+        for (String range : accept.split(",")) {
+            int parameters = range.indexOf(';');
+            String type = (parameters < 0 ? range : range.substring(0, parameters)).trim().toLowerCase(Locale.ROOT);
+            double quality = 1;
+            if (parameters >= 0) {
+                for (String parameter : range.substring(parameters + 1).split(";")) {
+                    String name = parameter.trim();
+                    if (name.startsWith("q=") || name.startsWith("Q=")) {
+                        try {
+                            quality = Double.parseDouble(name.substring(2).trim());
+                        } catch (NumberFormatException e) {
+                            quality = 0;
+                        }
+                    }
+                }
+            }
+            BinaryFormat format = BinaryFormat.forMediaType(type);
+            if (format != null) {
+                if (quality > bestQuality) {
+                    best = format;
+                    bestQuality = quality;
+                }
+            } else if ("application/json".equals(type) || "application/*".equals(type) || "*/*".equals(type)) {
+                jsonQuality = Math.max(jsonQuality, quality);
+            }
+        }
+        return best != null && bestQuality > jsonQuality ? BinaryResultEncoder.of(best) : JsonResultEncoder.simple();
+    }
+}
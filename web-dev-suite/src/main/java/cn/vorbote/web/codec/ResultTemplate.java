@@ -0,0 +1,202 @@
+package cn.vorbote.web.codec;
+
+import cn.vorbote.web.model.ResponseResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A constant {@link ResponseResult}, such as {@code ResponseResult.unauthorized("Token expired")}, encoded once into
+ * the bytes before and after its timestamp. Writing it again costs two array copies and the digits of the timestamp.
+ * <br>
+ * A template is created for the filters answering with their own constant result through {@link #of(ResponseResult)},
+ * or registered through {@link #register(ResponseResult)}: the static factories of {@link ResponseResult} then back
+ * the results with the same code and message with the template, and {@link JsonResultEncoder} writes them from it as
+ * long as they are not modified. Only results without data can be templates, their code and message identify them.
+ *
+ * @author vorbote
+ */
+public final class ResultTemplate {
+
+    /**
+     * The registered templates by message, each message holding the templates of its codes.
+     */
+    private static final Map<String, ResultTemplate[]> REGISTRY = new ConcurrentHashMap<>();
+
+    private final int code;
+
+    private final String message;
+
+    /**
+     * The bytes before the timestamp.
+     */
+    private final byte[] head;
+
+    /**
+     * The bytes after the timestamp.
+     */
+    private final byte[] tail;
+
+    private ResultTemplate(ResponseResult<?> result) {
+        if (result.data() != null) {
+            throw new IllegalArgumentException("A result with data cannot be a template");
+        }
+        this.code = result.code();
+        this.message = result.message();
+        JsonResultEncoder encoder = JsonResultEncoder.simple();
+        try {
+            JsonWriter writer = JsonWriter.accumulating();
+            encoder.encodeHead(result, writer);
+            this.head = writer.toByteArray();
+            writer = JsonWriter.accumulating();
+            encoder.encodeTail(result, writer);
+            this.tail = writer.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode a template", e);
+        }
+    }
+
+    /**
+     * Create a template, without registering it.
+     *
+     * @param result The constant result, its timestamp is ignored.
+     * @return The template.
+     * @throws IllegalArgumentException If the result has data.
+     */
+    public static ResultTemplate of(ResponseResult<?> result) {
+        return new ResultTemplate(result);
+    }
+
+    /**
+     * Register a template for the results with the code and the message of a result, replacing a template with the
+     * same code and message.
+     *
+     * @param result The constant result, its timestamp is ignored.
+     * @return The template.
+     * @throws IllegalArgumentException If the result has data.
+     */
+    public static ResultTemplate register(ResponseResult<?> result) {
+        ResultTemplate template = new ResultTemplate(result);
+        if (template.message == null) {
+            throw new IllegalArgumentException("A registered template must have a message");
+        }
+        REGISTRY.compute(template.message, (message, templates) -> {
+            if (templates == null) {
+                return new ResultTemplate[]{template};
+            }
+            for (int i = 0; i < templates.length; i++) {
+                if (templates[i].code == template.code) {
+                    ResultTemplate[] copy = templates.clone();
+                    copy[i] = template;
+                    return copy;
+                }
+            }
+            ResultTemplate[] copy = Arrays.copyOf(templates, templates.length + 1);
+            copy[templates.length] = template;
+            return copy;
+        });
+        return template;
+    }
+
+    /**
+     * Find the registered template of a code and a message.
+     *
+     * @param code    The code.
+     * @param message The message, might be {@code null}.
+     * @return The template, or {@code null} if none is registered.
+     */
+    public static ResultTemplate lookup(int code, String message) {
+        if (message == null || REGISTRY.isEmpty()) {
+            return null;
+        }
+        ResultTemplate[] templates = REGISTRY.get(message);
+        if (templates != null) {
+            for (ResultTemplate template : templates) {
+                if (template.code == code) {
+                    return template;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Forget every registered template. The results already backed by one are not affected.
+     */
+    public static void clearRegistry() {
+        REGISTRY.clear();
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Get the message, the very instance the results backed by this template must hold.
+     *
+     * @return The message.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Check whether a result still is the constant of this template: its code is the same, its message is the same
+     * instance and it has no data. A result modified after its creation no longer matches.
+     *
+     * @param result The result.
+     * @return Value {@code true} if the template encodes the result, or {@code false}.
+     */
+    public boolean matches(ResponseResult<?> result) {
+        return result.code() == code && result.message() == message && result.data() == null;
+    }
+
+    /**
+     * Get the length of the result with a timestamp.
+     *
+     * @param timestamp The timestamp.
+     * @return The number of bytes.
+     */
+    public int getLength(long timestamp) {
+        return head.length + JsonWriter.sizeOf(timestamp) + tail.length;
+    }
+
+    /**
+     * Encode the result with a timestamp.
+     *
+     * @param timestamp The timestamp.
+     * @return The UTF-8 bytes of the JSON document.
+     */
+    public byte[] toBytes(long timestamp) {
+        byte[] bytes = new byte[getLength(timestamp)];
+        System.arraycopy(head, 0, bytes, 0, head.length);
+        int position = JsonWriter.putLong(bytes, head.length, timestamp);
+        System.arraycopy(tail, 0, bytes, position, tail.length);
+        return bytes;
+    }
+
+    /**
+     * Write the result with a timestamp.
+     *
+     * @param timestamp The timestamp.
+     * @param writer    The writer.
+     * @throws IOException If the result cannot be written.
+     */
+    public void encode(long timestamp, JsonWriter writer) throws IOException {
+        writer.writeRaw(head).writeLong(timestamp).writeRaw(tail);
+    }
+
+    /**
+     * Write the result with a timestamp to an output stream.
+     *
+     * @param timestamp The timestamp.
+     * @param out       The output stream.
+     * @throws IOException If the result cannot be written.
+     */
+    public void write(long timestamp, OutputStream out) throws IOException {
+        out.write(toBytes(timestamp));
+    }
+}
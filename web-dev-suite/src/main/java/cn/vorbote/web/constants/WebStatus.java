@@ -236,6 +236,13 @@ public interface WebStatus {
      */
     int EXPECTATION_FAILED = 417;
 
+    /**
+     * Status code (429) indicating that the user has sent too many
+     * requests in a given amount of time, the <code><em>Retry-After</em></code>
+     * header tells how long to wait before making a new request.
+     */
+    int TOO_MANY_REQUESTS = 429;
+
     /**
      * Status code (500) indicating an error inside the HTTP server
      * which prevented it from fulfilling the request.
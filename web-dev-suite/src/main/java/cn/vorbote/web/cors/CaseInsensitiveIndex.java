@@ -0,0 +1,128 @@
+package cn.vorbote.web.cors;
+
+/**
+ * An open addressing hash table whose keys are compared case-insensitively. Lookups accept a region of any
+ * {@code String}, so that a caller can probe the table with a part of a header value without creating a substring.<br>
+ * The table is filled while a policy is being compiled and is only read afterwards, it is published safely through the
+ * final fields of its owner.
+ *
+ * @param <V> The type of the values.
+ * @author vorbote
+ */
+final class CaseInsensitiveIndex<V> {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+
+    private Object[] values = new Object[INITIAL_CAPACITY];
+
+    private int size;
+
+    /**
+     * Fold a character the same way {@link String#regionMatches(boolean, int, String, int, int)} does when it ignores
+     * case, therefore two keys that match each other always share the same hash.
+     *
+     * @param c The character.
+     * @return The folded character.
+     */
+    private static char fold(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static int hash(String text, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + fold(text.charAt(i));
+        }
+        // Spread the higher bits, the table index only uses the lower ones.
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Get the number of keys in this index.
+     *
+     * @return The number of keys.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Put a key and its value into this index, an existing value of an equal key will be replaced.
+     *
+     * @param key   The key.
+     * @param value The value.
+     */
+    void put(String key, V value) {
+        if ((size + 1) * 2 > keys.length) {
+            resize();
+        }
+        int mask = keys.length - 1;
+        int index = hash(key, 0, key.length()) & mask;
+        while (keys[index] != null) {
+            if (keys[index].equalsIgnoreCase(key)) {
+                values[index] = value;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        size++;
+    }
+
+    private void resize() {
+        String[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new String[oldKeys.length << 1];
+        values = new Object[oldKeys.length << 1];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                @SuppressWarnings("unchecked")
+                V value = (V) oldValues[i];
+                put(oldKeys[i], value);
+            }
+        }
+    }
+
+    /**
+     * Get the value of the key which equals the given region ignoring case.
+     *
+     * @param text The text containing the region.
+     * @param from The beginning index of the region, inclusive.
+     * @param to   The ending index of the region, exclusive.
+     * @return The value, or {@code null} if no key matches.
+     */
+    @SuppressWarnings("unchecked")
+    V get(String text, int from, int to) {
+        if (size == 0) {
+            return null;
+        }
+        int length = to - from;
+        int mask = keys.length - 1;
+        int index = hash(text, from, to) & mask;
+        String key;
+        while ((key = keys[index]) != null) {
+            if (key.length() == length && key.regionMatches(true, 0, text, from, length)) {
+                return (V) values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Get the value of the key which equals the given text ignoring case.
+     *
+     * @param text The text.
+     * @return The value, or {@code null} if no key matches.
+     */
+    V get(String text) {
+        return get(text, 0, text.length());
+    }
+}
@@ -0,0 +1,29 @@
+package cn.vorbote.web.cors;
+
+/**
+ * The outcome of checking a cross-origin request against a {@link CorsPolicy}.
+ *
+ * @author vorbote
+ */
+public enum CorsDecision {
+
+    /**
+     * The request is allowed.
+     */
+    ALLOWED,
+
+    /**
+     * The origin of the request is not allowed.
+     */
+    ORIGIN_NOT_ALLOWED,
+
+    /**
+     * The method requested by a preflight request is not allowed.
+     */
+    METHOD_NOT_ALLOWED,
+
+    /**
+     * At least one of the headers requested by a preflight request is not allowed.
+     */
+    HEADERS_NOT_ALLOWED
+}
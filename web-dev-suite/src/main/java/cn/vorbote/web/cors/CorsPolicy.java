@@ -0,0 +1,511 @@
+package cn.vorbote.web.cors;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, precompiled snapshot of a CORS configuration. All response header values are rendered once when the
+ * policy is compiled, therefore writing the CORS headers of a request never needs to build a {@code String}.<br>
+ * Created at 2026/10/17 09:12
+ *
+ * @author vorbote
+ */
+public final class CorsPolicy {
+
+    /**
+     * The value of max age which means {@code Access-Control-Max-Age} is not sent.
+     */
+    public static final long NO_MAX_AGE = -1;
+
+    /**
+     * The default number of seconds the result of a preflight request can be cached.
+     */
+    public static final long DEFAULT_MAX_AGE = 1800;
+
+    /**
+     * The default number of cached decisions of origins matched by the wildcard patterns.
+     */
+    public static final int DEFAULT_ORIGIN_CACHE_SIZE = 1024;
+
+    /**
+     * Methods allowed by every preflight request, according to the
+     * <a href="https://fetch.spec.whatwg.org/#cors-safelisted-method">Fetch Standard</a>.
+     */
+    private static final String[] SAFELISTED_METHODS = {"GET", "HEAD", "POST"};
+
+    /**
+     * Whether credentials are allowed.
+     */
+    private final boolean allowCredentials;
+
+    /**
+     * The rendered value of {@code Access-Control-Allow-Credentials}.
+     */
+    private final String allowCredentialsValue;
+
+    /**
+     * The configured origins.
+     */
+    private final String[] allowOrigin;
+
+    /**
+     * The origin answered to every request, or {@code null} if the request origin has to be matched.
+     */
+    private final String staticOrigin;
+
+    /**
+     * The matcher of the configured origins.
+     */
+    private final OriginMatcher originMatcher;
+
+    /**
+     * The cache of origins decided by the wildcard patterns, or {@code null} if not cached.
+     */
+    private final DecisionCache originCache;
+
+    /**
+     * The rendered value of {@code Access-Control-Allow-Methods}.
+     */
+    private final String allowMethodsValue;
+
+    /**
+     * The rendered value of {@code Access-Control-Allow-Headers}.
+     */
+    private final String allowHeadersValue;
+
+    /**
+     * The rendered value of {@code Access-Control-Expose-Headers}.
+     */
+    private final String exposeHeadersValue;
+
+    /**
+     * The allowed methods, including the safelisted ones.
+     */
+    private final CaseInsensitiveIndex<String> allowedMethods = new CaseInsensitiveIndex<>();
+
+    /**
+     * The allowed request headers.
+     */
+    private final CaseInsensitiveIndex<String> allowedHeaders = new CaseInsensitiveIndex<>();
+
+    /**
+     * Whether any request header is allowed.
+     */
+    private final boolean allowAnyHeader;
+
+    /**
+     * The number of seconds the result of a preflight request can be cached, or {@link #NO_MAX_AGE}.
+     */
+    private final long maxAge;
+
+    /**
+     * The rendered value of {@code Access-Control-Max-Age}, or {@code null} if it is not sent.
+     */
+    private final String maxAgeValue;
+
+    /**
+     * Compile a policy from the raw configuration, without caching the decisions of wildcard origins.
+     *
+     * @param allowCredentials Whether credentials are allowed.
+     * @param allowOrigin      The allowed origins.
+     * @param allowMethods     The allowed methods.
+     * @param allowHeaders     The allowed request headers.
+     * @param exposeHeaders    The response headers exposed to scripts.
+     */
+    public CorsPolicy(boolean allowCredentials,
+                      String[] allowOrigin,
+                      String[] allowMethods,
+                      String[] allowHeaders,
+                      String[] exposeHeaders) {
+        this(allowCredentials, allowOrigin, allowMethods, allowHeaders, exposeHeaders, 0, NO_MAX_AGE);
+    }
+
+    /**
+     * Compile a policy from the raw configuration.
+     *
+     * @param allowCredentials Whether credentials are allowed.
+     * @param allowOrigin      The allowed origins.
+     * @param allowMethods     The allowed methods.
+     * @param allowHeaders     The allowed request headers.
+     * @param exposeHeaders    The response headers exposed to scripts.
+     * @param originCacheSize  The maximum number of origins whose decision made by the wildcard patterns is cached,
+     *                         {@code 0} disables the cache.
+     * @param maxAge           The number of seconds the result of a preflight request can be cached by browsers, a
+     *                         negative value means {@code Access-Control-Max-Age} is not sent.
+     */
+    public CorsPolicy(boolean allowCredentials,
+                      String[] allowOrigin,
+                      String[] allowMethods,
+                      String[] allowHeaders,
+                      String[] exposeHeaders,
+                      int originCacheSize,
+                      long maxAge) {
+        this.allowCredentials = allowCredentials;
+        this.allowCredentialsValue = String.valueOf(allowCredentials);
+        this.allowOrigin = allowOrigin != null ? allowOrigin.clone() : new String[0];
+        this.staticOrigin = this.allowOrigin.length == 1 && !OriginMatcher.isPattern(this.allowOrigin[0])
+                ? this.allowOrigin[0] : null;
+        this.originMatcher = new OriginMatcher(this.allowOrigin);
+        this.originCache = originCacheSize > 0 && originMatcher.hasPatterns() ? new DecisionCache(originCacheSize) : null;
+        this.allowMethodsValue = join(allowMethods);
+        this.allowHeadersValue = join(allowHeaders);
+        this.exposeHeadersValue = join(exposeHeaders);
+
+        for (String method : SAFELISTED_METHODS) {
+            this.allowedMethods.put(method, method);
+        }
+        if (allowMethods != null) {
+            for (String method : allowMethods) {
+                if (method != null && !method.isEmpty()) {
+                    this.allowedMethods.put(method, method);
+                }
+            }
+        }
+        boolean anyHeader = false;
+        if (allowHeaders != null) {
+            for (String header : allowHeaders) {
+                if ("*".equals(header)) {
+                    anyHeader = true;
+                } else if (header != null && !header.isEmpty()) {
+                    this.allowedHeaders.put(header, header);
+                }
+            }
+        }
+        this.allowAnyHeader = anyHeader;
+        this.maxAge = maxAge < 0 ? NO_MAX_AGE : maxAge;
+        this.maxAgeValue = maxAge < 0 ? null : String.valueOf(maxAge);
+    }
+
+    /**
+     * Transfer {@code String} array to MDN specified format of header value.
+     *
+     * @param array The {@code String} array.
+     * @return A {@code String} with the format of MDN specified header value.
+     */
+    public static String join(String[] array) {
+        StringBuilder builder = new StringBuilder();
+        if (array != null && array.length > 0) {
+            for (String item : array) {
+                builder.append(item).append(",");
+            }
+        }
+        return builder.length() != 0 ? builder.substring(0, builder.length() - 1) : "";
+    }
+
+    /**
+     * Get allow credentials data.
+     *
+     * @return Value {@code true} if allow credentials, or {@code false}.
+     */
+    public boolean isAllowCredentials() {
+        return allowCredentials;
+    }
+
+    /**
+     * Get the value of {@code Access-Control-Allow-Credentials}.
+     *
+     * @return The header value.
+     */
+    public String getAllowCredentialsValue() {
+        return allowCredentialsValue;
+    }
+
+    /**
+     * Resolve the value of {@code Access-Control-Allow-Origin} for the given request origin. A policy with exactly one
+     * configured exact origin always answers with that origin, a policy allowing {@code *} answers with {@code *},
+     * otherwise the request origin is echoed back if it is allowed.
+     *
+     * @param origin The value of the {@code Origin} request header, might be {@code null}.
+     * @return The header value, or an empty {@code String} if the origin is not allowed.
+     */
+    public String resolveOrigin(String origin) {
+        if (staticOrigin != null) {
+            return staticOrigin;
+        }
+        if (originMatcher.isAllowAny()) {
+            return "*";
+        }
+        return isOriginAllowed(origin) ? origin : "";
+    }
+
+    /**
+     * Check whether the request origin is allowed. Exact origins are always looked up directly, the decisions made by
+     * the wildcard patterns are cached if a cache is configured.
+     *
+     * @param origin The value of the {@code Origin} request header, might be {@code null}.
+     * @return Value {@code true} if the origin is allowed, or {@code false}.
+     */
+    public boolean isOriginAllowed(String origin) {
+        if (origin == null) {
+            return false;
+        }
+        if (originMatcher.isAllowAny() || originMatcher.matchesExactly(origin)) {
+            return true;
+        }
+        if (originCache == null) {
+            return originMatcher.matchesPattern(origin);
+        }
+        Boolean cached = originCache.get(origin);
+        if (cached != null) {
+            return cached;
+        }
+        boolean allowed = originMatcher.matchesPattern(origin);
+        originCache.put(origin, allowed);
+        return allowed;
+    }
+
+    /**
+     * Get the cache of origins decided by the wildcard patterns.
+     *
+     * @return The cache, or {@code null} if the decisions are not cached.
+     */
+    public DecisionCache getOriginCache() {
+        return originCache;
+    }
+
+    /**
+     * Get the matcher of the configured origins.
+     *
+     * @return The origin matcher.
+     */
+    public OriginMatcher getOriginMatcher() {
+        return originMatcher;
+    }
+
+    /**
+     * Check whether the response for the resolved origin varies by the {@code Origin} request header.
+     *
+     * @param allowedOrigin The resolved value of {@code Access-Control-Allow-Origin}.
+     * @return Value {@code true} if a {@code Vary: Origin} header is required, or {@code false}.
+     */
+    public static boolean isVaryByOrigin(String allowedOrigin) {
+        return !("*".equals(allowedOrigin) || "null".equalsIgnoreCase(allowedOrigin));
+    }
+
+    /**
+     * Check a preflight request against this policy. Neither the origin, the method nor the header list is copied,
+     * therefore every combination of them is answered with the same precompiled header values.
+     *
+     * @param origin         The value of the {@code Origin} request header.
+     * @param requestMethod  The value of the {@code Access-Control-Request-Method} request header.
+     * @param requestHeaders The value of the {@code Access-Control-Request-Headers} request header, might be
+     *                       {@code null}.
+     * @return The decision.
+     */
+    public CorsDecision checkPreflight(String origin, String requestMethod, String requestHeaders) {
+        if (staticOrigin == null && !isOriginAllowed(origin)) {
+            return CorsDecision.ORIGIN_NOT_ALLOWED;
+        }
+        if (requestMethod == null || allowedMethods.get(requestMethod) == null) {
+            return CorsDecision.METHOD_NOT_ALLOWED;
+        }
+        if (requestHeaders != null && !allowAnyHeader && !areHeadersAllowed(requestHeaders)) {
+            return CorsDecision.HEADERS_NOT_ALLOWED;
+        }
+        return CorsDecision.ALLOWED;
+    }
+
+    private boolean areHeadersAllowed(String requestHeaders) {
+        int length = requestHeaders.length();
+        int index = 0;
+        while (index < length) {
+            int end = requestHeaders.indexOf(',', index);
+            if (end < 0) {
+                end = length;
+            }
+            int from = index;
+            int to = end;
+            while (from < to && isWhitespace(requestHeaders.charAt(from))) {
+                from++;
+            }
+            while (to > from && isWhitespace(requestHeaders.charAt(to - 1))) {
+                to--;
+            }
+            if (from < to && allowedHeaders.get(requestHeaders, from, to) == null) {
+                return false;
+            }
+            index = end + 1;
+        }
+        return true;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    /**
+     * Get the number of seconds the result of a preflight request can be cached.
+     *
+     * @return The max age, or {@link #NO_MAX_AGE} if it is not sent.
+     */
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /**
+     * Get the value of {@code Access-Control-Max-Age}.
+     *
+     * @return The header value, or {@code null} if it is not sent.
+     */
+    public String getMaxAgeValue() {
+        return maxAgeValue;
+    }
+
+    /**
+     * Get the value of {@code Access-Control-Allow-Methods}.
+     *
+     * @return The header value.
+     */
+    public String getAllowMethodsValue() {
+        return allowMethodsValue;
+    }
+
+    /**
+     * Get the value of {@code Access-Control-Allow-Headers}.
+     *
+     * @return The header value.
+     */
+    public String getAllowHeadersValue() {
+        return allowHeadersValue;
+    }
+
+    /**
+     * Get the value of {@code Access-Control-Expose-Headers}.
+     *
+     * @return The header value.
+     */
+    public String getExposeHeadersValue() {
+        return exposeHeadersValue;
+    }
+
+    /**
+     * Create a builder of a policy. Unless set, nothing is allowed, {@link #DEFAULT_ORIGIN_CACHE_SIZE} origin decisions
+     * are cached and {@link #DEFAULT_MAX_AGE} is sent as max age.
+     *
+     * @return A new builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public String toString() {
+        return "CorsPolicy{" +
+                "allowCredentials=" + allowCredentials +
+                ", allowOrigin=" + Arrays.toString(allowOrigin) +
+                ", allowMethods='" + allowMethodsValue + '\'' +
+                ", allowHeaders='" + allowHeadersValue + '\'' +
+                ", exposeHeaders='" + exposeHeadersValue + '\'' +
+                ", maxAge=" + maxAge +
+                '}';
+    }
+
+    /**
+     * The builder of {@link CorsPolicy}.
+     */
+    public static final class Builder {
+
+        private boolean allowCredentials;
+
+        private String[] allowOrigin = new String[0];
+
+        private String[] allowMethods = new String[0];
+
+        private String[] allowHeaders = new String[0];
+
+        private String[] exposeHeaders = new String[0];
+
+        private int originCacheSize = DEFAULT_ORIGIN_CACHE_SIZE;
+
+        private long maxAge = DEFAULT_MAX_AGE;
+
+        private Builder() {
+        }
+
+        /**
+         * Set whether credentials are allowed.
+         *
+         * @param allowCredentials Whether credentials are allowed.
+         * @return The builder itself.
+         */
+        public Builder allowCredentials(boolean allowCredentials) {
+            this.allowCredentials = allowCredentials;
+            return this;
+        }
+
+        /**
+         * Set the allowed origins.
+         *
+         * @param allowOrigin The allowed origins, exact origins or wildcard patterns.
+         * @return The builder itself.
+         */
+        public Builder allowOrigin(String... allowOrigin) {
+            this.allowOrigin = allowOrigin;
+            return this;
+        }
+
+        /**
+         * Set the allowed methods.
+         *
+         * @param allowMethods The allowed methods.
+         * @return The builder itself.
+         */
+        public Builder allowMethods(String... allowMethods) {
+            this.allowMethods = allowMethods;
+            return this;
+        }
+
+        /**
+         * Set the allowed request headers.
+         *
+         * @param allowHeaders The allowed request headers.
+         * @return The builder itself.
+         */
+        public Builder allowHeaders(String... allowHeaders) {
+            this.allowHeaders = allowHeaders;
+            return this;
+        }
+
+        /**
+         * Set the response headers exposed to scripts.
+         *
+         * @param exposeHeaders The exposed response headers.
+         * @return The builder itself.
+         */
+        public Builder exposeHeaders(String... exposeHeaders) {
+            this.exposeHeaders = exposeHeaders;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of cached decisions of origins matched by the wildcard patterns.
+         *
+         * @param originCacheSize The cache size, {@code 0} disables the cache.
+         * @return The builder itself.
+         */
+        public Builder originCacheSize(int originCacheSize) {
+            this.originCacheSize = originCacheSize;
+            return this;
+        }
+
+        /**
+         * Set the number of seconds the result of a preflight request can be cached.
+         *
+         * @param maxAge The max age, a negative value means {@code Access-Control-Max-Age} is not sent.
+         * @return The builder itself.
+         */
+        public Builder maxAge(long maxAge) {
+            this.maxAge = maxAge;
+            return this;
+        }
+
+        /**
+         * Compile the policy.
+         *
+         * @return The compiled policy.
+         */
+        public CorsPolicy build() {
+            return new CorsPolicy(allowCredentials, allowOrigin, allowMethods, allowHeaders, exposeHeaders,
+                    originCacheSize, maxAge);
+        }
+    }
+}
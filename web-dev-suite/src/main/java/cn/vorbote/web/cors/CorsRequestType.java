@@ -0,0 +1,46 @@
+package cn.vorbote.web.cors;
+
+/**
+ * The kinds of requests a CORS filter has to tell apart, each of them needs a different set of response headers.
+ *
+ * @author vorbote
+ */
+public enum CorsRequestType {
+
+    /**
+     * A request without {@code Origin}, e.g. a same-origin navigation or a server-to-server call. It needs no CORS
+     * headers at all.
+     */
+    NON_CORS,
+
+    /**
+     * A cross-origin request carrying {@code Origin}, it needs {@code Access-Control-Allow-Origin},
+     * {@code Access-Control-Allow-Credentials} and {@code Access-Control-Expose-Headers}.
+     */
+    SIMPLE,
+
+    /**
+     * An {@code OPTIONS} request carrying both {@code Origin} and {@code Access-Control-Request-Method}, it is answered
+     * by the filter itself.
+     */
+    PREFLIGHT;
+
+    /**
+     * Classify a request.
+     *
+     * @param origin        The value of the {@code Origin} request header, might be {@code null}.
+     * @param method        The method of the request.
+     * @param requestMethod The value of the {@code Access-Control-Request-Method} request header, might be
+     *                      {@code null}.
+     * @return The type of the request.
+     */
+    public static CorsRequestType classify(String origin, String method, String requestMethod) {
+        if (origin == null) {
+            return NON_CORS;
+        }
+        if (requestMethod != null && "OPTIONS".equalsIgnoreCase(method)) {
+            return PREFLIGHT;
+        }
+        return SIMPLE;
+    }
+}
@@ -0,0 +1,99 @@
+package cn.vorbote.web.cors;
+
+import cn.vorbote.web.utils.PathPatternTrie;
+
+import javax.servlet.http.HttpServletRequest;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An immutable table mapping path patterns to compiled {@link CorsPolicy policies}, with a default policy for the
+ * paths no pattern matches. The patterns are the ones supported by {@link PathPatternTrie}, e.g.
+ * {@code /api/public/**}.
+ *
+ * @author vorbote
+ */
+public final class CorsRouteTable {
+
+    private final CorsPolicy defaultPolicy;
+
+    private final Map<String, CorsPolicy> routes;
+
+    private final PathPatternTrie<CorsPolicy> trie = new PathPatternTrie<>();
+
+    /**
+     * Build a route table.
+     *
+     * @param defaultPolicy The policy of the paths no pattern matches.
+     * @param routes        The policies keyed by their path patterns, might be {@code null}.
+     * @throws IllegalArgumentException If a path pattern is malformed.
+     */
+    public CorsRouteTable(CorsPolicy defaultPolicy, Map<String, CorsPolicy> routes) {
+        this.defaultPolicy = defaultPolicy;
+        Map<String, CorsPolicy> copy = new LinkedHashMap<>();
+        if (routes != null) {
+            copy.putAll(routes);
+        }
+        this.routes = Collections.unmodifiableMap(copy);
+        this.routes.forEach(trie::put);
+    }
+
+    /**
+     * Build a route table containing nothing but the default policy.
+     *
+     * @param defaultPolicy The policy of every path.
+     */
+    public CorsRouteTable(CorsPolicy defaultPolicy) {
+        this(defaultPolicy, null);
+    }
+
+    /**
+     * Get the policy of the paths no pattern matches.
+     *
+     * @return The default policy.
+     */
+    public CorsPolicy getDefaultPolicy() {
+        return defaultPolicy;
+    }
+
+    /**
+     * Get the policies keyed by their path patterns.
+     *
+     * @return An unmodifiable view of the routes.
+     */
+    public Map<String, CorsPolicy> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * Resolve the policy of a request, matched on its path within the application, see
+     * {@link PathPatternTrie#requestPath(HttpServletRequest)}.
+     *
+     * @param request The request.
+     * @return The policy of the best matching pattern, or the default policy.
+     */
+    public CorsPolicy resolve(HttpServletRequest request) {
+        if (trie.isEmpty()) {
+            return defaultPolicy;
+        }
+        CorsPolicy policy = trie.match(request);
+        return policy != null ? policy : defaultPolicy;
+    }
+
+    /**
+     * Resolve the policy of a path.
+     *
+     * @param path The text containing the path, already decoded and normalised.
+     * @param from The index the path starts at, e.g. the length of the context path.
+     * @return The policy of the best matching pattern, or the default policy.
+     */
+    public CorsPolicy resolve(String path, int from) {
+        if (trie.isEmpty() || path == null) {
+            return defaultPolicy;
+        }
+        CorsPolicy policy = trie.match(path, from);
+        return policy != null ? policy : defaultPolicy;
+    }
+}
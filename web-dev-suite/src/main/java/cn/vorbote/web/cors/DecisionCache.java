@@ -0,0 +1,193 @@
+package cn.vorbote.web.cors;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, concurrent cache of allow/deny decisions keyed by a raw header value.<br>
+ * The cache is split into independently locked stripes, each of them is a segmented LRU: a new key enters the
+ * probationary segment and is only promoted to the protected segment when it is requested again. A flood of distinct
+ * attacker-chosen keys therefore only churns the probationary segment and cannot evict the keys of real clients, and
+ * the total number of keys never exceeds the configured capacity. Keys longer than {@link #MAX_KEY_LENGTH} are never
+ * cached.
+ *
+ * @author vorbote
+ */
+public final class DecisionCache {
+
+    /**
+     * The maximum length of a cacheable key.
+     */
+    public static final int MAX_KEY_LENGTH = 512;
+
+    private static final int MAX_STRIPES = 16;
+
+    private final Stripe[] stripes;
+
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Create a cache holding at most the given number of decisions.
+     *
+     * @param capacity The maximum number of decisions, must be positive.
+     */
+    public DecisionCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity of a decision cache must be positive, got " + capacity);
+        }
+        int stripeCount = 1;
+        while (stripeCount < MAX_STRIPES && stripeCount * 64 <= capacity) {
+            stripeCount <<= 1;
+        }
+        this.stripes = new Stripe[stripeCount];
+        int stripeCapacity = Math.max(1, capacity / stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+        this.mask = stripeCount - 1;
+    }
+
+    private Stripe stripeOf(String key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & mask];
+    }
+
+    /**
+     * Get the cached decision of the key.
+     *
+     * @param key The raw header value.
+     * @return The decision, or {@code null} if the key is not cached.
+     */
+    public Boolean get(String key) {
+        if (key.length() > MAX_KEY_LENGTH) {
+            misses.increment();
+            return null;
+        }
+        Boolean decision = stripeOf(key).get(key);
+        if (decision != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return decision;
+    }
+
+    /**
+     * Cache the decision of the key.
+     *
+     * @param key     The raw header value.
+     * @param allowed The decision.
+     */
+    public void put(String key, boolean allowed) {
+        if (key.length() <= MAX_KEY_LENGTH) {
+            stripeOf(key).put(key, allowed ? Boolean.TRUE : Boolean.FALSE);
+        }
+    }
+
+    /**
+     * Get the number of lookups answered from the cache.
+     *
+     * @return The number of hits.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of lookups not answered from the cache.
+     *
+     * @return The number of misses.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of decisions evicted to keep the cache within its capacity.
+     *
+     * @return The number of evictions.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the number of cached decisions.
+     *
+     * @return The number of cached decisions.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * A segmented LRU guarded by its own monitor.
+     */
+    private final class Stripe {
+
+        private final int capacity;
+
+        private final int protectedCapacity;
+
+        private final LinkedHashMap<String, Boolean> probation = new LinkedHashMap<>(16, 0.75f, true);
+
+        private final LinkedHashMap<String, Boolean> protect = new LinkedHashMap<>(16, 0.75f, true);
+
+        private Stripe(int capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = Math.max(1, capacity * 4 / 5);
+        }
+
+        private synchronized Boolean get(String key) {
+            Boolean decision = protect.get(key);
+            if (decision != null) {
+                return decision;
+            }
+            decision = probation.remove(key);
+            if (decision != null) {
+                protect.put(key, decision);
+                if (protect.size() > protectedCapacity) {
+                    // Demote the least recently used protected key, it gets another chance in probation.
+                    Map.Entry<String, Boolean> eldest = removeEldest(protect);
+                    probation.put(eldest.getKey(), eldest.getValue());
+                }
+            }
+            return decision;
+        }
+
+        private synchronized void put(String key, Boolean decision) {
+            if (protect.containsKey(key)) {
+                protect.put(key, decision);
+                return;
+            }
+            probation.put(key, decision);
+            while (probation.size() + protect.size() > capacity) {
+                removeEldest(probation.isEmpty() ? protect : probation);
+                evictions.increment();
+            }
+        }
+
+        private synchronized int size() {
+            return probation.size() + protect.size();
+        }
+
+        private Map.Entry<String, Boolean> removeEldest(LinkedHashMap<String, Boolean> segment) {
+            Iterator<Map.Entry<String, Boolean>> iterator = segment.entrySet().iterator();
+            Map.Entry<String, Boolean> eldest = iterator.next();
+            iterator.remove();
+            return eldest;
+        }
+    }
+}
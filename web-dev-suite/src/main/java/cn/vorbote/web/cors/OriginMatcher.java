@@ -0,0 +1,234 @@
+package cn.vorbote.web.cors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * OriginMatcher decides whether the value of an {@code Origin} request header is allowed. It is built once from the
+ * configured origins and is immutable afterwards.<br>
+ * Exact origins are kept in a case-insensitive hash table. Wildcard origins such as
+ * {@code https://*.tenant.example.com} are kept in a trie of reversed host labels, a wildcard pattern matches any
+ * origin with the same scheme and port whose host ends with at least one more label than the pattern, e.g. both
+ * {@code https://a.tenant.example.com} and {@code https://a.b.tenant.example.com} but not
+ * {@code https://tenant.example.com}. Either way a lookup costs {@code O(length of the origin)} regardless of the number
+ * of configured origins, and allocates nothing.
+ *
+ * @author vorbote
+ */
+public final class OriginMatcher {
+
+    private static final String WILDCARD_PREFIX = "*.";
+
+    private static final String SCHEME_SEPARATOR = "://";
+
+    /**
+     * Whether any origin is allowed.
+     */
+    private final boolean allowAny;
+
+    /**
+     * The exact origins.
+     */
+    private final CaseInsensitiveIndex<String> exactOrigins = new CaseInsensitiveIndex<>();
+
+    /**
+     * The root of the reversed host label trie.
+     */
+    private final Node patterns = new Node();
+
+    /**
+     * Whether there is at least one wildcard pattern.
+     */
+    private final boolean hasPatterns;
+
+    /**
+     * Build a matcher from the configured origins.
+     *
+     * @param origins The configured origins, each of them is either an exact origin, a wildcard pattern, {@code *}
+     *                or {@code null}.
+     * @throws IllegalArgumentException If a wildcard pattern is malformed.
+     */
+    public OriginMatcher(String[] origins) {
+        boolean any = false;
+        boolean pattern = false;
+        if (origins != null) {
+            for (String origin : origins) {
+                if (origin == null || origin.isEmpty()) {
+                    continue;
+                }
+                if ("*".equals(origin)) {
+                    any = true;
+                } else if (isPattern(origin)) {
+                    addPattern(origin);
+                    pattern = true;
+                } else {
+                    exactOrigins.put(origin, origin);
+                }
+            }
+        }
+        this.allowAny = any;
+        this.hasPatterns = pattern;
+    }
+
+    /**
+     * Check whether the configured origin is a wildcard pattern.
+     *
+     * @param origin The configured origin.
+     * @return Value {@code true} if the origin is a wildcard pattern, or {@code false}.
+     */
+    public static boolean isPattern(String origin) {
+        int separator = origin.indexOf(SCHEME_SEPARATOR);
+        return separator > 0 && origin.startsWith(WILDCARD_PREFIX, separator + SCHEME_SEPARATOR.length());
+    }
+
+    private void addPattern(String pattern) {
+        int separator = pattern.indexOf(SCHEME_SEPARATOR);
+        String scheme = pattern.substring(0, separator);
+        int hostStart = separator + SCHEME_SEPARATOR.length() + WILDCARD_PREFIX.length();
+        int portIndex = pattern.indexOf(':', hostStart);
+        int hostEnd = portIndex < 0 ? pattern.length() : portIndex;
+        String port = portIndex < 0 ? null : pattern.substring(portIndex + 1);
+        if (hostEnd == hostStart || pattern.indexOf('*', hostStart) >= 0 || pattern.indexOf('/', hostStart) >= 0) {
+            throw new IllegalArgumentException("Malformed origin pattern [" + pattern + "]");
+        }
+
+        Node node = patterns;
+        int labelEnd = hostEnd;
+        while (labelEnd > hostStart) {
+            int labelStart = pattern.lastIndexOf('.', labelEnd - 1) + 1;
+            if (labelStart < hostStart) {
+                labelStart = hostStart;
+            }
+            if (labelStart == labelEnd) {
+                throw new IllegalArgumentException("Malformed origin pattern [" + pattern + "]");
+            }
+            node = node.child(pattern.substring(labelStart, labelEnd));
+            labelEnd = labelStart - 1;
+        }
+        node.addTerminal(scheme, port);
+    }
+
+    /**
+     * Check whether any origin is allowed.
+     *
+     * @return Value {@code true} if {@code *} is configured, or {@code false}.
+     */
+    public boolean isAllowAny() {
+        return allowAny;
+    }
+
+    /**
+     * Check whether this matcher contains at least one wildcard pattern.
+     *
+     * @return Value {@code true} if there is any wildcard pattern, or {@code false}.
+     */
+    public boolean hasPatterns() {
+        return hasPatterns;
+    }
+
+    /**
+     * Check whether the origin equals one of the exact origins.
+     *
+     * @param origin The value of the {@code Origin} request header.
+     * @return Value {@code true} if the origin is configured exactly, or {@code false}.
+     */
+    public boolean matchesExactly(String origin) {
+        return origin != null && exactOrigins.get(origin) != null;
+    }
+
+    /**
+     * Check whether the origin is matched by one of the wildcard patterns.
+     *
+     * @param origin The value of the {@code Origin} request header.
+     * @return Value {@code true} if a pattern matches, or {@code false}.
+     */
+    public boolean matchesPattern(String origin) {
+        if (!hasPatterns || origin == null) {
+            return false;
+        }
+        int separator = origin.indexOf(SCHEME_SEPARATOR);
+        if (separator <= 0) {
+            return false;
+        }
+        int hostStart = separator + SCHEME_SEPARATOR.length();
+        int portIndex = origin.indexOf(':', hostStart);
+        int hostEnd = portIndex < 0 ? origin.length() : portIndex;
+        if (origin.indexOf('/', hostStart) >= 0) {
+            return false;
+        }
+
+        Node node = patterns;
+        int labelEnd = hostEnd;
+        while (labelEnd > hostStart) {
+            int labelStart = origin.lastIndexOf('.', labelEnd - 1) + 1;
+            if (labelStart < hostStart) {
+                labelStart = hostStart;
+            }
+            node = node.children.get(origin, labelStart, labelEnd);
+            if (node == null) {
+                return false;
+            }
+            // A wildcard stands for at least one more label, therefore the host must continue.
+            if (labelStart > hostStart && node.matchesTerminal(origin, separator, portIndex)) {
+                return true;
+            }
+            labelEnd = labelStart - 1;
+        }
+        return false;
+    }
+
+    /**
+     * Check whether the origin is allowed.
+     *
+     * @param origin The value of the {@code Origin} request header.
+     * @return Value {@code true} if the origin is allowed, or {@code false}.
+     */
+    public boolean matches(String origin) {
+        return origin != null && (allowAny || matchesExactly(origin) || matchesPattern(origin));
+    }
+
+    /**
+     * A node of the reversed host label trie.
+     */
+    private static final class Node {
+
+        private final CaseInsensitiveIndex<Node> children = new CaseInsensitiveIndex<>();
+
+        private final List<String> schemes = new ArrayList<>(1);
+
+        private final List<String> ports = new ArrayList<>(1);
+
+        private Node child(String label) {
+            Node child = children.get(label);
+            if (child == null) {
+                child = new Node();
+                children.put(label, child);
+            }
+            return child;
+        }
+
+        private void addTerminal(String scheme, String port) {
+            schemes.add(scheme);
+            ports.add(port);
+        }
+
+        private boolean matchesTerminal(String origin, int schemeEnd, int portIndex) {
+            for (int i = 0; i < schemes.size(); i++) {
+                String scheme = schemes.get(i);
+                if (scheme.length() != schemeEnd || !scheme.regionMatches(true, 0, origin, 0, schemeEnd)) {
+                    continue;
+                }
+                String port = ports.get(i);
+                if (port == null) {
+                    if (portIndex < 0) {
+                        return true;
+                    }
+                } else if (portIndex >= 0 && port.length() == origin.length() - portIndex - 1
+                        && origin.startsWith(port, portIndex + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package cn.vorbote.web.deadline;
+
+import cn.vorbote.web.constants.WebStatus;
+import cn.vorbote.web.exceptions.BizException;
+
+import javax.servlet.ServletRequest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The absolute deadline of a request, stored as a request attribute by the deadline filter. Handlers query it to give
+ * up work whose caller has stopped waiting, and to propagate the remaining budget to the services they call, e.g. as
+ * the timeout header of the outgoing request, so the whole call tree shares one deadline.<br>
+ * The deadline is measured on {@link System#nanoTime()}, so it is immune to changes of the wall clock.
+ *
+ * @author vorbote
+ */
+public final class RequestDeadline {
+
+    /**
+     * The request attribute holding the deadline.
+     */
+    public static final String ATTRIBUTE = RequestDeadline.class.getName();
+
+    private final long deadline;
+
+    private final long budget;
+
+    private RequestDeadline(long deadline, long budget) {
+        this.deadline = deadline;
+        this.budget = budget;
+    }
+
+    /**
+     * Create a deadline from now.
+     *
+     * @param timeout The time left.
+     * @param unit    The unit of the time.
+     * @return The deadline.
+     */
+    public static RequestDeadline after(long timeout, TimeUnit unit) {
+        long budget = unit.toNanos(timeout);
+        return new RequestDeadline(System.nanoTime() + budget, budget);
+    }
+
+    /**
+     * Get the deadline of a request.
+     *
+     * @param request The request.
+     * @return The deadline, or {@code null} if the request has none.
+     */
+    public static RequestDeadline of(ServletRequest request) {
+        Object deadline = request.getAttribute(ATTRIBUTE);
+        return deadline instanceof RequestDeadline ? (RequestDeadline) deadline : null;
+    }
+
+    /**
+     * Attach this deadline to a request.
+     *
+     * @param request The request.
+     */
+    public void attach(ServletRequest request) {
+        request.setAttribute(ATTRIBUTE, this);
+    }
+
+    /**
+     * Get the time left.
+     *
+     * @param unit The unit of the result.
+     * @return The time left, negative once the deadline has passed.
+     */
+    public long getRemaining(TimeUnit unit) {
+        return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the time left in milliseconds, the form to propagate to downstream services.
+     *
+     * @return The time left, never negative.
+     */
+    public long getRemainingMillis() {
+        return Math.max(0L, getRemaining(TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Get the whole budget the request was given.
+     *
+     * @param unit The unit of the result.
+     * @return The budget.
+     */
+    public long getBudget(TimeUnit unit) {
+        return unit.convert(budget, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Check whether the deadline has passed.
+     *
+     * @return Value {@code true} if the caller is no longer waiting, or {@code false}.
+     */
+    public boolean isExpired() {
+        return System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Abort the work of a handler once the deadline has passed, a cheap check to place between expensive steps.
+     *
+     * @throws BizException With {@link WebStatus#GATEWAY_TIMEOUT} if the deadline has passed.
+     */
+    public void check() {
+        if (isExpired()) {
+            throw new BizException(WebStatus.GATEWAY_TIMEOUT,
+                    "Deadline of " + getBudget(TimeUnit.MILLISECONDS) + "ms exceeded");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RequestDeadline{remaining=" + getRemaining(TimeUnit.MILLISECONDS) + "ms, budget="
+                + getBudget(TimeUnit.MILLISECONDS) + "ms}";
+    }
+}
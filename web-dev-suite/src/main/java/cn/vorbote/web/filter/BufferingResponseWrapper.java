@@ -0,0 +1,317 @@
+package cn.vorbote.web.filter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * A response wrapper keeping the body in memory, so a filter can inspect it once the chain returns and decide what is
+ * actually sent: the body itself, or e.g. a bodiless {@code 304}.<br>
+ * A body growing beyond the limit can no longer be held back: what is buffered is sent and the rest passes straight
+ * through, see {@link #isPassedThrough()}. Flushes of the application, e.g. the one every message converter of Spring
+ * issues after writing, are ignored while the body is buffered, so a response streamed in pieces only reaches the
+ * client once the chain returns or the limit is crossed. Subclasses observe every byte written through
+ * {@link #onBody(byte[], int, int)}, e.g. to hash the body incrementally instead of reading it a second time.<br>
+ * The filter must call {@link #finish()} once the chain returns, then send the body with {@link #sendBody()} unless it
+ * answers differently.
+ *
+ * @author vorbote
+ */
+public class BufferingResponseWrapper extends HttpServletResponseWrapper {
+
+    private final int limit;
+
+    private byte[] buffer;
+
+    private int count;
+
+    private boolean passedThrough;
+
+    private BufferingOutputStream outputStream;
+
+    private PrintWriter writer;
+
+    /**
+     * The content length set by the application, or {@code -1} if none.
+     */
+    private long contentLength = -1;
+
+    /**
+     * Wrap a response.
+     *
+     * @param response The response.
+     * @param limit    The maximum number of bytes kept in memory.
+     */
+    public BufferingResponseWrapper(HttpServletResponse response, int limit) {
+        super(response);
+        this.limit = limit;
+        this.buffer = new byte[Math.min(Math.max(limit, 0), 1024)];
+    }
+
+    /**
+     * Observe bytes appended to the buffer. Bytes written after the body has been passed through are not observed.
+     *
+     * @param bytes  The bytes.
+     * @param offset The offset of the bytes.
+     * @param length The number of the bytes.
+     */
+    protected void onBody(byte[] bytes, int offset, int length) {
+    }
+
+    /**
+     * Observe that the buffered bytes have been discarded by a reset.
+     */
+    protected void onReset() {
+    }
+
+    /**
+     * Check whether the body has been passed through to the client instead of being buffered.
+     *
+     * @return Value {@code true} if the body is no longer buffered, or {@code false}.
+     */
+    public boolean isPassedThrough() {
+        return passedThrough;
+    }
+
+    /**
+     * Get the buffered body. The array is shared and may be longer than the body.
+     *
+     * @return The buffer.
+     * @see #getBodyLength()
+     */
+    public byte[] getBody() {
+        return buffer;
+    }
+
+    /**
+     * Get the length of the buffered body.
+     *
+     * @return The length.
+     */
+    public int getBodyLength() {
+        return count;
+    }
+
+    /**
+     * Get a copy of the buffered body.
+     *
+     * @return The body.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called");
+        }
+        return stream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (outputStream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called");
+            }
+            writer = new PrintWriter(new OutputStreamWriter(stream(), getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    private BufferingOutputStream stream() {
+        if (outputStream == null) {
+            outputStream = new BufferingOutputStream();
+        }
+        return outputStream;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        setContentLengthLong(len);
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        if (passedThrough) {
+            super.setContentLengthLong(len);
+        } else {
+            this.contentLength = len;
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(Long.parseLong(value));
+        } else {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(Long.parseLong(value));
+        } else {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(value);
+        } else {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(value);
+        } else {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (passedThrough) {
+            super.flushBuffer();
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        if (!passedThrough) {
+            count = 0;
+            onReset();
+        }
+        super.resetBuffer();
+    }
+
+    @Override
+    public void reset() {
+        if (!passedThrough) {
+            count = 0;
+            contentLength = -1;
+            onReset();
+        }
+        super.reset();
+    }
+
+    /**
+     * Flush the writer of the application, if any, into the buffer.
+     */
+    public void finish() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Send the buffered body with its exact {@code Content-Length}. Nothing happens if the body has been passed
+     * through.
+     *
+     * @throws IOException If the body cannot be written.
+     */
+    public void sendBody() throws IOException {
+        if (passedThrough) {
+            return;
+        }
+        passedThrough = true;
+        super.setContentLengthLong(count);
+        if (count > 0) {
+            super.getOutputStream().write(buffer, 0, count);
+        }
+    }
+
+    /**
+     * Stop buffering: send what is buffered, the rest is written straight to the response.
+     *
+     * @throws IOException If the buffered bytes cannot be written.
+     */
+    protected void passThrough() throws IOException {
+        if (passedThrough) {
+            return;
+        }
+        passedThrough = true;
+        if (contentLength >= 0) {
+            super.setContentLengthLong(contentLength);
+        }
+        if (count > 0) {
+            super.getOutputStream().write(buffer, 0, count);
+        }
+    }
+
+    private void append(byte[] bytes, int offset, int length) throws IOException {
+        if (passedThrough) {
+            super.getOutputStream().write(bytes, offset, length);
+            return;
+        }
+        if (count + length > limit) {
+            passThrough();
+            super.getOutputStream().write(bytes, offset, length);
+            return;
+        }
+        if (count + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.min(limit, Math.max(buffer.length << 1, count + length)));
+        }
+        System.arraycopy(bytes, offset, buffer, count, length);
+        count += length;
+        onBody(bytes, offset, length);
+    }
+
+    /**
+     * An output stream appending to the buffer of the wrapper.
+     */
+    private final class BufferingOutputStream extends ServletOutputStream {
+
+        private final byte[] single = new byte[1];
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            append(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            append(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // Nothing leaves the buffer before the filter has seen the whole body.
+            if (passedThrough) {
+                BufferingResponseWrapper.super.getOutputStream().flush();
+            }
+        }
+
+        @Override
+        public void close() {
+            // The body is sent by the filter once the chain returns.
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            throw new UnsupportedOperationException("Non-blocking writes cannot be buffered");
+        }
+    }
+}
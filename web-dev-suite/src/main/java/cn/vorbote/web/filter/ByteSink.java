@@ -0,0 +1,22 @@
+package cn.vorbote.web.filter;
+
+import java.io.IOException;
+
+/**
+ * The receiver of the bytes produced by a pooled converter, e.g. a {@link TranscoderPool.Transcoder} or a
+ * {@link DeflaterPool.Compressor}.
+ *
+ * @author vorbote
+ */
+interface ByteSink {
+
+    /**
+     * Receive bytes.
+     *
+     * @param bytes  The bytes.
+     * @param offset The offset of the bytes.
+     * @param length The number of the bytes.
+     * @throws IOException If the bytes cannot be received.
+     */
+    void write(byte[] bytes, int offset, int length) throws IOException;
+}
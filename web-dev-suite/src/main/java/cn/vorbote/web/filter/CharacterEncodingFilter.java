@@ -0,0 +1,299 @@
+package cn.vorbote.web.filter;
+
+import cn.vorbote.web.metrics.FilterMetrics;
+import cn.vorbote.web.utils.PathPatternTrie;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Optional;
+
+/**
+ * CharacterEncodingFilter can set character encoding to request and response. Set the init parameter
+ * {@code metricsEnabled} to {@code true} to export {@link FilterMetrics} through JMX.<br>
+ * The encodings are resolved to {@link Charset}s once, an unknown encoding fails the initialization. Unless
+ * {@code forceRequest}/{@code forceResponse} is set, an encoding is only applied if the request or the response
+ * does not declare one yet, so a {@code Content-Type; charset=} sent by the client or set by an earlier filter is kept.
+ * <br>
+ * For endpoints proxying content of a legacy charset, set the init parameter {@code transcodeFrom} to that charset
+ * (and optionally {@code transcodePaths} to the path patterns of those endpoints): the bytes they write are converted
+ * to the response encoding while being written, see {@link TranscodingResponseWrapper}.<br>
+ * Created at 2022/3/28 15:24
+ *
+ * @author vorbote
+ */
+@Slf4j
+public class CharacterEncodingFilter implements Filter, WebSuiteStage {
+
+    private static final String DEFAULT_ENCODING = "UTF-8";
+
+    /**
+     * Encoding method for request, the canonical name of {@link #requestCharset}.
+     */
+    private String requestEncoding;
+
+    /**
+     * Encoding method for response, the canonical name of {@link #responseCharset}.
+     */
+    private String responseEncoding;
+
+    /**
+     * The resolved charset of request.
+     */
+    private Charset requestCharset;
+
+    /**
+     * The resolved charset of response.
+     */
+    private Charset responseCharset;
+
+    /**
+     * Whether to overwrite the encoding declared by the request.
+     */
+    private boolean forceRequest;
+
+    /**
+     * Whether to overwrite the encoding declared by the response.
+     */
+    private boolean forceResponse;
+
+    /**
+     * The pool of transcoders converting the legacy charset to the response charset, or {@code null} if responses are
+     * not converted.
+     */
+    private TranscoderPool transcoderPool;
+
+    /**
+     * The paths whose responses are converted, or {@code null} if every response is converted.
+     */
+    private PathPatternTrie<Boolean> transcodePaths;
+
+    /**
+     * The metrics of this filter, or {@code null} if metrics are disabled.
+     */
+    private FilterMetrics metrics;
+
+    /**
+     * Generate a filter applying the encodings only if none is declared.
+     *
+     * @param requestEncoding  Encoding method for request, {@code UTF-8} if {@code null}.
+     * @param responseEncoding Encoding method for response, {@code UTF-8} if {@code null}.
+     * @throws java.nio.charset.UnsupportedCharsetException If an encoding is not supported.
+     */
+    public CharacterEncodingFilter(String requestEncoding, String responseEncoding) {
+        this(requestEncoding, responseEncoding, false, false);
+    }
+
+    /**
+     * Generate a filter.
+     *
+     * @param requestEncoding  Encoding method for request, {@code UTF-8} if {@code null}.
+     * @param responseEncoding Encoding method for response, {@code UTF-8} if {@code null}.
+     * @param forceRequest     Whether to overwrite the encoding declared by the request.
+     * @param forceResponse    Whether to overwrite the encoding declared by the response.
+     * @throws java.nio.charset.UnsupportedCharsetException If an encoding is not supported.
+     */
+    public CharacterEncodingFilter(String requestEncoding,
+                                   String responseEncoding,
+                                   boolean forceRequest,
+                                   boolean forceResponse) {
+        // Make sure the two variables are not null, and resolve them right away.
+        this.requestCharset = Charset.forName(Optional.ofNullable(requestEncoding).orElse(DEFAULT_ENCODING));
+        this.responseCharset = Charset.forName(Optional.ofNullable(responseEncoding).orElse(DEFAULT_ENCODING));
+
+        // Set encoding.
+        this.requestEncoding = requestCharset.name();
+        this.responseEncoding = responseCharset.name();
+        this.forceRequest = forceRequest;
+        this.forceResponse = forceResponse;
+    }
+
+    public CharacterEncodingFilter() {
+        this(DEFAULT_ENCODING, DEFAULT_ENCODING);
+    }
+
+    /**
+     * Get the resolved charset of request.
+     *
+     * @return The charset.
+     */
+    public Charset getRequestCharset() {
+        return requestCharset;
+    }
+
+    /**
+     * Get the resolved charset of response.
+     *
+     * @return The charset.
+     */
+    public Charset getResponseCharset() {
+        return responseCharset;
+    }
+
+    /**
+     * Convert the bytes written in a legacy charset to the response charset.
+     *
+     * @param sourceEncoding The legacy charset written by the application.
+     * @param pathPatterns   The path patterns of the converted responses, every response is converted if none.
+     * @return The filter itself.
+     * @throws java.nio.charset.UnsupportedCharsetException If the encoding is not supported.
+     * @see PathPatternTrie
+     */
+    public CharacterEncodingFilter transcodeFrom(String sourceEncoding, String... pathPatterns) {
+        this.transcoderPool = new TranscoderPool(Charset.forName(sourceEncoding), responseCharset,
+                Runtime.getRuntime().availableProcessors() * 2, TranscoderPool.DEFAULT_CHUNK_SIZE);
+        if (pathPatterns == null || pathPatterns.length == 0) {
+            this.transcodePaths = null;
+        } else {
+            PathPatternTrie<Boolean> paths = new PathPatternTrie<>();
+            for (String pattern : pathPatterns) {
+                paths.put(pattern, Boolean.TRUE);
+            }
+            this.transcodePaths = paths;
+        }
+        return this;
+    }
+
+    /**
+     * Convert encoding for request and response.
+     *
+     * @param servletRequest  The request.
+     * @param servletResponse The response.
+     * @param filterChain     The filter chain.
+     * @throws IOException      This exception might not be thrown.
+     * @throws ServletException This exception might not be thrown.
+     */
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain filterChain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        apply(request, response);
+
+        TranscoderPool transcoderPool = this.transcoderPool;
+        if (transcoderPool != null && (transcodePaths == null || transcodePaths.match(request) != null)) {
+            TranscodingResponseWrapper wrapper = new TranscodingResponseWrapper(response, transcoderPool);
+            try {
+                filterChain.doFilter(request, wrapper);
+            } finally {
+                wrapper.finish();
+            }
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+
+    @Override
+    public boolean apply(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        FilterMetrics metrics = this.metrics;
+        if (metrics == null) {
+            applyEncoding(request, response);
+        } else {
+            long start = System.nanoTime();
+            applyEncoding(request, response);
+            metrics.record(System.nanoTime() - start);
+        }
+        return true;
+    }
+
+    /**
+     * Apply the encodings to the request and the response.
+     *
+     * @param request  The request.
+     * @param response The response.
+     * @throws IOException This exception might not be thrown, the encodings have been validated.
+     */
+    protected void applyEncoding(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (forceRequest || request.getCharacterEncoding() == null) {
+            request.setCharacterEncoding(requestEncoding);
+        }
+        // The encoding of a response is never null, it defaults to ISO-8859-1, only an explicit charset counts.
+        if (forceResponse || !hasCharset(response.getContentType())) {
+            response.setCharacterEncoding(responseEncoding);
+        }
+    }
+
+    /**
+     * Check whether a content type declares a charset.
+     *
+     * @param contentType The content type, might be {@code null}.
+     * @return Value {@code true} if a charset is declared, or {@code false}.
+     */
+    private static boolean hasCharset(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int last = contentType.length() - "charset=".length();
+        for (int i = contentType.indexOf(';'); i >= 0 && i <= last; i++) {
+            if (contentType.regionMatches(true, i, "charset=", 0, "charset=".length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resolve an encoding.
+     *
+     * @param name The name of the encoding.
+     * @return The charset.
+     * @throws ServletException If the encoding is not supported.
+     */
+    private static Charset resolve(String name) throws ServletException {
+        try {
+            return Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Encoding [" + name + "] is not supported", e);
+        }
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        log.info("Character Encoding Filter initializing...");
+
+        this.requestCharset = resolve(Optional.ofNullable(filterConfig.getInitParameter("requestEncoding"))
+                .orElse(DEFAULT_ENCODING));
+        this.responseCharset = resolve(Optional.ofNullable(filterConfig.getInitParameter("responseEncoding"))
+                .orElse(DEFAULT_ENCODING));
+        this.requestEncoding = requestCharset.name();
+        this.responseEncoding = responseCharset.name();
+        this.forceRequest = Optional.ofNullable(filterConfig.getInitParameter("forceRequest"))
+                .map(Boolean::valueOf)
+                .orElse(forceRequest);
+        this.forceResponse = Optional.ofNullable(filterConfig.getInitParameter("forceResponse"))
+                .map(Boolean::valueOf)
+                .orElse(forceResponse);
+        log.debug("Encodings resolved, request: [{}] (force: {}), response: [{}] (force: {})",
+                requestEncoding, forceRequest, responseEncoding, forceResponse);
+
+        String transcodeFrom = filterConfig.getInitParameter("transcodeFrom");
+        if (transcodeFrom != null) {
+            try {
+                transcodeFrom(transcodeFrom, Optional.ofNullable(filterConfig.getInitParameter("transcodePaths"))
+                        .map((value) -> value.split(",( )?"))
+                        .orElse(new String[]{}));
+            } catch (IllegalArgumentException e) {
+                throw new ServletException("Invalid transcoding configuration: " + e.getMessage(), e);
+            }
+            log.debug("Responses are converted from [{}] to [{}]", transcodeFrom, responseEncoding);
+        }
+
+        if (Boolean.parseBoolean(filterConfig.getInitParameter("metricsEnabled"))) {
+            this.metrics = new FilterMetrics().register("CharacterEncodingFilter", filterConfig.getFilterName());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (metrics != null) {
+            metrics.unregister();
+            metrics = null;
+        }
+        log.info("Character Encoding Filter destroyed...");
+    }
+}
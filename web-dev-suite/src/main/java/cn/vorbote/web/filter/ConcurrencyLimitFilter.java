@@ -0,0 +1,180 @@
+package cn.vorbote.web.filter;
+
+import cn.vorbote.web.codec.ResultTemplate;
+import cn.vorbote.web.constants.WebStatus;
+import cn.vorbote.web.model.ResponseResult;
+import cn.vorbote.web.ratelimit.ConcurrencyLimiter;
+import cn.vorbote.web.utils.PathPatternTrie;
+import cn.vorbote.web.utils.ResultWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConcurrencyLimitFilter sheds load when the application slows down: the requests in flight are limited by a
+ * {@link ConcurrencyLimiter} adapting the limit to the observed latency, and a request over the limit is answered
+ * right away with {@link WebStatus#SERVICE_UNAVAILABLE 503}, so servlet threads do not pile up behind a slow
+ * downstream. The body of that answer is encoded once, only its timestamp is written per request.<br>
+ * Requests of the priority class are never shed nor counted: those matching the path patterns of the init parameter
+ * {@code exemptPaths} (e.g. {@code /health, /admin/**}), and those carrying the header named by {@code exemptHeader}
+ * with the value {@code exemptValue} ({@code critical} by default). The limit starts at {@code initialLimit} and stays
+ * within {@code minLimit} and {@code maxLimit}, it is recomputed every {@code windowMillis} milliseconds.<br>
+ * The latency of an asynchronous request is measured up to the return of the chain.
+ *
+ * @author vorbote
+ */
+@Slf4j
+public class ConcurrencyLimitFilter implements Filter {
+
+    private int initialLimit;
+
+    private int minLimit;
+
+    private int maxLimit;
+
+    private long windowMillis;
+
+    /**
+     * The paths of the priority class, or {@code null} if none.
+     */
+    private PathPatternTrie<Boolean> exemptPaths;
+
+    /**
+     * The header marking the priority class, or {@code null} if none.
+     */
+    private String exemptHeader;
+
+    private String exemptValue;
+
+    private ConcurrencyLimiter limiter;
+
+    /**
+     * The body of a shed request.
+     */
+    private final ResultTemplate shedResult = ResultTemplate.of(
+            ResponseResult.error("Service is overloaded, please retry later").code(WebStatus.SERVICE_UNAVAILABLE));
+
+    /**
+     * Generate a filter.
+     *
+     * @param initialLimit The limit to start with.
+     * @param minLimit     The lowest limit.
+     * @param maxLimit     The highest limit.
+     * @throws IllegalArgumentException If the limits are not in order.
+     */
+    public ConcurrencyLimitFilter(int initialLimit, int minLimit, int maxLimit) {
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.windowMillis = 1000;
+        this.exemptValue = "critical";
+        this.limiter = createLimiter();
+    }
+
+    public ConcurrencyLimitFilter() {
+        this(20, 4, 1000);
+    }
+
+    protected ConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Check whether a request belongs to the priority class.
+     *
+     * @param request The request.
+     * @return Value {@code true} if the request is never shed, or {@code false}.
+     */
+    protected boolean isExempt(HttpServletRequest request) {
+        if (exemptHeader != null && exemptValue.equalsIgnoreCase(request.getHeader(exemptHeader))) {
+            return true;
+        }
+        return exemptPaths != null && exemptPaths.match(request) != null;
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        if (isExempt(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        ConcurrencyLimiter limiter = this.limiter;
+        if (!limiter.tryAcquire()) {
+            shed(request, response);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            limiter.release(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Answer a shed request.
+     *
+     * @param request  The request.
+     * @param response The response.
+     * @throws IOException If the answer cannot be written.
+     */
+    protected void shed(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ResultWriter.write(request, response, WebStatus.SERVICE_UNAVAILABLE, shedResult,
+                ResponseResult.currentTimestamp());
+    }
+
+    private ConcurrencyLimiter createLimiter() {
+        return new ConcurrencyLimiter(initialLimit, minLimit, maxLimit, TimeUnit.MILLISECONDS.toNanos(windowMillis));
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        log.info("Concurrency Limit Filter initializing...");
+
+        try {
+            this.initialLimit = Optional.ofNullable(filterConfig.getInitParameter("initialLimit"))
+                    .map(Integer::parseInt)
+                    .orElse(initialLimit);
+            this.minLimit = Optional.ofNullable(filterConfig.getInitParameter("minLimit"))
+                    .map(Integer::parseInt)
+                    .orElse(minLimit);
+            this.maxLimit = Optional.ofNullable(filterConfig.getInitParameter("maxLimit"))
+                    .map(Integer::parseInt)
+                    .orElse(maxLimit);
+            this.windowMillis = Optional.ofNullable(filterConfig.getInitParameter("windowMillis"))
+                    .map(Long::parseLong)
+                    .orElse(windowMillis);
+            String exemptPaths = filterConfig.getInitParameter("exemptPaths");
+            if (exemptPaths != null) {
+                PathPatternTrie<Boolean> paths = new PathPatternTrie<>();
+                for (String pattern : exemptPaths.split(",( )?")) {
+                    paths.put(pattern.trim(), Boolean.TRUE);
+                }
+                this.exemptPaths = paths;
+            }
+            this.exemptHeader = Optional.ofNullable(filterConfig.getInitParameter("exemptHeader"))
+                    .orElse(exemptHeader);
+            this.exemptValue = Optional.ofNullable(filterConfig.getInitParameter("exemptValue"))
+                    .orElse(exemptValue);
+            this.limiter = createLimiter();
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid concurrency limit configuration: " + e.getMessage(), e);
+        }
+        log.debug("Concurrency limited from {} to {}, starting at {}", minLimit, maxLimit, initialLimit);
+    }
+
+    @Override
+    public void destroy() {
+        log.info("Concurrency Limit Filter destroyed...");
+    }
+}
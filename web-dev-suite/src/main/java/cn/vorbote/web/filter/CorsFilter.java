@@ -0,0 +1,824 @@
+package cn.vorbote.web.filter;
+
+import cn.vorbote.web.constants.WebStatus;
+import cn.vorbote.web.cors.CorsDecision;
+import cn.vorbote.web.cors.CorsPolicy;
+import cn.vorbote.web.cors.CorsRequestType;
+import cn.vorbote.web.cors.CorsRouteTable;
+import cn.vorbote.web.cors.DecisionCache;
+import cn.vorbote.web.metrics.CorsMetrics;
+import cn.vorbote.web.utils.ConfigFileWatcher;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * CORS Filter. You can easily handle CORS issues in your web application development by setting this CorsFilter to an
+ * appropriate status.<br>
+ * Besides the filter-level policy, a single CorsFilter can hold policies scoped to path patterns such as
+ * {@code /api/admin/**}, either registered through {@link #route(String, CorsPolicy)} or declared by init parameters:
+ * <pre class="code">
+ * routes = admin=/api/admin/**, public=/api/public/**
+ * admin.allowOrigin = https://admin.example.com
+ * public.allowOrigin = *
+ * </pre>
+ * A route inherits every property it does not declare from the filter-level ones.<br>
+ * The init parameter {@code configLocation} may point to a {@code .properties} or {@code .yml} file holding the same
+ * properties. The file is watched and every change is compiled off the request path and swapped in atomically; a change
+ * containing an invalid origin or method is rejected as a whole and the previous policy stays in effect.<br>
+ * Requests without {@code Origin} pass straight through, cross-origin requests only receive the headers the
+ * <a href="https://fetch.spec.whatwg.org/#http-cors-protocol">Fetch Standard</a> requires. Set the init parameter
+ * {@code alwaysEmitHeaders} to {@code true} to add every CORS header to every response as earlier versions did,
+ * preflight requests included: they are then answered with {@code 200} and every header instead of {@code 204} or
+ * {@code 403}.<br>
+ * Set the init parameter {@code metricsEnabled} to {@code true} to export {@link CorsMetrics} through JMX.
+ *
+ * @author vorbote
+ */
+@Slf4j
+public class CorsFilter implements Filter, WebSuiteStage {
+
+    private final static String REGEX_URL = "(https?://(www\\.)?[-a-zA-Z0-9@:%._+~#=]{1,256}\\.[a-zA-Z0-9()]{1,6}\\b([-a-zA-Z0-9()!@:%_+.~#?&/=]*))|(\\*)|(null)";
+
+    private final static String REGEX_ORIGIN_PATTERN = "https?://\\*\\.[-a-zA-Z0-9]+(\\.[-a-zA-Z0-9]+)*(:[0-9]{1,5})?";
+
+    private final static List<String> ALL_METHODS = Arrays.asList("GET", "HEAD", "POST", "PUT",
+            "DELETE", "CONNECT", "OPTIONS", "TRACE", "PATCH");
+
+    /**
+     * According to <a href="https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Access-Control-Allow-Credentials"
+     * >MDN Docs</a>, this tells browsers whether to expose the response to the frontend JavaScript code when
+     * the request's credentials mode ({@code Request.credentials}) is included.
+     */
+    private boolean allowCredentials;
+
+    /**
+     * According to <a href="https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Access-Control-Allow-Origin"
+     * >MDN Docs</a>, this response header indicates whether the response can be shared with requesting code from the
+     * given origin.<br>
+     * Besides exact origins, wildcard patterns such as {@code https://*.example.com} are accepted, they match any
+     * subdomain of the given host with the same scheme and port.
+     */
+    private String[] allowOrigin;
+
+    /**
+     * According to <a href="https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Access-Control-Allow-Headers"
+     * >MDN Docs</a>, this response header is used in response to a preflight request which includes the
+     * {@code Access-Control-Request-Headers} to indicate which HTTP headers can be used during the actual request.
+     */
+    private String[] allowHeaders;
+
+    /**
+     * According to <a href="https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Access-Control-Allow-Methods"
+     * >MDN Docs</a>, this response header specifies one or more methods allowed when accessing a resource in response
+     * to a preflight request.
+     */
+    private String[] allowMethods;
+
+    /**
+     * According to <a href="https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Access-Control-Expose-Headers"
+     * >MDN Docs</a>, this response header allows a server to indicate which response headers should be made available
+     * to scripts running in the browser, in response to a cross-origin request.<br>
+     * Only the <a href="https://developer.mozilla.org/en-US/docs/Glossary/CORS-safelisted_response_header"
+     * >CORS-safelisted</a> response headers are exposed by default. For clients to be able to access other headers,
+     * the server must list them using the Access-Control-Expose-Headers header.
+     */
+    private String[] exposeHeaders;
+
+    /**
+     * The maximum number of origins whose decision made by a wildcard pattern is cached, {@code 0} disables the cache.
+     * The cache is only created if at least one wildcard pattern is configured.
+     */
+    private int originCacheSize = CorsPolicy.DEFAULT_ORIGIN_CACHE_SIZE;
+
+    /**
+     * According to <a href="https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Access-Control-Max-Age"
+     * >MDN Docs</a>, this response header indicates how long the results of a preflight request can be cached. The
+     * value is in seconds, a negative value means the header is not sent.
+     */
+    private long maxAge;
+
+    /**
+     * Whether every CORS header is added to every response, regardless of the type of the request, and preflight
+     * requests get the reply of earlier versions.
+     */
+    private volatile boolean alwaysEmitHeaders;
+
+    /**
+     * The policies scoped to path patterns.
+     */
+    private final Map<String, CorsPolicy> routes = new LinkedHashMap<>();
+
+    /**
+     * The content of the watched configuration file, overriding the properties and routes above, or {@code null}.
+     */
+    private Map<String, String> externalConfig;
+
+    /**
+     * The watcher of the configuration file, or {@code null} if no file is configured.
+     */
+    private ConfigFileWatcher configWatcher;
+
+    /**
+     * The metrics of this filter, or {@code null} if metrics are disabled.
+     */
+    private CorsMetrics metrics;
+
+    /**
+     * The compiled snapshot of the properties and routes above. Requests only read this reference, it is replaced as a
+     * whole whenever the configuration changes.
+     */
+    private volatile CorsRouteTable routeTable;
+
+    /**
+     * Generate a DIY cors filter.
+     *
+     * @param allowCredentials According to <a href="https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Access-Control-Allow-Credentials"
+     *                         >MDN Docs</a>, this tells browsers whether to expose the response to the frontend
+     *                         JavaScript code when the request's credentials mode ({@code Request.credentials}) is
+     *                         included.
+     * @param allowOrigin      According to <a href="https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Access-Control-Allow-Origin"
+     *                         >MDN Docs</a>, this response header indicates whether the response can be shared with
+     *                         requesting code from the given origin.
+     * @param allowMethods     According to <a href="https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Access-Control-Allow-Headers"
+     *                         >MDN Docs</a>, this response header is used in response to a preflight request which
+     *                         includes the {@code Access-Control-Request-Headers} to indicate which HTTP headers can be
+     *                         used during the actual request.
+     * @param allowHeaders     According to <a href="https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Access-Control-Allow-Headers"
+     *                         >MDN Docs</a>, this response header is used in response to a preflight request which
+     *                         includes the {@code Access-Control-Request-Headers} to indicate which HTTP headers can be
+     *                         used during the actual request.
+     * @param exposeHeaders    According to <a href="https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Access-Control-Expose-Headers"
+     *                         >MDN Docs</a>, this response header allows a server to indicate which response headers
+     *                         should be made available to scripts running in the browser, in response to a cross-origin
+     *                         request.<br> Only the <a href="https://developer.mozilla.org/en-US/docs/Glossary/CORS-safelisted_response_header"
+     *                         >CORS-safelisted</a> response headers are exposed by default. For clients to be able to
+     *                         access other headers, the server must list them using the {@code Access-Control-Expose-Headers}
+     *                         header.
+     */
+    public CorsFilter(boolean allowCredentials,
+                      String[] allowOrigin,
+                      String[] allowMethods,
+                      String[] allowHeaders,
+                      String[] exposeHeaders) {
+        this(allowCredentials, allowOrigin, allowMethods, allowHeaders, exposeHeaders, CorsPolicy.DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * Generate a DIY cors filter.
+     *
+     * @param allowCredentials Whether credentials are allowed.
+     * @param allowOrigin      The allowed origins.
+     * @param allowMethods     The allowed methods.
+     * @param allowHeaders     The allowed request headers.
+     * @param exposeHeaders    The response headers exposed to scripts.
+     * @param maxAge           According to <a href="https://developer.mozilla.org/en-US/docs/Web/HTTP/Headers/Access-Control-Max-Age"
+     *                         >MDN Docs</a>, this response header indicates how long (in seconds) the results of a
+     *                         preflight request can be cached. A negative value means the header is not sent.
+     * @see #CorsFilter(boolean, String[], String[], String[], String[])
+     */
+    public CorsFilter(boolean allowCredentials,
+                      String[] allowOrigin,
+                      String[] allowMethods,
+                      String[] allowHeaders,
+                      String[] exposeHeaders,
+                      long maxAge) {
+        this.allowCredentials = allowCredentials;
+        this.allowOrigin = allowOrigin;
+        this.allowMethods = allowMethods;
+        this.allowHeaders = allowHeaders;
+        this.exposeHeaders = exposeHeaders;
+        this.maxAge = maxAge;
+        this.routeTable = compileRouteTable();
+    }
+
+    /**
+     * Get allow credentials data.
+     *
+     * @return Value {@code true} if allow credentials, or {@code false}.
+     */
+    protected boolean isAllowCredentials() {
+        return allowCredentials;
+    }
+
+    protected String[] getAllowOrigin() {
+        return allowOrigin;
+    }
+
+    protected String[] getAllowHeaders() {
+        return allowHeaders;
+    }
+
+    protected String[] getAllowMethods() {
+        return allowMethods;
+    }
+
+    protected String[] getExposeHeaders() {
+        return exposeHeaders;
+    }
+
+    protected int getOriginCacheSize() {
+        return originCacheSize;
+    }
+
+    protected long getMaxAge() {
+        return maxAge;
+    }
+
+    protected boolean isAlwaysEmitHeaders() {
+        return alwaysEmitHeaders;
+    }
+
+    /**
+     * Set whether every CORS header is added to every response regardless of the type of the request, and preflight
+     * requests are answered with {@code 200} and every header, which is the behaviour of earlier versions.
+     *
+     * @param alwaysEmitHeaders Whether to always add every CORS header.
+     * @return The filter itself.
+     */
+    public CorsFilter alwaysEmitHeaders(boolean alwaysEmitHeaders) {
+        this.alwaysEmitHeaders = alwaysEmitHeaders;
+        return this;
+    }
+
+    /**
+     * Transfer {@code String} array to MDN specified format of header value.
+     *
+     * @param array The {@code String} array.
+     * @return A {@code String} with the format of MDN specified header value.
+     */
+    protected static String fromArray(String[] array) {
+        return CorsPolicy.join(array);
+    }
+
+    /**
+     * Compile the current properties to an immutable policy.
+     *
+     * @return The compiled policy.
+     */
+    protected CorsPolicy compilePolicy() {
+        return new CorsPolicy(isAllowCredentials(), getAllowOrigin(), getAllowMethods(), getAllowHeaders(),
+                getExposeHeaders(), getOriginCacheSize(), getMaxAge());
+    }
+
+    /**
+     * Compile the current properties and routes to an immutable route table.
+     *
+     * @return The compiled route table.
+     */
+    protected synchronized CorsRouteTable compileRouteTable() {
+        if (externalConfig != null) {
+            return compileRouteTable(externalConfig::get, true);
+        }
+        return new CorsRouteTable(compilePolicy(), routes);
+    }
+
+    /**
+     * Compile the properties and routes overridden by the given parameters to an immutable route table. A property or
+     * route not declared by the parameters is taken from this filter.
+     *
+     * @param parameters The parameters, named like the init parameters.
+     * @param strict     Whether to reject an invalid origin or method instead of ignoring it.
+     * @return The compiled route table.
+     * @throws IllegalArgumentException If the parameters are invalid.
+     */
+    protected synchronized CorsRouteTable compileRouteTable(Function<String, String> parameters, boolean strict) {
+        PolicySettings settings = new PolicySettings(this).read(parameters, "", strict);
+        String declaredRoutes = parameters.apply("routes");
+        if (declaredRoutes == null) {
+            return new CorsRouteTable(settings.toPolicy(), routes);
+        }
+        Map<String, CorsPolicy> declared = new LinkedHashMap<>();
+        for (String route : split(declaredRoutes)) {
+            int separator = route.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Route [" + route + "] should be declared as name=/path/pattern");
+            }
+            String name = route.substring(0, separator).trim();
+            declared.put(route.substring(separator + 1).trim(),
+                    settings.read(parameters, name + ".", strict).toPolicy());
+        }
+        return new CorsRouteTable(settings.toPolicy(), declared);
+    }
+
+    /**
+     * Replace the configuration with the content of the watched file. An invalid content is rejected by an exception
+     * and the route table in effect is left untouched.
+     *
+     * @param config The content of the file.
+     * @throws IllegalArgumentException If the content is invalid.
+     */
+    protected synchronized void reload(Map<String, String> config) {
+        CorsRouteTable table = compileRouteTable(config::get, true);
+        this.externalConfig = config;
+        this.routeTable = table;
+        log.debug("CORS policy reloaded: {}, routes: {}", table.getDefaultPolicy(), table.getRoutes());
+    }
+
+    /**
+     * Get the filter-level policy currently in effect.
+     *
+     * @return The compiled policy.
+     */
+    protected CorsPolicy getPolicy() {
+        return routeTable.getDefaultPolicy();
+    }
+
+    /**
+     * Get the route table currently in effect.
+     *
+     * @return The compiled route table.
+     */
+    protected CorsRouteTable getRouteTable() {
+        return routeTable;
+    }
+
+    /**
+     * Apply a policy to the requests whose path (without the context path) matches the pattern.
+     *
+     * @param pathPattern The path pattern, e.g. {@code /api/admin/**} or {@code /health}.
+     * @param policy      The policy, see {@link CorsPolicy#builder()}.
+     * @return The filter itself.
+     * @throws IllegalArgumentException If the path pattern is malformed.
+     */
+    public synchronized CorsFilter route(String pathPattern, CorsPolicy policy) {
+        CorsPolicy previous = routes.put(pathPattern, policy);
+        try {
+            this.routeTable = compileRouteTable();
+        } catch (IllegalArgumentException e) {
+            if (previous == null) {
+                routes.remove(pathPattern);
+            } else {
+                routes.put(pathPattern, previous);
+            }
+            throw e;
+        }
+        return this;
+    }
+
+    /**
+     * Generate a default cors filter (cannot solve the {@code cors} problem).
+     */
+    public CorsFilter() {
+        this(false, new String[]{""}, new String[]{""}, new String[]{""}, new String[]{""});
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain) throws IOException, ServletException {
+        // Transform original ServletXxx instances to HttpServletXxx instances.
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        // CORS Response Header has been added properly.
+        if (apply(request, response)) {
+            chain.doFilter(request, response);
+        }
+    }
+
+    @Override
+    public boolean apply(HttpServletRequest request, HttpServletResponse response) {
+        CorsMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return applyCors(request, response);
+        }
+        long start = System.nanoTime();
+        boolean proceed = applyCors(request, response);
+        metrics.record(System.nanoTime() - start);
+        return proceed;
+    }
+
+    /**
+     * Add the CORS headers required by the request, or answer the request right away.
+     *
+     * @param request  The request.
+     * @param response The response.
+     * @return Value {@code true} if the request should be passed down the chain, or {@code false} if it has been
+     * answered.
+     */
+    protected boolean applyCors(HttpServletRequest request, HttpServletResponse response) {
+        String origin = request.getHeader("Origin");
+        CorsRequestType type = CorsRequestType.classify(origin, request.getMethod(),
+                request.getHeader("Access-Control-Request-Method"));
+        if (type == CorsRequestType.NON_CORS && !alwaysEmitHeaders) {
+            return true;
+        }
+
+        // Read the snapshot once, so that a request always sees a consistent policy.
+        CorsPolicy policy = routeTable.resolve(request);
+
+        // A real preflight request is answered right here, the chain will never see it. In the compatibility mode it
+        // gets the reply of earlier versions below: a 200 carrying every header.
+        if (type == CorsRequestType.PREFLIGHT && !alwaysEmitHeaders) {
+            CorsDecision decision = handlePreflight(policy, origin,
+                    request.getHeader("Access-Control-Request-Method"), request, response);
+            if (metrics != null) {
+                metrics.recordPreflight();
+                metrics.recordDecision(decision);
+            }
+            return false;
+        }
+
+        CorsDecision decision;
+        if (alwaysEmitHeaders) {
+            decision = addAllHeaders(policy, origin, response);
+        } else {
+            decision = addSimpleHeaders(policy, origin, response);
+        }
+        if (metrics != null && type != CorsRequestType.NON_CORS) {
+            if (type == CorsRequestType.PREFLIGHT) {
+                metrics.recordPreflight();
+            }
+            metrics.recordDecision(decision);
+        }
+
+        // all xhr requests will send a options request at first, therefore intercept all options requests.
+        return !(alwaysEmitHeaders && request.getMethod().equalsIgnoreCase("OPTIONS"));
+    }
+
+    /**
+     * Add the headers of a cross-origin request which is not a preflight request. Nothing but {@code Vary} is added if
+     * the origin is not allowed, the browser will then refuse to expose the response.
+     *
+     * @param policy   The policy in effect.
+     * @param origin   The value of the {@code Origin} request header.
+     * @param response The response.
+     * @return The decision.
+     */
+    protected CorsDecision addSimpleHeaders(CorsPolicy policy, String origin, HttpServletResponse response) {
+        String allowedOrigin = policy.resolveOrigin(origin);
+        if (CorsPolicy.isVaryByOrigin(allowedOrigin)) {
+            response.addHeader("Vary", "Origin");
+        }
+        if (allowedOrigin.isEmpty()) {
+            return CorsDecision.ORIGIN_NOT_ALLOWED;
+        }
+        response.addHeader("Access-Control-Allow-Origin", allowedOrigin);
+        if (policy.isAllowCredentials()) {
+            response.addHeader("Access-Control-Allow-Credentials", policy.getAllowCredentialsValue());
+        }
+        if (!policy.getExposeHeadersValue().isEmpty()) {
+            response.addHeader("Access-Control-Expose-Headers", policy.getExposeHeadersValue());
+        }
+        return CorsDecision.ALLOWED;
+    }
+
+    /**
+     * Add every CORS header, as earlier versions did for every request.
+     *
+     * @param policy   The policy in effect.
+     * @param origin   The value of the {@code Origin} request header, might be {@code null}.
+     * @param response The response.
+     * @return The decision.
+     */
+    protected CorsDecision addAllHeaders(CorsPolicy policy, String origin, HttpServletResponse response) {
+        String allowedOrigin = policy.resolveOrigin(origin);
+
+        // Handle CORS problem.
+        response.addHeader("Access-Control-Allow-Credentials", policy.getAllowCredentialsValue());
+        response.addHeader("Access-Control-Allow-Origin", allowedOrigin);
+        response.addHeader("Access-Control-Allow-Methods", policy.getAllowMethodsValue());
+        response.addHeader("Access-Control-Allow-Headers", policy.getAllowHeadersValue());
+
+        // Set exposed response headers
+        response.addHeader("Access-Control-Expose-Headers", policy.getExposeHeadersValue());
+
+        if (CorsPolicy.isVaryByOrigin(allowedOrigin)) {
+            response.addHeader("Vary", "Origin");
+        }
+        return allowedOrigin.isEmpty() ? CorsDecision.ORIGIN_NOT_ALLOWED : CorsDecision.ALLOWED;
+    }
+
+    /**
+     * Answer a preflight request. An allowed preflight request is answered with {@code 204 No Content} and the headers
+     * required by the <a href="https://fetch.spec.whatwg.org/#http-responses">Fetch Standard</a>, a rejected one is
+     * answered with {@code 403 Forbidden} and no CORS headers at all.
+     *
+     * @param policy        The policy in effect.
+     * @param origin        The value of the {@code Origin} request header.
+     * @param requestMethod The value of the {@code Access-Control-Request-Method} request header.
+     * @param request       The request.
+     * @param response      The response.
+     * @return The decision.
+     */
+    protected CorsDecision handlePreflight(CorsPolicy policy,
+                                           String origin,
+                                           String requestMethod,
+                                           HttpServletRequest request,
+                                           HttpServletResponse response) {
+        CorsDecision decision = policy.checkPreflight(origin, requestMethod,
+                request.getHeader("Access-Control-Request-Headers"));
+        String allowedOrigin = policy.resolveOrigin(origin);
+        if (CorsPolicy.isVaryByOrigin(allowedOrigin)) {
+            response.addHeader("Vary", "Origin");
+        }
+        if (decision != CorsDecision.ALLOWED) {
+            log.debug("Preflight request from [{}] rejected: {}", origin, decision);
+            response.setStatus(WebStatus.FORBIDDEN);
+            return decision;
+        }
+
+        response.setStatus(WebStatus.NO_CONTENT);
+        response.addHeader("Access-Control-Allow-Origin", allowedOrigin);
+        if (policy.isAllowCredentials()) {
+            response.addHeader("Access-Control-Allow-Credentials", policy.getAllowCredentialsValue());
+        }
+        response.addHeader("Access-Control-Allow-Methods", policy.getAllowMethodsValue());
+        if (!policy.getAllowHeadersValue().isEmpty()) {
+            response.addHeader("Access-Control-Allow-Headers", policy.getAllowHeadersValue());
+        }
+        if (policy.getMaxAgeValue() != null) {
+            response.addHeader("Access-Control-Max-Age", policy.getMaxAgeValue());
+        }
+        return decision;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        log.info("CorsFilter initializing...");
+
+        if (filterConfig.getInitParameterNames().hasMoreElements()) {
+            log.debug("Detected config is from web.xml file, using filterConfig to deploy.");
+            // set the property - allow credentials
+            log.debug("Initializing property [allowCredentials]");
+            this.allowCredentials = Optional.ofNullable(filterConfig.getInitParameter("allowCredentials"))
+                    .map(Boolean::valueOf)
+                    .orElse(false);
+            log.debug("Property [allowCredentials] initialized, value has been set to [{}]", allowCredentials);
+
+            // set the property - allow origin
+            log.debug("Initializing property [allowOrigin]");
+            String[] tmpAllowOrigin = split(filterConfig.getInitParameter("allowOrigin"));
+            if (checkOrigins(tmpAllowOrigin)) {
+                allowOrigin = tmpAllowOrigin;
+            }
+            log.debug("Property [allowOrigin] initialized, value has been set to {}", Arrays.toString(allowOrigin));
+
+            // set the property - allow headers
+            log.debug("Initializing property [allowHeaders]");
+            allowHeaders = split(filterConfig.getInitParameter("allowHeaders"));
+            log.debug("Property [allowHeaders] initialized, value has been set to {}", Arrays.toString(allowHeaders));
+
+            // set the property - allow methods
+            log.debug("Initializing property [allowMethods]");
+            String[] tmpAllowMethods = split(filterConfig.getInitParameter("allowMethods"));
+            if (checkMethods(tmpAllowMethods)) {
+                this.allowMethods = tmpAllowMethods;
+            }
+            log.debug("Property [allowMethods] initialized, value has been set to {}", Arrays.toString(allowMethods));
+
+            // set the property - expose headers
+            log.debug("Initializing property [exposeHeaders]");
+            this.exposeHeaders = split(filterConfig.getInitParameter("exposeHeaders"));
+            log.debug("Property [exposeHeaders] initialized, value has been set to {}", Arrays.toString(exposeHeaders));
+
+            // set the property - origin cache size
+            log.debug("Initializing property [originCacheSize]");
+            try {
+                this.originCacheSize = Optional.ofNullable(filterConfig.getInitParameter("originCacheSize"))
+                        .map(Integer::valueOf)
+                        .orElse(CorsPolicy.DEFAULT_ORIGIN_CACHE_SIZE);
+            } catch (NumberFormatException e) {
+                throw new ServletException("Invalid origin cache size: " + e.getMessage(), e);
+            }
+            if (originCacheSize < 0) {
+                throw new ServletException("Invalid origin cache size: must not be negative, got " + originCacheSize);
+            }
+            log.debug("Property [originCacheSize] initialized, value has been set to [{}]", originCacheSize);
+
+            // set the property - max age
+            log.debug("Initializing property [maxAge]");
+            try {
+                this.maxAge = Optional.ofNullable(filterConfig.getInitParameter("maxAge"))
+                        .map(Long::valueOf)
+                        .orElse(CorsPolicy.DEFAULT_MAX_AGE);
+            } catch (NumberFormatException e) {
+                throw new ServletException("Invalid max age: " + e.getMessage(), e);
+            }
+            log.debug("Property [maxAge] initialized, value has been set to [{}]", maxAge);
+
+            // set the property - always emit headers
+            log.debug("Initializing property [alwaysEmitHeaders]");
+            this.alwaysEmitHeaders = Optional.ofNullable(filterConfig.getInitParameter("alwaysEmitHeaders"))
+                    .map(Boolean::valueOf)
+                    .orElse(false);
+            log.debug("Property [alwaysEmitHeaders] initialized, value has been set to [{}]", alwaysEmitHeaders);
+
+            // set the property - routes
+            try {
+                if (filterConfig.getInitParameter("routes") != null) {
+                    routes.putAll(compileRouteTable(filterConfig::getInitParameter, false).getRoutes());
+                    log.debug("Property [routes] initialized, value has been set to {}", routes.keySet());
+                }
+            } catch (IllegalArgumentException e) {
+                throw new ServletException("Invalid CORS configuration: " + e.getMessage(), e);
+            }
+
+            // set the property - config location
+            String configLocation = filterConfig.getInitParameter("configLocation");
+            if (configLocation != null) {
+                watchConfig(Paths.get(configLocation));
+            }
+        } else {
+            log.debug("Detected config is from Spring, using application.(yml)/(properties) to deploy.");
+        }
+
+        try {
+            this.routeTable = compileRouteTable();
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid CORS configuration: " + e.getMessage(), e);
+        }
+        log.debug("CORS policy compiled: {}, routes: {}", routeTable.getDefaultPolicy(), routeTable.getRoutes());
+
+        // set the property - metrics enabled
+        if (Boolean.parseBoolean(filterConfig.getInitParameter("metricsEnabled"))) {
+            Supplier<DecisionCache> originCache = () -> routeTable.getDefaultPolicy().getOriginCache();
+            this.metrics = new CorsMetrics(originCache);
+            this.metrics.register("CorsFilter", filterConfig.getFilterName());
+        }
+    }
+
+    /**
+     * Load the configuration file and keep watching it.
+     *
+     * @param configFile The configuration file.
+     * @throws ServletException If the file cannot be loaded or its content is invalid.
+     */
+    private void watchConfig(Path configFile) throws ServletException {
+        log.debug("Loading CORS configuration from [{}]", configFile);
+        try {
+            Map<String, String> config = ConfigFileWatcher.load(configFile);
+            // Validate the content before it takes effect.
+            compileRouteTable(config::get, true);
+            synchronized (this) {
+                this.externalConfig = config;
+            }
+            this.configWatcher = new ConfigFileWatcher(configFile, this::reload);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new ServletException("Cannot load CORS configuration from [" + configFile + "]: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Split a comma separated init parameter.
+     *
+     * @param value The value of the init parameter, might be {@code null}.
+     * @return The items, or an empty array if the value is {@code null}.
+     */
+    private static String[] split(String value) {
+        return Optional.ofNullable(value)
+                .map((item) -> item.split(",( )?"))
+                .orElse(new String[]{});
+    }
+
+    /**
+     * Check whether every origin looks like a web url or a wildcard origin pattern.
+     *
+     * @param origins The origins.
+     * @return Value {@code true} if every origin is valid, or {@code false}.
+     */
+    private static boolean checkOrigins(String[] origins) {
+        return Arrays.stream(origins).allMatch((item) -> {
+            boolean checkResult = item.matches(REGEX_URL) || item.matches(REGEX_ORIGIN_PATTERN);
+            if (!checkResult) {
+                log.error("Origin [{}] does not like a web url, consider remove it?", item);
+            }
+            return checkResult;
+        });
+    }
+
+    /**
+     * Check whether every method is a web request method.
+     *
+     * @param methods The methods.
+     * @return Value {@code true} if every method is valid, or {@code false}.
+     */
+    private static boolean checkMethods(String[] methods) {
+        return Arrays.stream(methods).allMatch((item) -> {
+            boolean checkResult = ALL_METHODS.contains(item.toUpperCase());
+            if (!checkResult) {
+                log.error("Method [{}] does not like a web request method, consider remove it?", item);
+            }
+            return checkResult;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        if (metrics != null) {
+            metrics.unregister();
+            metrics = null;
+        }
+        if (configWatcher != null) {
+            try {
+                configWatcher.close();
+            } catch (IOException e) {
+                log.error("Failed to stop watching the CORS configuration: {}", e.getMessage());
+            }
+        }
+        log.info("CorsFilter destroyed...");
+    }
+
+    /**
+     * The raw properties of a policy, used to derive the policy of a route or of a reloaded configuration from the
+     * properties it inherits.
+     */
+    private static final class PolicySettings {
+
+        private boolean allowCredentials;
+
+        private String[] allowOrigin;
+
+        private String[] allowMethods;
+
+        private String[] allowHeaders;
+
+        private String[] exposeHeaders;
+
+        private int originCacheSize;
+
+        private long maxAge;
+
+        private PolicySettings() {
+        }
+
+        private PolicySettings(CorsFilter filter) {
+            this.allowCredentials = filter.isAllowCredentials();
+            this.allowOrigin = filter.getAllowOrigin();
+            this.allowMethods = filter.getAllowMethods();
+            this.allowHeaders = filter.getAllowHeaders();
+            this.exposeHeaders = filter.getExposeHeaders();
+            this.originCacheSize = filter.getOriginCacheSize();
+            this.maxAge = filter.getMaxAge();
+        }
+
+        /**
+         * Derive the settings overridden by the parameters with the given prefix.
+         *
+         * @param parameters The parameters.
+         * @param prefix     The prefix of the parameter names.
+         * @param strict     Whether to reject an invalid origin or method instead of ignoring it.
+         * @return The derived settings.
+         * @throws IllegalArgumentException If a number is malformed or negative, or the parameters are invalid in
+         *                                  strict mode.
+         */
+        private PolicySettings read(Function<String, String> parameters, String prefix, boolean strict) {
+            PolicySettings settings = new PolicySettings();
+            settings.allowCredentials = Optional.ofNullable(parameters.apply(prefix + "allowCredentials"))
+                    .map(Boolean::valueOf)
+                    .orElse(allowCredentials);
+            settings.allowOrigin = Optional.ofNullable(parameters.apply(prefix + "allowOrigin"))
+                    .map(CorsFilter::split)
+                    .filter((value) -> checkOrigins(value) || reject(strict, prefix + "allowOrigin"))
+                    .orElse(allowOrigin);
+            settings.allowMethods = Optional.ofNullable(parameters.apply(prefix + "allowMethods"))
+                    .map(CorsFilter::split)
+                    .filter((value) -> checkMethods(value) || reject(strict, prefix + "allowMethods"))
+                    .orElse(allowMethods);
+            settings.allowHeaders = Optional.ofNullable(parameters.apply(prefix + "allowHeaders"))
+                    .map(CorsFilter::split)
+                    .orElse(allowHeaders);
+            settings.exposeHeaders = Optional.ofNullable(parameters.apply(prefix + "exposeHeaders"))
+                    .map(CorsFilter::split)
+                    .orElse(exposeHeaders);
+            settings.originCacheSize = Optional.ofNullable(parameters.apply(prefix + "originCacheSize"))
+                    .map(Integer::valueOf)
+                    .filter((value) -> value >= 0 || reject(true, prefix + "originCacheSize"))
+                    .orElse(originCacheSize);
+            settings.maxAge = Optional.ofNullable(parameters.apply(prefix + "maxAge"))
+                    .map(Long::valueOf)
+                    .orElse(maxAge);
+            return settings;
+        }
+
+        private static boolean reject(boolean strict, String name) {
+            if (strict) {
+                throw new IllegalArgumentException("Property [" + name + "] is invalid");
+            }
+            return false;
+        }
+
+        private CorsPolicy toPolicy() {
+            return CorsPolicy.builder()
+                    .allowCredentials(allowCredentials)
+                    .allowOrigin(allowOrigin)
+                    .allowMethods(allowMethods)
+                    .allowHeaders(allowHeaders)
+                    .exposeHeaders(exposeHeaders)
+                    .originCacheSize(originCacheSize)
+                    .maxAge(maxAge)
+                    .build();
+        }
+    }
+}
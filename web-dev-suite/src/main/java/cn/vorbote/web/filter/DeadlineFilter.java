@@ -0,0 +1,554 @@
+package cn.vorbote.web.filter;
+
+import cn.vorbote.web.constants.WebStatus;
+import cn.vorbote.web.deadline.RequestDeadline;
+import cn.vorbote.web.exceptions.BizException;
+import cn.vorbote.web.model.ResponseResult;
+import cn.vorbote.web.utils.PathPatternTrie;
+import cn.vorbote.web.utils.ResultWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DeadlineFilter gives every request an absolute deadline, published as a {@link RequestDeadline} for the handlers to
+ * query and propagate, and answers with a timeout {@link ResponseResult} ({@link WebStatus#GATEWAY_TIMEOUT 504}) once
+ * it passes, instead of keeping the caller waiting for work it has given up on.<br>
+ * The client states its budget in the header named by {@code header} ({@code X-Request-Timeout} by default), in
+ * milliseconds or with a unit such as {@code 500ms} or {@code 2s}. Without it, the route default applies: the path
+ * patterns of the init parameter {@code timeouts} (e.g. {@code /api/report/**=30000, /api/**=2000}) or
+ * {@code defaultTimeout}; a client may shorten the route default, never extend it. A request without any budget is
+ * left alone, and one arriving with an exhausted budget is answered without running the chain.<br>
+ * The chain runs on the container thread as usual, so the state earlier filters bind to the thread (security context,
+ * MDC, transaction) stays visible. A handler working synchronously gives up cooperatively: it checks
+ * {@link RequestDeadline#isExpired()} between steps, or calls {@link RequestDeadline#check()}, whose exception this
+ * filter turns into the timeout result. A handler going asynchronous (e.g. returning a {@code DeferredResult} or a
+ * {@code Callable}) releases the container thread, and the timeout of its asynchronous context is cut down to the
+ * deadline: the container then answers with the timeout result on time and frees the request, and whatever the
+ * handler still writes is dropped. The timeout result wins over the timeout handling of the framework, which only
+ * applies to the requests without a deadline.
+ *
+ * @author vorbote
+ */
+@Slf4j
+public class DeadlineFilter implements Filter {
+
+    private String header;
+
+    /**
+     * The default budget in milliseconds, {@code 0} if none.
+     */
+    private long defaultTimeout;
+
+    /**
+     * The budgets of the routes in milliseconds, by path pattern.
+     */
+    private final Map<String, Long> routeTimeouts = new LinkedHashMap<>();
+
+    /**
+     * The compiled route budgets, replaced as a whole on registration.
+     */
+    private volatile PathPatternTrie<Long> timeouts = new PathPatternTrie<>();
+
+    /**
+     * Generate a filter.
+     *
+     * @param header         The header of the client budget.
+     * @param defaultTimeout The default budget in milliseconds, {@code 0} if none.
+     */
+    public DeadlineFilter(String header, long defaultTimeout) {
+        this.header = header;
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    public DeadlineFilter() {
+        this("X-Request-Timeout", 0);
+    }
+
+    /**
+     * Set the budget of the routes matching a path pattern.
+     *
+     * @param pathPattern The path pattern, see {@link PathPatternTrie}.
+     * @param timeout     The budget in milliseconds.
+     * @return The filter itself.
+     * @throws IllegalArgumentException If the path pattern is malformed or the budget is not positive.
+     */
+    public synchronized DeadlineFilter timeout(String pathPattern, long timeout) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("The timeout of [" + pathPattern + "] must be positive, got " + timeout);
+        }
+        PathPatternTrie<Long> compiled = new PathPatternTrie<>();
+        compiled.put(pathPattern, timeout);
+        for (Map.Entry<String, Long> entry : routeTimeouts.entrySet()) {
+            if (!entry.getKey().equals(pathPattern)) {
+                compiled.put(entry.getKey(), entry.getValue());
+            }
+        }
+        routeTimeouts.put(pathPattern, timeout);
+        this.timeouts = compiled;
+        return this;
+    }
+
+    /**
+     * Get the budget of a request.
+     *
+     * @param request The request.
+     * @return The budget in milliseconds, or {@code -1} if the request has none.
+     */
+    protected long getTimeout(HttpServletRequest request) {
+        PathPatternTrie<Long> timeouts = this.timeouts;
+        Long route = timeouts.isEmpty() ? null : timeouts.match(request);
+        long limit = route != null ? route : defaultTimeout > 0 ? defaultTimeout : -1;
+        String value = request.getHeader(header);
+        if (value != null) {
+            try {
+                long requested = Math.max(0L, parseTimeout(value));
+                return limit < 0 ? requested : Math.min(requested, limit);
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring malformed timeout [{}]", value);
+            }
+        }
+        return limit;
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        long timeout = request.getDispatcherType() == DispatcherType.REQUEST ? getTimeout(request) : -1;
+        if (timeout < 0) {
+            chain.doFilter(request, response);
+            return;
+        }
+        RequestDeadline deadline = RequestDeadline.after(timeout, TimeUnit.MILLISECONDS);
+        deadline.attach(request);
+        if (timeout == 0) {
+            timeOut(request, response, deadline);
+            return;
+        }
+
+        // Only a request which may go asynchronous can outlive the deadline with a handler still holding it.
+        GuardedResponse guarded = request.isAsyncSupported() ? new GuardedResponse(response) : null;
+        try {
+            chain.doFilter(request, guarded != null ? guarded : response);
+        } catch (BizException e) {
+            if (e.getCode() != WebStatus.GATEWAY_TIMEOUT || !deadline.isExpired() || response.isCommitted()) {
+                throw e;
+            }
+            log.debug("Handler gave up at the deadline of [{}]", request.getRequestURI());
+            timeOut(request, response, deadline);
+            return;
+        }
+
+        if (guarded != null && request.isAsyncStarted()) {
+            AsyncContext asyncContext = request.getAsyncContext();
+            long remaining = Math.max(1L, deadline.getRemainingMillis());
+            if (asyncContext.getTimeout() <= 0 || asyncContext.getTimeout() > remaining) {
+                asyncContext.setTimeout(remaining);
+            }
+            asyncContext.addListener(new DeadlineListener(request, response, guarded, deadline));
+        }
+    }
+
+    /**
+     * Answer a request whose deadline has passed.
+     *
+     * @param request  The request.
+     * @param response The response.
+     * @param deadline The deadline.
+     * @throws IOException If the answer cannot be written.
+     */
+    protected void timeOut(HttpServletRequest request, HttpServletResponse response, RequestDeadline deadline)
+            throws IOException {
+        String message = "Deadline of " + deadline.getBudget(TimeUnit.MILLISECONDS) + "ms exceeded";
+        ResultWriter.write(request, response, WebStatus.GATEWAY_TIMEOUT,
+                ResponseResult.timeout(message).code(WebStatus.GATEWAY_TIMEOUT));
+    }
+
+    /**
+     * Parse a timeout.
+     *
+     * @param value The timeout, in milliseconds or with the unit {@code ms}, {@code s} or {@code m}.
+     * @return The timeout in milliseconds.
+     * @throws NumberFormatException If the timeout is malformed or too large.
+     */
+    static long parseTimeout(String value) {
+        String timeout = value.trim().toLowerCase(Locale.ROOT);
+        long unit = 1;
+        if (timeout.endsWith("ms")) {
+            timeout = timeout.substring(0, timeout.length() - 2);
+        } else if (timeout.endsWith("s")) {
+            unit = 1000;
+            timeout = timeout.substring(0, timeout.length() - 1);
+        } else if (timeout.endsWith("m")) {
+            unit = 60_000;
+            timeout = timeout.substring(0, timeout.length() - 1);
+        }
+        try {
+            return Math.multiplyExact(Long.parseLong(timeout.trim()), unit);
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Timeout [" + value + "] is too large");
+        }
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        log.info("Deadline Filter initializing...");
+
+        try {
+            this.header = Optional.ofNullable(filterConfig.getInitParameter("header"))
+                    .map(String::trim)
+                    .orElse(header);
+            this.defaultTimeout = Optional.ofNullable(filterConfig.getInitParameter("defaultTimeout"))
+                    .map(DeadlineFilter::parseTimeout)
+                    .orElse(defaultTimeout);
+            String timeouts = filterConfig.getInitParameter("timeouts");
+            if (timeouts != null) {
+                for (String timeout : timeouts.split(",( )?")) {
+                    int separator = timeout.lastIndexOf('=');
+                    if (separator <= 0) {
+                        throw new IllegalArgumentException("Timeout [" + timeout + "] is not in the form pattern=time");
+                    }
+                    timeout(timeout.substring(0, separator).trim(), parseTimeout(timeout.substring(separator + 1)));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid deadline configuration: " + e.getMessage(), e);
+        }
+        log.debug("Deadlines read from [{}], {}ms by default, by path: {}", header, defaultTimeout,
+                filterConfig.getInitParameter("timeouts"));
+    }
+
+    @Override
+    public void destroy() {
+        log.info("Deadline Filter destroyed...");
+    }
+
+    /**
+     * Answers the request when its asynchronous processing times out at the deadline, and closes the guarded response
+     * once the request is over, so the late writes of the handler never reach a recycled response.
+     */
+    private final class DeadlineListener implements AsyncListener {
+
+        private final HttpServletRequest request;
+
+        private final HttpServletResponse response;
+
+        private final GuardedResponse guarded;
+
+        private final RequestDeadline deadline;
+
+        private DeadlineListener(HttpServletRequest request, HttpServletResponse response, GuardedResponse guarded,
+                                 RequestDeadline deadline) {
+            this.request = request;
+            this.response = response;
+            this.guarded = guarded;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+            if (!guarded.close()) {
+                return;
+            }
+            if (response.isCommitted()) {
+                log.debug("Deadline passed after the response has been committed");
+            } else {
+                timeOut(request, response, deadline);
+            }
+            try {
+                event.getAsyncContext().complete();
+            } catch (IllegalStateException e) {
+                // Another listener has dispatched the request already, the answer written above goes out with it.
+                log.debug("Asynchronous request already dispatched at its deadline: {}", e.getMessage());
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            guarded.close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            guarded.close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+    /**
+     * A response wrapper dropping everything the handler does once the response has been closed, either by the end of
+     * the chain or by the deadline. Every operation is guarded by the monitor of the wrapper, so closing waits for a
+     * write in progress and no write reaches a response which has been completed.
+     */
+    private static final class GuardedResponse extends HttpServletResponseWrapper {
+
+        private boolean closed;
+
+        private GuardedOutputStream outputStream;
+
+        private PrintWriter writer;
+
+        private GuardedResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        /**
+         * Close the response, the writer of the handler is flushed first.
+         *
+         * @return Value {@code true} if the response has been closed by this call, or {@code false}.
+         */
+        private synchronized boolean close() {
+            if (closed) {
+                return false;
+            }
+            if (writer != null) {
+                writer.flush();
+            }
+            closed = true;
+            return true;
+        }
+
+        @Override
+        public synchronized ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            return stream();
+        }
+
+        @Override
+        public synchronized PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (outputStream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called");
+                }
+                writer = new PrintWriter(new OutputStreamWriter(stream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        private GuardedOutputStream stream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new GuardedOutputStream(super.getOutputStream());
+            }
+            return outputStream;
+        }
+
+        @Override
+        public synchronized void setStatus(int sc) {
+            if (!closed) {
+                super.setStatus(sc);
+            }
+        }
+
+        @Override
+        public synchronized void sendError(int sc, String msg) throws IOException {
+            if (!closed) {
+                super.sendError(sc, msg);
+            }
+        }
+
+        @Override
+        public synchronized void sendError(int sc) throws IOException {
+            if (!closed) {
+                super.sendError(sc);
+            }
+        }
+
+        @Override
+        public synchronized void sendRedirect(String location) throws IOException {
+            if (!closed) {
+                super.sendRedirect(location);
+            }
+        }
+
+        @Override
+        public synchronized void setHeader(String name, String value) {
+            if (!closed) {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public synchronized void addHeader(String name, String value) {
+            if (!closed) {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public synchronized void setIntHeader(String name, int value) {
+            if (!closed) {
+                super.setIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public synchronized void addIntHeader(String name, int value) {
+            if (!closed) {
+                super.addIntHeader(name, value);
+            }
+        }
+
+        @Override
+        public synchronized void setDateHeader(String name, long date) {
+            if (!closed) {
+                super.setDateHeader(name, date);
+            }
+        }
+
+        @Override
+        public synchronized void addDateHeader(String name, long date) {
+            if (!closed) {
+                super.addDateHeader(name, date);
+            }
+        }
+
+        @Override
+        public synchronized void setContentType(String type) {
+            if (!closed) {
+                super.setContentType(type);
+            }
+        }
+
+        @Override
+        public synchronized void setCharacterEncoding(String charset) {
+            if (!closed) {
+                super.setCharacterEncoding(charset);
+            }
+        }
+
+        @Override
+        public synchronized void setContentLength(int len) {
+            if (!closed) {
+                super.setContentLength(len);
+            }
+        }
+
+        @Override
+        public synchronized void setContentLengthLong(long len) {
+            if (!closed) {
+                super.setContentLengthLong(len);
+            }
+        }
+
+        @Override
+        public synchronized void setLocale(Locale loc) {
+            if (!closed) {
+                super.setLocale(loc);
+            }
+        }
+
+        @Override
+        public synchronized void setBufferSize(int size) {
+            if (!closed) {
+                super.setBufferSize(size);
+            }
+        }
+
+        @Override
+        public synchronized void flushBuffer() throws IOException {
+            if (!closed) {
+                if (writer != null) {
+                    writer.flush();
+                }
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public synchronized void resetBuffer() {
+            if (!closed) {
+                super.resetBuffer();
+            }
+        }
+
+        @Override
+        public synchronized void reset() {
+            if (!closed) {
+                super.reset();
+            }
+        }
+
+        @Override
+        public synchronized boolean isCommitted() {
+            return closed || super.isCommitted();
+        }
+
+        /**
+         * An output stream dropping the bytes written once the response has been closed.
+         */
+        private final class GuardedOutputStream extends ServletOutputStream {
+
+            private final ServletOutputStream delegate;
+
+            private GuardedOutputStream(ServletOutputStream delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                synchronized (GuardedResponse.this) {
+                    if (!closed) {
+                        delegate.write(b);
+                    }
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                synchronized (GuardedResponse.this) {
+                    if (!closed) {
+                        delegate.write(b, off, len);
+                    }
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                synchronized (GuardedResponse.this) {
+                    if (!closed) {
+                        delegate.flush();
+                    }
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                synchronized (GuardedResponse.this) {
+                    if (!closed) {
+                        delegate.close();
+                    }
+                }
+            }
+
+            @Override
+            public boolean isReady() {
+                return delegate.isReady();
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                throw new UnsupportedOperationException("Non-blocking writes are not supported under a deadline");
+            }
+        }
+    }
+}
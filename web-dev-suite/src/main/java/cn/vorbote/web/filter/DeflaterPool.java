@@ -0,0 +1,207 @@
+package cn.vorbote.web.filter;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A bounded pool of {@link Compressor}s writing the gzip format. Each compressor owns a {@link Deflater}, whose native
+ * zlib state is expensive to create and is only freed by {@link Deflater#end()}, together with a buffer holding the
+ * head of a response and a fixed size output chunk. Once the pool is warm, compressing a response creates neither
+ * zlib state nor buffers. When every pooled compressor is in use a new one is created, and it is ended on release if
+ * the pool is full.
+ *
+ * @author vorbote
+ */
+public final class DeflaterPool {
+
+    /**
+     * The default size of the output chunks.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * The gzip member header: magic, deflate method, no flags, no modification time, no extra flags, unknown OS.
+     */
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final int level;
+
+    private final int headSize;
+
+    private final int bufferSize;
+
+    private final ArrayBlockingQueue<Compressor> idle;
+
+    /**
+     * Create a pool.
+     *
+     * @param level      The compression level, from {@code 0} to {@code 9}, or {@link Deflater#DEFAULT_COMPRESSION}.
+     * @param maxIdle    The maximum number of idle compressors kept.
+     * @param headSize   The size of the buffer holding the head of a response.
+     * @param bufferSize The size of the output chunks.
+     * @throws IllegalArgumentException If the level is out of range.
+     */
+    public DeflaterPool(int level, int maxIdle, int headSize, int bufferSize) {
+        if (level != Deflater.DEFAULT_COMPRESSION
+                && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        this.level = level;
+        this.headSize = Math.max(0, headSize);
+        this.bufferSize = Math.max(64, bufferSize);
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, maxIdle));
+    }
+
+    /**
+     * Get the compression level.
+     *
+     * @return The compression level.
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Get the number of idle compressors.
+     *
+     * @return The number of idle compressors.
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Take a compressor out of the pool.
+     *
+     * @return A reset compressor.
+     */
+    Compressor acquire() {
+        Compressor compressor = idle.poll();
+        return compressor != null ? compressor : new Compressor();
+    }
+
+    /**
+     * Return a compressor to the pool, or free its native state if the pool is full.
+     *
+     * @param compressor The compressor.
+     */
+    void release(Compressor compressor) {
+        compressor.reset();
+        if (!idle.offer(compressor)) {
+            compressor.deflater.end();
+        }
+    }
+
+    /**
+     * Free the native state of every idle compressor. Compressors released afterwards are pooled again.
+     */
+    public void clear() {
+        Compressor compressor;
+        while ((compressor = idle.poll()) != null) {
+            compressor.deflater.end();
+        }
+    }
+
+    /**
+     * A deflater with its buffers. Not thread safe, a compressor serves one response at a time.
+     */
+    final class Compressor {
+
+        private final Deflater deflater = new Deflater(level, true);
+
+        private final CRC32 crc = new CRC32();
+
+        /**
+         * The head of a response, kept until it is known whether the response is worth compressing.
+         */
+        final byte[] head = new byte[headSize];
+
+        private final byte[] output = new byte[bufferSize];
+
+        private boolean started;
+
+        /**
+         * Compress bytes.
+         *
+         * @param bytes  The bytes.
+         * @param offset The offset of the bytes.
+         * @param length The number of the bytes.
+         * @param sink   The receiver of the compressed bytes.
+         * @throws IOException If the sink fails.
+         */
+        void write(byte[] bytes, int offset, int length, ByteSink sink) throws IOException {
+            start(sink);
+            if (length == 0) {
+                return;
+            }
+            crc.update(bytes, offset, length);
+            deflater.setInput(bytes, offset, length);
+            while (!deflater.needsInput()) {
+                deflate(Deflater.NO_FLUSH, sink);
+            }
+        }
+
+        /**
+         * Send everything compressed so far, the stream stays open.
+         *
+         * @param sink The receiver of the compressed bytes.
+         * @throws IOException If the sink fails.
+         */
+        void flush(ByteSink sink) throws IOException {
+            start(sink);
+            // A full chunk may leave output pending inside zlib.
+            while (deflate(Deflater.SYNC_FLUSH, sink) == output.length) {
+                // Keep flushing.
+            }
+        }
+
+        /**
+         * Finish the gzip member: the pending output and the trailer.
+         *
+         * @param sink The receiver of the compressed bytes.
+         * @throws IOException If the sink fails.
+         */
+        void finish(ByteSink sink) throws IOException {
+            start(sink);
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate(Deflater.NO_FLUSH, sink);
+            }
+            int checksum = (int) crc.getValue();
+            int size = (int) deflater.getBytesRead();
+            byte[] trailer = output;
+            trailer[0] = (byte) checksum;
+            trailer[1] = (byte) (checksum >>> 8);
+            trailer[2] = (byte) (checksum >>> 16);
+            trailer[3] = (byte) (checksum >>> 24);
+            trailer[4] = (byte) size;
+            trailer[5] = (byte) (size >>> 8);
+            trailer[6] = (byte) (size >>> 16);
+            trailer[7] = (byte) (size >>> 24);
+            sink.write(trailer, 0, 8);
+        }
+
+        private void start(ByteSink sink) throws IOException {
+            if (!started) {
+                started = true;
+                sink.write(HEADER, 0, HEADER.length);
+            }
+        }
+
+        private int deflate(int flush, ByteSink sink) throws IOException {
+            int count = deflater.deflate(output, 0, output.length, flush);
+            if (count > 0) {
+                sink.write(output, 0, count);
+            }
+            return count;
+        }
+
+        private void reset() {
+            deflater.reset();
+            crc.reset();
+            started = false;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package cn.vorbote.web.filter;
+
+import cn.vorbote.web.constants.WebStatus;
+import cn.vorbote.web.utils.PathPatternTrie;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * EtagFilter gives the successful responses of {@code GET} requests a strong {@code ETag} and answers a matching
+ * {@code If-None-Match} with a bodiless {@link WebStatus#NOT_MODIFIED 304}.<br>
+ * By default the body is buffered (up to {@code maxBufferSize} bytes, larger bodies are sent untouched, flushes of the
+ * application are held back) and hashed with 64-bit FNV-1a while it is written, so the tag is ready the moment the
+ * chain returns.<br>
+ * A handler able to tell the version of its resource cheaply, e.g. from an update counter, can register a version key
+ * for its path patterns through {@link #version(String, Function)}. For those paths the tag is derived from the key
+ * before the handler runs: a matching request is answered without invoking the handler at all, and the body of the
+ * others is neither buffered nor hashed, and they are tagged only if their status is still {@code 200} when the body
+ * starts. Responses to {@code HEAD} requests are only tagged this way.<br>
+ * The filter exposes itself as the servlet context attribute named after its class, so handlers can register their
+ * keys at startup.
+ *
+ * @author vorbote
+ */
+@Slf4j
+public class EtagFilter implements Filter {
+
+    /**
+     * The default maximum size of a buffered body.
+     */
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 1024 * 1024;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * The maximum size of a buffered body.
+     */
+    private int maxBufferSize;
+
+    /**
+     * The version keys registered by the handlers, by path pattern.
+     */
+    private final Map<String, Function<HttpServletRequest, String>> versionKeys = new LinkedHashMap<>();
+
+    /**
+     * The compiled version keys, replaced as a whole on registration.
+     */
+    private volatile PathPatternTrie<Function<HttpServletRequest, String>> versions = new PathPatternTrie<>();
+
+    /**
+     * Generate a filter.
+     *
+     * @param maxBufferSize The maximum size of a buffered body.
+     */
+    public EtagFilter(int maxBufferSize) {
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    public EtagFilter() {
+        this(DEFAULT_MAX_BUFFER_SIZE);
+    }
+
+    protected int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    /**
+     * Register the version key of the resources matching a path pattern. The key must change whenever the content of
+     * the response changes, and it is computed for every request, so it should be cheap. A {@code null} key falls back
+     * to hashing the body.
+     *
+     * @param pathPattern The path pattern, see {@link PathPatternTrie}.
+     * @param versionKey  The function computing the version key of a request.
+     * @return The filter itself.
+     * @throws IllegalArgumentException If the path pattern is malformed.
+     */
+    public synchronized EtagFilter version(String pathPattern, Function<HttpServletRequest, String> versionKey) {
+        PathPatternTrie<Function<HttpServletRequest, String>> compiled = new PathPatternTrie<>();
+        compiled.put(pathPattern, versionKey);
+        for (Map.Entry<String, Function<HttpServletRequest, String>> entry : versionKeys.entrySet()) {
+            if (!entry.getKey().equals(pathPattern)) {
+                compiled.put(entry.getKey(), entry.getValue());
+            }
+        }
+        versionKeys.put(pathPattern, versionKey);
+        this.versions = compiled;
+        return this;
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        PathPatternTrie<Function<HttpServletRequest, String>> versions = this.versions;
+        Function<HttpServletRequest, String> versionKey = versions.isEmpty() ? null : versions.match(request);
+        String version = versionKey == null ? null : versionKey.apply(request);
+        if (version != null) {
+            String etag = toEtag(hash(FNV_OFFSET_BASIS, version));
+            if (matches(request.getHeader("If-None-Match"), etag)) {
+                response.setHeader("ETag", etag);
+                response.setStatus(WebStatus.NOT_MODIFIED);
+                return;
+            }
+            // The tag only belongs to the resource itself, not to an error or a redirect the handler answers with.
+            VersionedResponseWrapper wrapper = new VersionedResponseWrapper(response, etag);
+            chain.doFilter(request, wrapper);
+            if (!request.isAsyncStarted()) {
+                wrapper.tag();
+            }
+            return;
+        }
+        // The body of a HEAD response is empty, only a version key can tag it.
+        if (!"GET".equals(method)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        HashingResponseWrapper wrapper = new HashingResponseWrapper(response, maxBufferSize);
+        chain.doFilter(request, wrapper);
+        wrapper.finish();
+
+        int status = response.getStatus();
+        if (wrapper.isPassedThrough() || status != HttpServletResponse.SC_OK
+                || response.containsHeader("ETag") || response.isCommitted()) {
+            wrapper.sendBody();
+            return;
+        }
+        String etag = toEtag(wrapper.hash);
+        response.setHeader("ETag", etag);
+        if (matches(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(WebStatus.NOT_MODIFIED);
+            return;
+        }
+        wrapper.sendBody();
+    }
+
+    /**
+     * Check whether an {@code If-None-Match} header matches a tag, with the weak comparison the header requires.
+     *
+     * @param ifNoneMatch The header, might be {@code null}.
+     * @param etag        The strong tag of the response.
+     * @return Value {@code true} if the tag is matched, or {@code false}.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        int length = ifNoneMatch.length();
+        int i = 0;
+        while (i < length) {
+            char c = ifNoneMatch.charAt(i);
+            if (c == ' ' || c == ',') {
+                i++;
+            } else if (c == '*') {
+                return true;
+            } else {
+                if (c == 'W' && ifNoneMatch.startsWith("W/", i)) {
+                    i += 2;
+                }
+                int end = ifNoneMatch.indexOf(',', i);
+                if (end < 0) {
+                    end = length;
+                }
+                int to = end;
+                while (to > i && ifNoneMatch.charAt(to - 1) == ' ') {
+                    to--;
+                }
+                if (to - i == etag.length() && ifNoneMatch.startsWith(etag, i)) {
+                    return true;
+                }
+                i = end + 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Continue a 64-bit FNV-1a hash over the chars of a string, two bytes per char.
+     *
+     * @param hash  The hash so far.
+     * @param value The string.
+     * @return The hash.
+     */
+    private static long hash(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Format a hash as a strong entity tag.
+     *
+     * @param hash The hash.
+     * @return The quoted tag.
+     */
+    private static String toEtag(long hash) {
+        char[] chars = new char[18];
+        chars[0] = '"';
+        for (int i = 16; i > 0; i--) {
+            chars[i] = HEX[(int) (hash & 0xf)];
+            hash >>>= 4;
+        }
+        chars[17] = '"';
+        return new String(chars);
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        log.info("ETag Filter initializing...");
+
+        try {
+            this.maxBufferSize = Optional.ofNullable(filterConfig.getInitParameter("maxBufferSize"))
+                    .map(Integer::parseInt)
+                    .orElse(maxBufferSize);
+        } catch (NumberFormatException e) {
+            throw new ServletException("Invalid maximum buffer size: " + e.getMessage(), e);
+        }
+        filterConfig.getServletContext().setAttribute(EtagFilter.class.getName(), this);
+        log.debug("Bodies up to {} bytes are tagged", maxBufferSize);
+    }
+
+    @Override
+    public void destroy() {
+        log.info("ETag Filter destroyed...");
+    }
+
+    /**
+     * A wrapper adding the tag derived from a version key once the body starts, unless the status is no longer
+     * {@code 200} by then or the handler has sent an error or a redirect.
+     */
+    private static final class VersionedResponseWrapper extends HttpServletResponseWrapper {
+
+        /**
+         * The tag still to add, {@code null} once added or dropped.
+         */
+        private String etag;
+
+        private VersionedResponseWrapper(HttpServletResponse response, String etag) {
+            super(response);
+            this.etag = etag;
+        }
+
+        /**
+         * Add the tag if the response is still a successful one, at most once.
+         */
+        private void tag() {
+            String etag = this.etag;
+            if (etag != null) {
+                this.etag = null;
+                if (getStatus() == HttpServletResponse.SC_OK && !isCommitted() && !containsHeader("ETag")) {
+                    setHeader("ETag", etag);
+                }
+            }
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            etag = null;
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            etag = null;
+            super.sendError(sc);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            etag = null;
+            super.sendRedirect(location);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            tag();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            tag();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            tag();
+            super.flushBuffer();
+        }
+    }
+
+    /**
+     * A buffering wrapper hashing the body with 64-bit FNV-1a while it is written.
+     */
+    private static final class HashingResponseWrapper extends BufferingResponseWrapper {
+
+        private long hash = FNV_OFFSET_BASIS;
+
+        private HashingResponseWrapper(HttpServletResponse response, int limit) {
+            super(response, limit);
+        }
+
+        @Override
+        protected void onBody(byte[] bytes, int offset, int length) {
+            long hash = this.hash;
+            for (int i = offset, end = offset + length; i < end; i++) {
+                hash = (hash ^ (bytes[i] & 0xff)) * FNV_PRIME;
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        protected void onReset() {
+            hash = FNV_OFFSET_BASIS;
+        }
+    }
+}
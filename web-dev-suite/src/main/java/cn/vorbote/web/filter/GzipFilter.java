@@ -0,0 +1,236 @@
+package cn.vorbote.web.filter;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * GzipFilter compresses the responses of the clients accepting {@code gzip}, so large JSON payloads no longer depend
+ * on a reverse proxy to be compressed.<br>
+ * A response is compressed only if its body reaches {@code minSize} bytes, its content type is listed in
+ * {@code mimeTypes} (an entry like {@code text/*} accepts a whole type) and it has no {@code Content-Encoding} yet.
+ * Compressors are taken from a bounded {@link DeflaterPool}, so no zlib state is created per request once the pool
+ * is warm.<br>
+ * {@code Vary: Accept-Encoding} is added with {@code addHeader}, it stays next to the {@code Vary: Origin} added by
+ * {@link CorsFilter}.
+ *
+ * @author vorbote
+ */
+@Slf4j
+public class GzipFilter implements Filter {
+
+    /**
+     * The default minimum size of a compressed body.
+     */
+    public static final int DEFAULT_MIN_SIZE = 1024;
+
+    private static final String[] DEFAULT_MIME_TYPES = {"text/html", "text/plain", "text/css", "text/xml",
+            "text/javascript", "application/json", "application/javascript", "application/xml"};
+
+    /**
+     * The minimum size of a compressed body.
+     */
+    private int minSize;
+
+    /**
+     * The compressed content types, in lower case.
+     */
+    private Set<String> mimeTypes;
+
+    /**
+     * The compression level.
+     */
+    private int compressionLevel;
+
+    private DeflaterPool pool;
+
+    /**
+     * Generate a filter.
+     *
+     * @param minSize   The minimum size of a compressed body.
+     * @param mimeTypes The compressed content types, the defaults if none.
+     */
+    public GzipFilter(int minSize, String... mimeTypes) {
+        this.minSize = minSize;
+        this.mimeTypes = toSet(mimeTypes == null || mimeTypes.length == 0 ? DEFAULT_MIME_TYPES : mimeTypes);
+        this.compressionLevel = Deflater.DEFAULT_COMPRESSION;
+        this.pool = createPool();
+    }
+
+    public GzipFilter() {
+        this(DEFAULT_MIN_SIZE);
+    }
+
+    protected int getMinSize() {
+        return minSize;
+    }
+
+    protected Set<String> getMimeTypes() {
+        return mimeTypes;
+    }
+
+    protected int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        response.addHeader("Vary", "Accept-Encoding");
+        // A HEAD response must declare the length of the GET one, a range applies to the identity body.
+        if (!acceptsGzip(request.getHeader("Accept-Encoding"))
+                || "HEAD".equals(request.getMethod())
+                || request.getHeader("Range") != null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        GzipResponseWrapper wrapper = new GzipResponseWrapper(response, pool, this::isCompressible);
+        try {
+            chain.doFilter(request, wrapper);
+        } finally {
+            wrapper.finish();
+        }
+    }
+
+    /**
+     * Check whether a content type is worth compressing.
+     *
+     * @param contentType The content type, might be {@code null}.
+     * @return Value {@code true} if the content type is compressed, or {@code false}.
+     */
+    protected boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int end = contentType.indexOf(';');
+        String mimeType = (end < 0 ? contentType : contentType.substring(0, end)).trim().toLowerCase(Locale.ROOT);
+        if (mimeTypes.contains(mimeType)) {
+            return true;
+        }
+        int slash = mimeType.indexOf('/');
+        return slash > 0 && mimeTypes.contains(mimeType.substring(0, slash) + "/*");
+    }
+
+    /**
+     * Check whether an {@code Accept-Encoding} header accepts {@code gzip}, either by name or by {@code *}, with a
+     * non-zero quality.
+     *
+     * @param acceptEncoding The header, might be {@code null}.
+     * @return Value {@code true} if {@code gzip} is accepted, or {@code false}.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean wildcard = false;
+        int length = acceptEncoding.length();
+        int start = 0;
+        while (start < length) {
+            int end = acceptEncoding.indexOf(',', start);
+            if (end < 0) {
+                end = length;
+            }
+            int parameters = acceptEncoding.indexOf(';', start);
+            int nameEnd = parameters >= 0 && parameters < end ? parameters : end;
+            int from = skipSpaces(acceptEncoding, start, nameEnd);
+            int to = nameEnd;
+            while (to > from && acceptEncoding.charAt(to - 1) == ' ') {
+                to--;
+            }
+            boolean gzip = to - from == 4 && acceptEncoding.regionMatches(true, from, "gzip", 0, 4);
+            boolean any = to - from == 1 && acceptEncoding.charAt(from) == '*';
+            if (gzip || any) {
+                boolean accepted = nameEnd == end || !isZeroQuality(acceptEncoding, nameEnd + 1, end);
+                if (gzip) {
+                    return accepted;
+                }
+                wildcard = accepted;
+            }
+            start = end + 1;
+        }
+        return wildcard;
+    }
+
+    private static boolean isZeroQuality(String value, int from, int to) {
+        from = skipSpaces(value, from, to);
+        if (to - from < 2 || !value.regionMatches(true, from, "q=", 0, 2)) {
+            return false;
+        }
+        for (int i = from + 2; i < to; i++) {
+            char c = value.charAt(i);
+            if (c >= '1' && c <= '9') {
+                return false;
+            }
+            if (c != '0' && c != '.') {
+                break;
+            }
+        }
+        return true;
+    }
+
+    private static int skipSpaces(String value, int from, int to) {
+        while (from < to && value.charAt(from) == ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static Set<String> toSet(String[] mimeTypes) {
+        Set<String> set = new HashSet<>();
+        for (String mimeType : mimeTypes) {
+            set.add(mimeType.trim().toLowerCase(Locale.ROOT));
+        }
+        return set;
+    }
+
+    private DeflaterPool createPool() {
+        return new DeflaterPool(compressionLevel, Runtime.getRuntime().availableProcessors() * 2, minSize,
+                DeflaterPool.DEFAULT_BUFFER_SIZE);
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        log.info("Gzip Filter initializing...");
+
+        try {
+            this.minSize = Optional.ofNullable(filterConfig.getInitParameter("minSize"))
+                    .map(Integer::parseInt)
+                    .orElse(minSize);
+            this.compressionLevel = Optional.ofNullable(filterConfig.getInitParameter("compressionLevel"))
+                    .map(Integer::parseInt)
+                    .orElse(compressionLevel);
+            this.mimeTypes = Optional.ofNullable(filterConfig.getInitParameter("mimeTypes"))
+                    .map((value) -> toSet(value.split(",( )?")))
+                    .orElse(mimeTypes);
+            if (minSize < 0) {
+                throw new IllegalArgumentException("Invalid minimum size: " + minSize);
+            }
+            DeflaterPool previous = this.pool;
+            this.pool = createPool();
+            previous.clear();
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid gzip configuration: " + e.getMessage(), e);
+        }
+        log.debug("Responses of {} from {} bytes are compressed at level {}",
+                Arrays.toString(mimeTypes.toArray()), minSize, compressionLevel);
+    }
+
+    @Override
+    public void destroy() {
+        pool.clear();
+        log.info("Gzip Filter destroyed...");
+    }
+}
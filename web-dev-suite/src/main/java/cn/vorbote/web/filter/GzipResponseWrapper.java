@@ -0,0 +1,333 @@
+package cn.vorbote.web.filter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.function.Predicate;
+
+/**
+ * A response wrapper compressing the body with gzip while it is written.<br>
+ * The head of the body is kept in the buffer of a pooled {@link DeflaterPool.Compressor} until it reaches the
+ * minimum size of the pool: a smaller body is sent as it is, with its exact {@code Content-Length}. A larger body is
+ * compressed if its content type is accepted and no {@code Content-Encoding} has been set, otherwise it is sent as it
+ * is too. Flushing before the minimum size is reached decides right away, the headers are sent with the first flush.
+ * <br>
+ * {@link #finish()} must be called once the chain returns, it sends what is still buffered and returns the compressor
+ * to its pool.
+ *
+ * @author vorbote
+ */
+public class GzipResponseWrapper extends HttpServletResponseWrapper {
+
+    private final DeflaterPool pool;
+
+    private final Predicate<String> compressible;
+
+    private GzipOutputStream outputStream;
+
+    private PrintWriter writer;
+
+    /**
+     * The content length set by the application, or {@code -1} if none.
+     */
+    private long contentLength = -1;
+
+    /**
+     * Wrap a response.
+     *
+     * @param response     The response.
+     * @param pool         The pool providing the compressor.
+     * @param compressible Whether a content type is worth compressing.
+     */
+    public GzipResponseWrapper(HttpServletResponse response, DeflaterPool pool, Predicate<String> compressible) {
+        super(response);
+        this.pool = pool;
+        this.compressible = compressible;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called");
+        }
+        return stream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (outputStream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called");
+            }
+            writer = new PrintWriter(new OutputStreamWriter(stream(), getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    private GzipOutputStream stream() throws IOException {
+        if (outputStream == null) {
+            outputStream = new GzipOutputStream(super.getOutputStream());
+        }
+        return outputStream;
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        setContentLengthLong(len);
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        if (outputStream != null && outputStream.state != GzipOutputStream.BUFFERING) {
+            if (outputStream.state == GzipOutputStream.PASS) {
+                super.setContentLengthLong(len);
+            }
+            return;
+        }
+        this.contentLength = len;
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(Long.parseLong(value));
+        } else {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(Long.parseLong(value));
+        } else {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(value);
+        } else {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        if ("Content-Length".equalsIgnoreCase(name)) {
+            setContentLengthLong(value);
+        } else {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        } else if (outputStream != null) {
+            outputStream.flush();
+        }
+        super.flushBuffer();
+    }
+
+    @Override
+    public void resetBuffer() {
+        if (outputStream != null && !isCommitted()) {
+            outputStream.discard();
+        }
+        super.resetBuffer();
+    }
+
+    @Override
+    public void reset() {
+        if (outputStream != null && !isCommitted()) {
+            outputStream.discard();
+        }
+        contentLength = -1;
+        super.reset();
+        // The headers are gone with the reset, the response still varies with the accepted encodings.
+        super.addHeader("Vary", "Accept-Encoding");
+    }
+
+    /**
+     * Send what is still buffered and release the compressor. Calling it more than once has no further effect.
+     *
+     * @throws IOException If the body cannot be written.
+     */
+    public void finish() throws IOException {
+        if (outputStream == null) {
+            return;
+        }
+        outputStream.finishing = true;
+        if (writer != null) {
+            writer.flush();
+        }
+        outputStream.finish();
+    }
+
+    /**
+     * An output stream buffering the head of the body, then either compressing or passing the bytes through.
+     */
+    private final class GzipOutputStream extends ServletOutputStream {
+
+        private static final int BUFFERING = 0;
+
+        private static final int PASS = 1;
+
+        private static final int GZIP = 2;
+
+        private final ServletOutputStream delegate;
+
+        private final ByteSink sink;
+
+        private final byte[] single = new byte[1];
+
+        private DeflaterPool.Compressor compressor;
+
+        private int headCount;
+
+        private int state = BUFFERING;
+
+        /**
+         * Set while finishing, a flush of the writer must not force a decision.
+         */
+        private boolean finishing;
+
+        private boolean finished;
+
+        private GzipOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+            this.sink = delegate::write;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (finished) {
+                throw new IOException("Stream has been closed");
+            }
+            if (state == BUFFERING) {
+                if (compressor == null) {
+                    compressor = pool.acquire();
+                }
+                byte[] head = compressor.head;
+                if (headCount + len < head.length) {
+                    System.arraycopy(b, off, head, headCount, len);
+                    headCount += len;
+                    return;
+                }
+                decide(true);
+            }
+            if (state == GZIP) {
+                compressor.write(b, off, len, sink);
+            } else {
+                delegate.write(b, off, len);
+            }
+        }
+
+        /**
+         * Decide how the body is sent and send the buffered head accordingly.
+         *
+         * @param large Whether the body has reached the minimum size, or is streamed.
+         * @throws IOException If the head cannot be written.
+         */
+        private void decide(boolean large) throws IOException {
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            int status = response.getStatus();
+            if (large && status >= 200 && status != HttpServletResponse.SC_NO_CONTENT
+                    && status != HttpServletResponse.SC_NOT_MODIFIED
+                    && response.getHeader("Content-Encoding") == null
+                    && compressible.test(response.getContentType())) {
+                state = GZIP;
+                response.setHeader("Content-Encoding", "gzip");
+                if (compressor == null) {
+                    compressor = pool.acquire();
+                }
+                compressor.write(compressor.head, 0, headCount, sink);
+            } else {
+                state = PASS;
+                if (contentLength >= 0) {
+                    response.setContentLengthLong(contentLength);
+                } else if (!large && !response.isCommitted()) {
+                    response.setContentLengthLong(headCount);
+                }
+                if (compressor != null) {
+                    delegate.write(compressor.head, 0, headCount);
+                    pool.release(compressor);
+                    compressor = null;
+                }
+            }
+            headCount = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (finishing) {
+                return;
+            }
+            if (state == BUFFERING) {
+                decide(true);
+            }
+            if (state == GZIP) {
+                compressor.flush(sink);
+            }
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finishing = true;
+            finish();
+            delegate.close();
+        }
+
+        private void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            if (state == BUFFERING) {
+                decide(false);
+            }
+            finished = true;
+            if (compressor != null) {
+                try {
+                    compressor.finish(sink);
+                } finally {
+                    pool.release(compressor);
+                    compressor = null;
+                }
+            }
+        }
+
+        private void discard() {
+            if (compressor != null) {
+                pool.release(compressor);
+                compressor = null;
+            }
+            headCount = 0;
+            state = BUFFERING;
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package cn.vorbote.web.filter;
+
+import cn.vorbote.web.constants.WebStatus;
+import cn.vorbote.web.metrics.LatencyMetrics;
+import cn.vorbote.web.metrics.RouteStatsTable;
+import cn.vorbote.web.model.ResponseResult;
+import cn.vorbote.web.utils.ResultWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * LatencyFilter records the latency of every request into the histogram of its normalized route, see
+ * {@link RouteStatsTable}, and counts the requests of each route per result code. The statistics are exported through
+ * JMX as {@link LatencyMetrics}, named after the filter.<br>
+ * The code of a request is its {@link ResponseResult#code()} when it has been published with
+ * {@link #setResultCode(ServletRequest, int)}, since the codes of the application do not always match the HTTP
+ * status; otherwise the HTTP status, or {@link WebStatus#INTERNAL_SERVER_ERROR} if the chain has thrown. The methods
+ * of {@link ResultWriter} taking the request publish the code of the result they write, which covers the answers of
+ * the filters of this suite; an application writing its results through its own converters calls
+ * {@link #setResultCode(ServletRequest, int)} itself, e.g. from a response body advice. The init
+ * parameter {@code maxRoutes} bounds the number of routes, {@code 256} by default. A route is only added by a request
+ * answered with a status below {@code 400}, so scans of unknown paths are counted under
+ * {@value RouteStatsTable#OTHER_ROUTE} instead of taking the place of the routes of the application; once known, a
+ * route counts all of its requests.<br>
+ * The latency of an asynchronous request is measured up to the return of the chain.
+ *
+ * @author vorbote
+ */
+@Slf4j
+public class LatencyFilter implements Filter {
+
+    /**
+     * The request attribute holding the result code published by the application.
+     */
+    public static final String RESULT_CODE_ATTRIBUTE = LatencyFilter.class.getName() + ".resultCode";
+
+    private int maxRoutes;
+
+    private LatencyMetrics metrics;
+
+    /**
+     * Generate a filter.
+     *
+     * @param maxRoutes The maximum number of routes.
+     */
+    public LatencyFilter(int maxRoutes) {
+        this.maxRoutes = maxRoutes;
+        this.metrics = new LatencyMetrics(new RouteStatsTable(maxRoutes));
+    }
+
+    public LatencyFilter() {
+        this(256);
+    }
+
+    /**
+     * Get the metrics of this filter.
+     *
+     * @return The metrics.
+     */
+    public LatencyMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Publish the result code of a request, e.g. from the advice writing the {@link ResponseResult}.
+     *
+     * @param request The request.
+     * @param code    The result code.
+     */
+    public static void setResultCode(ServletRequest request, int code) {
+        request.setAttribute(RESULT_CODE_ATTRIBUTE, code);
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        boolean failed = false;
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException | Error e) {
+            failed = true;
+            throw e;
+        } finally {
+            long end = System.nanoTime();
+            Object resultCode = request.getAttribute(RESULT_CODE_ATTRIBUTE);
+            int code = resultCode instanceof Integer ? (Integer) resultCode
+                    : failed ? WebStatus.INTERNAL_SERVER_ERROR : response.getStatus();
+            LatencyMetrics metrics = this.metrics;
+            // Only a request answered without an error proves its path is a route, the others must not fill the table.
+            boolean routed = !failed && response.getStatus() < WebStatus.BAD_REQUEST;
+            metrics.getRouteStats()
+                    .resolve(request.getRequestURI(), request.getContextPath().length(), routed)
+                    .record((end - start) / 1000, code);
+            metrics.record(System.nanoTime() - end);
+        }
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        log.info("Latency Filter initializing...");
+
+        try {
+            this.maxRoutes = Optional.ofNullable(filterConfig.getInitParameter("maxRoutes"))
+                    .map(Integer::parseInt)
+                    .orElse(maxRoutes);
+        } catch (NumberFormatException e) {
+            throw new ServletException("Invalid maximum number of routes: " + e.getMessage(), e);
+        }
+        this.metrics = new LatencyMetrics(new RouteStatsTable(maxRoutes));
+        metrics.register("LatencyFilter", filterConfig.getFilterName());
+        log.debug("Latency recorded for up to {} routes", maxRoutes);
+    }
+
+    @Override
+    public void destroy() {
+        metrics.unregister();
+        log.info("Latency Filter destroyed...");
+    }
+}
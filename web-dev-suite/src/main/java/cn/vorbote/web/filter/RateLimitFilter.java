@@ -0,0 +1,216 @@
+package cn.vorbote.web.filter;
+
+import cn.vorbote.web.constants.WebStatus;
+import cn.vorbote.web.model.ResponseResult;
+import cn.vorbote.web.ratelimit.KeyResolver;
+import cn.vorbote.web.ratelimit.RateLimiter;
+import cn.vorbote.web.utils.ResultWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RateLimitFilter limits the rate of requests of each client with a {@link RateLimiter}. A request over the limit is
+ * answered with {@link WebStatus#TOO_MANY_REQUESTS 429}, a {@code Retry-After} header and a {@link ResponseResult}
+ * body.<br>
+ * The init parameter {@code keyBy} tells how clients are told apart: {@code ip} (the default), {@code header} (the
+ * header named by {@code keyHeader}, {@code X-API-Key} by default) or {@code jwt} (the subject of the bearer token, see
+ * {@link KeyResolver#jwtSubject()}). A request without such a key is counted by its client address. The rate is set
+ * by {@code permitsPerSecond} and {@code burst}, keys idle for {@code idleTimeout} seconds are forgotten.<br>
+ * Header and JWT keys are chosen by the client: one sending a new key with every request would get a fresh bucket
+ * every time and grow the limiter as fast as it sends. Each client address may therefore only bring
+ * {@code newKeysPerMinute} new keys ({@value #DEFAULT_NEW_KEYS_PER_MINUTE} by default, {@code 0} for no cap), past
+ * which its requests with unknown keys are counted by its address. Keys validated by the application, see
+ * {@link KeyResolver#header(String, java.util.function.Predicate)}, are capped the same way, raise the cap if many
+ * clients share an address. Keys and addresses are counted in separate buckets, a key equal to the address of
+ * another client does not touch the limit of that address.
+ *
+ * @author vorbote
+ */
+@Slf4j
+public class RateLimitFilter implements Filter {
+
+    /**
+     * The default number of new keys a client address may bring per minute.
+     */
+    public static final int DEFAULT_NEW_KEYS_PER_MINUTE = 60;
+
+    /**
+     * The prefix of the buckets of client addresses.
+     */
+    private static final String ADDRESS_PREFIX = "ip:";
+
+    /**
+     * The prefix of the buckets of resolved keys, so a client sending the address of another as its key never
+     * drains the bucket of that address.
+     */
+    private static final String KEY_PREFIX = "key:";
+
+    private double permitsPerSecond;
+
+    private int burst;
+
+    private long idleTimeout;
+
+    private KeyResolver keyResolver;
+
+    private RateLimiter rateLimiter;
+
+    private int newKeysPerMinute = DEFAULT_NEW_KEYS_PER_MINUTE;
+
+    /**
+     * The limiter of the new keys by client address, or {@code null} if they are not capped.
+     */
+    private RateLimiter newKeyLimiter;
+
+    /**
+     * Generate a filter.
+     *
+     * @param permitsPerSecond The sustained rate of each client.
+     * @param burst            The number of requests a client may send at once.
+     * @param keyResolver      How clients are told apart.
+     * @throws IllegalArgumentException If the rate or the burst is not positive.
+     */
+    public RateLimitFilter(double permitsPerSecond, int burst, KeyResolver keyResolver) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.idleTimeout = 60;
+        this.keyResolver = keyResolver;
+        this.rateLimiter = new RateLimiter(permitsPerSecond, burst, TimeUnit.SECONDS.toNanos(idleTimeout));
+        this.newKeyLimiter = createNewKeyLimiter(newKeysPerMinute, idleTimeout);
+    }
+
+    public RateLimitFilter() {
+        this(10, 20, KeyResolver.clientIp());
+    }
+
+    protected double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    protected int getBurst() {
+        return burst;
+    }
+
+    protected RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Set the number of new keys a client address may bring per minute, past which its requests with unknown keys
+     * are counted by its address.
+     *
+     * @param newKeysPerMinute The number of keys, {@code 0} for no cap.
+     * @return The filter itself.
+     * @throws IllegalArgumentException If the number is negative.
+     */
+    public RateLimitFilter newKeysPerMinute(int newKeysPerMinute) {
+        if (newKeysPerMinute < 0) {
+            throw new IllegalArgumentException("The number of new keys must not be negative, got " + newKeysPerMinute);
+        }
+        this.newKeysPerMinute = newKeysPerMinute;
+        this.newKeyLimiter = createNewKeyLimiter(newKeysPerMinute, idleTimeout);
+        return this;
+    }
+
+    private static RateLimiter createNewKeyLimiter(int newKeysPerMinute, long idleTimeout) {
+        return newKeysPerMinute == 0 ? null : new RateLimiter(newKeysPerMinute / 60.0, newKeysPerMinute,
+                TimeUnit.SECONDS.toNanos(Math.max(idleTimeout, 60)));
+    }
+
+    /**
+     * Resolve the key a request is counted by: the key of the client, unless it is new and its address has brought
+     * too many new keys lately, or the request has none, in which case its address.
+     *
+     * @param request The request.
+     * @return The key, prefixed with {@code ip:} for an address or {@code key:} for a key of the client.
+     */
+    protected String resolveKey(HttpServletRequest request) {
+        String address = ADDRESS_PREFIX + request.getRemoteAddr();
+        String resolved = keyResolver.resolve(request);
+        if (resolved == null) {
+            return address;
+        }
+        String key = KEY_PREFIX + resolved;
+        RateLimiter newKeyLimiter = this.newKeyLimiter;
+        if (newKeyLimiter != null && !rateLimiter.isTracked(key) && newKeyLimiter.tryAcquire(address) != 0L) {
+            log.debug("Too many new keys from [{}], counting its request by address", address);
+            return address;
+        }
+        return key;
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        String key = resolveKey(request);
+        long wait = rateLimiter.tryAcquire(key);
+        if (wait == 0L) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        long retryAfter = Math.max(1L, (wait + 999_999_999L) / 1_000_000_000L);
+        log.debug("Request of [{}] rejected, retry after {}s", key, retryAfter);
+        response.setHeader("Retry-After", Long.toString(retryAfter));
+        ResultWriter.write(request, response, WebStatus.TOO_MANY_REQUESTS,
+                ResponseResult.error("Too many requests, retry after " + retryAfter + "s")
+                        .code(WebStatus.TOO_MANY_REQUESTS));
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        log.info("Rate Limit Filter initializing...");
+
+        try {
+            this.permitsPerSecond = Optional.ofNullable(filterConfig.getInitParameter("permitsPerSecond"))
+                    .map(Double::parseDouble)
+                    .orElse(permitsPerSecond);
+            this.burst = Optional.ofNullable(filterConfig.getInitParameter("burst"))
+                    .map(Integer::parseInt)
+                    .orElse(burst);
+            this.idleTimeout = Optional.ofNullable(filterConfig.getInitParameter("idleTimeout"))
+                    .map(Long::parseLong)
+                    .orElse(idleTimeout);
+            String keyBy = filterConfig.getInitParameter("keyBy");
+            if (keyBy != null) {
+                switch (keyBy.trim().toLowerCase(Locale.ROOT)) {
+                    case "ip":
+                        this.keyResolver = KeyResolver.clientIp();
+                        break;
+                    case "header":
+                        this.keyResolver = KeyResolver.header(
+                                Optional.ofNullable(filterConfig.getInitParameter("keyHeader")).orElse("X-API-Key"));
+                        break;
+                    case "jwt":
+                        this.keyResolver = KeyResolver.jwtSubject();
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown key [" + keyBy + "], expecting ip, header or jwt");
+                }
+            }
+            this.newKeysPerMinute = Optional.ofNullable(filterConfig.getInitParameter("newKeysPerMinute"))
+                    .map(Integer::parseInt)
+                    .orElse(newKeysPerMinute);
+            this.rateLimiter = new RateLimiter(permitsPerSecond, burst, TimeUnit.SECONDS.toNanos(idleTimeout));
+            newKeysPerMinute(newKeysPerMinute);
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid rate limit configuration: " + e.getMessage(), e);
+        }
+        log.debug("Clients are limited to {} requests per second, bursts of {}", permitsPerSecond, burst);
+    }
+
+    @Override
+    public void destroy() {
+        log.info("Rate Limit Filter destroyed...");
+    }
+}
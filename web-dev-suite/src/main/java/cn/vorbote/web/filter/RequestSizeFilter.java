@@ -0,0 +1,379 @@
+package cn.vorbote.web.filter;
+
+import cn.vorbote.web.constants.WebStatus;
+import cn.vorbote.web.exceptions.BizException;
+import cn.vorbote.web.model.ResponseResult;
+import cn.vorbote.web.utils.PathPatternTrie;
+import cn.vorbote.web.utils.ResultWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * RequestSizeFilter rejects oversized request bodies before the framework buffers them.<br>
+ * A request declaring a {@code Content-Length} above the limit of its path is answered right away with
+ * {@link WebStatus#REQUEST_ENTITY_TOO_LARGE 413} and a {@link ResponseResult} body, its body is never read. The input
+ * stream of a request without {@code Content-Length}, e.g. a chunked one or one sent over HTTP/2, is wrapped with a
+ * counting guard which throws a {@link BizException} with code {@code 413} as soon as the limit is crossed, the filter
+ * turns it into the same answer if the response is not committed yet.<br>
+ * The default limit is set by the init parameter {@code maxSize}, limits of path patterns by {@code limits}:
+ * <pre class="code">
+ * maxSize = 1MB
+ * limits = /api/upload/**=50MB, /api/ping=0
+ * </pre>
+ * Sizes are bytes, or carry one of the units {@code KB}, {@code MB} and {@code GB}; {@code unlimited} lifts the limit
+ * of a path. Negative and overflowing sizes are rejected.
+ *
+ * @author vorbote
+ */
+@Slf4j
+public class RequestSizeFilter implements Filter {
+
+    /**
+     * The default limit of a request body.
+     */
+    public static final long DEFAULT_MAX_SIZE = 2L * 1024 * 1024;
+
+    /**
+     * The default limit of a request body.
+     */
+    private long maxSize;
+
+    /**
+     * The limits of path patterns.
+     */
+    private final Map<String, Long> limits = new LinkedHashMap<>();
+
+    /**
+     * The compiled limits of path patterns, replaced as a whole.
+     */
+    private volatile PathPatternTrie<Long> limitTable = new PathPatternTrie<>();
+
+    /**
+     * Generate a filter.
+     *
+     * @param maxSize The default limit of a request body, negative for unlimited.
+     */
+    public RequestSizeFilter(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public RequestSizeFilter() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    protected long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Set the limit of the requests matching a path pattern.
+     *
+     * @param pathPattern The path pattern, see {@link PathPatternTrie}.
+     * @param limit       The limit in bytes, negative for unlimited.
+     * @return The filter itself.
+     * @throws IllegalArgumentException If the path pattern is malformed.
+     */
+    public synchronized RequestSizeFilter limit(String pathPattern, long limit) {
+        PathPatternTrie<Long> compiled = new PathPatternTrie<>();
+        compiled.put(pathPattern, limit);
+        for (Map.Entry<String, Long> entry : limits.entrySet()) {
+            if (!entry.getKey().equals(pathPattern)) {
+                compiled.put(entry.getKey(), entry.getValue());
+            }
+        }
+        limits.put(pathPattern, limit);
+        this.limitTable = compiled;
+        return this;
+    }
+
+    /**
+     * Get the limit of a request.
+     *
+     * @param request The request.
+     * @return The limit in bytes, negative for unlimited.
+     */
+    protected long getLimit(HttpServletRequest request) {
+        PathPatternTrie<Long> limitTable = this.limitTable;
+        if (limitTable.isEmpty()) {
+            return maxSize;
+        }
+        Long limit = limitTable.match(request);
+        return limit != null ? limit : maxSize;
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        long limit = getLimit(request);
+        if (limit < 0) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        long contentLength = request.getContentLengthLong();
+        if (contentLength > limit) {
+            log.debug("Request to [{}] rejected, {} bytes declared, {} allowed",
+                    request.getRequestURI(), contentLength, limit);
+            reject(request, response, limit);
+            return;
+        }
+        // A declared length is enforced by the container, only a body of unknown length needs counting: chunked in
+        // HTTP/1.1, but HTTP/2 and HTTP/3 may send a body without any length header at all.
+        if (contentLength >= 0) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        try {
+            chain.doFilter(new SizeLimitedRequest(request, limit), response);
+        } catch (BizException | IOException | ServletException e) {
+            if (!isTooLarge(e) || response.isCommitted()) {
+                throw e;
+            }
+            log.debug("Request to [{}] aborted, more than {} bytes sent", request.getRequestURI(), limit);
+            reject(request, response, limit);
+        }
+    }
+
+    /**
+     * Answer a request whose body is too large. The connection is closed, so the rest of the body is not read.
+     *
+     * @param request  The request.
+     * @param response The response.
+     * @param limit    The limit crossed.
+     * @throws IOException If the answer cannot be written.
+     */
+    protected void reject(HttpServletRequest request, HttpServletResponse response, long limit) throws IOException {
+        response.setHeader("Connection", "close");
+        ResultWriter.write(request, response, WebStatus.REQUEST_ENTITY_TOO_LARGE, ResponseResult.error(message(limit))
+                .code(WebStatus.REQUEST_ENTITY_TOO_LARGE));
+    }
+
+    private static String message(long limit) {
+        return "Request body exceeds the limit of " + limit + " bytes";
+    }
+
+    /**
+     * Check whether an exception has been caused by the guard, frameworks tend to wrap it.
+     *
+     * @param e The exception.
+     * @return Value {@code true} if the guard has thrown it, or {@code false}.
+     */
+    private static boolean isTooLarge(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BizException
+                    && ((BizException) cause).getCode() == WebStatus.REQUEST_ENTITY_TOO_LARGE) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse a size.
+     *
+     * @param value The size, in bytes or with a unit, or {@code unlimited}.
+     * @return The size in bytes, {@code -1} if unlimited.
+     * @throws NumberFormatException If the size is malformed, negative or too large.
+     */
+    static long parseSize(String value) {
+        String size = value.trim().toUpperCase(Locale.ROOT);
+        if ("UNLIMITED".equals(size)) {
+            return -1;
+        }
+        long unit = 1;
+        if (size.endsWith("KB")) {
+            unit = 1024;
+        } else if (size.endsWith("MB")) {
+            unit = 1024 * 1024;
+        } else if (size.endsWith("GB")) {
+            unit = 1024 * 1024 * 1024;
+        } else if (size.endsWith("B")) {
+            size = size.substring(0, size.length() - 1);
+        }
+        if (unit > 1) {
+            size = size.substring(0, size.length() - 2);
+        }
+        long amount = Long.parseLong(size.trim());
+        if (amount < 0) {
+            throw new NumberFormatException("Size [" + value + "] is negative, use unlimited for no limit");
+        }
+        try {
+            return Math.multiplyExact(amount, unit);
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Size [" + value + "] is too large");
+        }
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        log.info("Request Size Filter initializing...");
+
+        try {
+            this.maxSize = Optional.ofNullable(filterConfig.getInitParameter("maxSize"))
+                    .map(RequestSizeFilter::parseSize)
+                    .orElse(maxSize);
+            String limits = filterConfig.getInitParameter("limits");
+            if (limits != null) {
+                for (String limit : limits.split(",( )?")) {
+                    int separator = limit.lastIndexOf('=');
+                    if (separator <= 0) {
+                        throw new IllegalArgumentException("Limit [" + limit + "] is not in the form pattern=size");
+                    }
+                    limit(limit.substring(0, separator).trim(), parseSize(limit.substring(separator + 1)));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid request size configuration: " + e.getMessage(), e);
+        }
+        log.debug("Request bodies are limited to {} bytes, by path: {}", maxSize, limits);
+    }
+
+    @Override
+    public void destroy() {
+        log.info("Request Size Filter destroyed...");
+    }
+
+    /**
+     * A request whose input stream counts the bytes read.
+     */
+    private static final class SizeLimitedRequest extends HttpServletRequestWrapper {
+
+        private final long limit;
+
+        private ServletInputStream inputStream;
+
+        private BufferedReader reader;
+
+        private SizeLimitedRequest(HttpServletRequest request, long limit) {
+            super(request);
+            this.limit = limit;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (reader != null) {
+                throw new IllegalStateException("getReader() has already been called");
+            }
+            return stream();
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            if (reader == null) {
+                if (inputStream != null) {
+                    throw new IllegalStateException("getInputStream() has already been called");
+                }
+                String encoding = getCharacterEncoding();
+                reader = new BufferedReader(new InputStreamReader(stream(),
+                        encoding != null ? encoding : "ISO-8859-1"));
+            }
+            return reader;
+        }
+
+        private ServletInputStream stream() throws IOException {
+            if (inputStream == null) {
+                inputStream = new CountingInputStream(super.getInputStream(), limit);
+            }
+            return inputStream;
+        }
+    }
+
+    /**
+     * An input stream failing as soon as more bytes than allowed have been read.
+     */
+    private static final class CountingInputStream extends ServletInputStream {
+
+        private final ServletInputStream delegate;
+
+        private final long limit;
+
+        private long count;
+
+        private CountingInputStream(ServletInputStream delegate, long limit) {
+            this.delegate = delegate;
+            this.limit = limit;
+        }
+
+        private void count(long read) {
+            if (read > 0) {
+                count += read;
+                if (count > limit) {
+                    throw new BizException(WebStatus.REQUEST_ENTITY_TOO_LARGE, message(limit));
+                }
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = delegate.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = delegate.read(b, off, len);
+            count(read);
+            return read;
+        }
+
+        @Override
+        public int readLine(byte[] b, int off, int len) throws IOException {
+            int read = delegate.readLine(b, off, len);
+            count(read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = delegate.skip(Math.min(n, limit - count + 1));
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return delegate.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return delegate.isFinished();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            delegate.setReadListener(readListener);
+        }
+    }
+}
@@ -0,0 +1,504 @@
+package cn.vorbote.web.filter;
+
+import cn.vorbote.web.cache.CachedResponse;
+import cn.vorbote.web.cache.DirectBufferPool;
+import cn.vorbote.web.cache.ResponseCache;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.*;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * ResponseCacheFilter keeps the successful responses of {@code GET} requests in memory and replays them, with an
+ * {@code Age} header, without invoking the chain again; a {@code HEAD} request is answered from the same entry.<br>
+ * A response is keyed on its URI, query string, {@code Origin} and the request headers listed in {@code varyHeaders}
+ * ({@code Accept, Accept-Encoding} by default). It is only stored when its status is {@code 200}, it sets no cookie
+ * (neither through a header nor {@link HttpServletResponse#addCookie(Cookie)}) and creates no session,
+ * its {@code Vary} names no header outside the key, its body is no larger than {@code maxEntryBytes} and its
+ * {@code Cache-Control} allows shared caching: the lifetime comes from {@code s-maxage} or {@code max-age}, else
+ * {@code defaultTtl} seconds, {@code 0} by default, meaning that responses without an explicit lifetime are not
+ * cached. Requests carrying {@code Authorization} or {@code Cache-Control: no-store} bypass the cache,
+ * {@code no-cache} refreshes the entry. Requests carrying {@code Cookie} may be answered for another user, so they
+ * are only served and stored responses marked {@code Cache-Control: public}.<br>
+ * The cache holds at most {@code maxBytes} ({@code 64MB} by default) and admits a new response over the least recently
+ * used one only if it is requested more often, see {@link ResponseCache}. With {@code offHeap} set to {@code true} the
+ * bodies are kept in the recycled slabs of a {@link DirectBufferPool}, outside the heap scanned by the garbage
+ * collector; the direct memory never exceeds {@code maxBytes} plus room for four bodies being admitted.
+ *
+ * @author vorbote
+ */
+@Slf4j
+public class ResponseCacheFilter implements Filter {
+
+    /**
+     * The default budget of the cache.
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * The default maximum size of a cached body.
+     */
+    public static final int DEFAULT_MAX_ENTRY_BYTES = 1024 * 1024;
+
+    private long maxBytes;
+
+    private int maxEntryBytes;
+
+    private boolean offHeap;
+
+    private String[] varyHeaders;
+
+    /**
+     * The lower case names of the request headers in the key, {@code Origin} and the varying headers.
+     */
+    private Set<String> keyedHeaders;
+
+    private long defaultTtl;
+
+    private ResponseCache cache;
+
+    /**
+     * The slabs of the off-heap bodies, or {@code null} if the bodies are kept on the heap.
+     */
+    private DirectBufferPool pool;
+
+    /**
+     * Generate a filter.
+     *
+     * @param maxBytes      The budget of the cache in bytes.
+     * @param maxEntryBytes The maximum size of a cached body.
+     * @param offHeap       Whether to keep the bodies in direct buffers.
+     * @param varyHeaders   The request headers the responses depend on.
+     * @param defaultTtl    The lifetime in seconds of the responses not declaring one, {@code 0} not to cache them.
+     */
+    public ResponseCacheFilter(long maxBytes, int maxEntryBytes, boolean offHeap, String[] varyHeaders,
+                               long defaultTtl) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+        this.offHeap = offHeap;
+        this.varyHeaders = varyHeaders;
+        this.keyedHeaders = keyedHeaders(varyHeaders);
+        this.defaultTtl = defaultTtl;
+        this.cache = createCache(maxBytes);
+        this.pool = offHeap ? createPool(maxBytes, maxEntryBytes) : null;
+    }
+
+    public ResponseCacheFilter() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_MAX_ENTRY_BYTES, false, new String[]{"Accept", "Accept-Encoding"}, 0);
+    }
+
+    private static Set<String> keyedHeaders(String[] varyHeaders) {
+        Set<String> keyedHeaders = new HashSet<>();
+        keyedHeaders.add("origin");
+        for (String name : varyHeaders) {
+            keyedHeaders.add(name.trim().toLowerCase(Locale.ROOT));
+        }
+        return keyedHeaders;
+    }
+
+    /**
+     * Create the pool of the off-heap bodies: the cached bodies weigh at most the budget of the cache, the pool has
+     * room for a few more being admitted or still being replayed after their eviction.
+     *
+     * @param maxBytes      The budget of the cache.
+     * @param maxEntryBytes The maximum size of a cached body.
+     * @return The pool.
+     */
+    private static DirectBufferPool createPool(long maxBytes, int maxEntryBytes) {
+        return new DirectBufferPool(maxBytes + 4L * maxEntryBytes, DirectBufferPool.DEFAULT_SLAB_SIZE);
+    }
+
+    private static ResponseCache createCache(long maxBytes) {
+        return new ResponseCache(maxBytes, (int) Math.min(1 << 20, Math.max(16, maxBytes / 4096)));
+    }
+
+    /**
+     * Get the cache of this filter, e.g. to invalidate a response or read its statistics.
+     *
+     * @return The cache.
+     */
+    public ResponseCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) servletRequest;
+        HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        String method = request.getMethod();
+        boolean head = "HEAD".equals(method);
+        if (!head && !"GET".equals(method) || request.getHeader("Authorization") != null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String requestCacheControl = request.getHeader("Cache-Control");
+        if (requestCacheControl != null && hasDirective(requestCacheControl, "no-store")) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        ResponseCache cache = this.cache;
+        String key = key(request);
+        boolean cookie = request.getHeader("Cookie") != null;
+        if (requestCacheControl == null || !hasDirective(requestCacheControl, "no-cache")) {
+            long now = System.nanoTime();
+            CachedResponse cached = cache.get(key, now);
+            if (cached != null) {
+                try {
+                    if (!cookie || isPublic(cached.getHeaders())) {
+                        replay(cached, response, head, now);
+                        return;
+                    }
+                } finally {
+                    cached.release();
+                }
+            }
+        }
+        if (head) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        CachingResponseWrapper wrapper = new CachingResponseWrapper(response,
+                (int) Math.min(maxEntryBytes, cache.getMaxEntryWeight()), keyedHeaders);
+        boolean hadSession = request.getSession(false) != null;
+        chain.doFilter(request, wrapper);
+        wrapper.finish();
+        // The container sets the cookie of a new session itself, the wrapper never sees it.
+        boolean sessionCreated = !hadSession && request.getSession(false) != null;
+
+        if (!wrapper.isPassedThrough() && !wrapper.uncacheable && !sessionCreated
+                && response.getStatus() == HttpServletResponse.SC_OK
+                && !response.isCommitted()
+                && (!cookie || wrapper.cacheControl != null && hasDirective(wrapper.cacheControl, "public"))) {
+            long ttl = freshness(wrapper.cacheControl, defaultTtl);
+            if (ttl > 0) {
+                long now = System.nanoTime();
+                List<String> headers = wrapper.headers;
+                String contentType = response.getContentType();
+                byte[] body = wrapper.getBody();
+                int length = wrapper.getBodyLength();
+                long expiresAt = now + ttl * 1_000_000_000L;
+                DirectBufferPool pool = this.pool;
+                if (pool == null) {
+                    cache.put(key, CachedResponse.weigh(headers, length), () -> new CachedResponse(
+                            HttpServletResponse.SC_OK, contentType, headers, body, 0, length, now, expiresAt));
+                } else {
+                    // The slabs are filled before the cache is locked, and given back if the response is refused.
+                    CachedResponse cached = CachedResponse.offHeap(HttpServletResponse.SC_OK, contentType, headers,
+                            body, 0, length, pool, now, expiresAt);
+                    if (cached != null && !cache.put(key, cached)) {
+                        cached.release();
+                    }
+                }
+            }
+        }
+        wrapper.sendBody();
+    }
+
+    /**
+     * Build the key of a request from its URI, query string, origin and varying headers.
+     *
+     * @param request The request.
+     * @return The key.
+     */
+    private String key(HttpServletRequest request) {
+        StringBuilder key = new StringBuilder(128).append(request.getRequestURI());
+        String query = request.getQueryString();
+        if (query != null) {
+            key.append('?').append(query);
+        }
+        String origin = request.getHeader("Origin");
+        key.append('\n');
+        if (origin != null) {
+            key.append(origin);
+        }
+        for (String name : varyHeaders) {
+            String value = request.getHeader(name);
+            key.append('\n');
+            if (value != null) {
+                key.append(value);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Write a cached response.
+     *
+     * @param cached   The cached response.
+     * @param response The response.
+     * @param head     Whether the body must be omitted.
+     * @param now      The current time, from {@link System#nanoTime()}.
+     * @throws IOException If the body cannot be written.
+     */
+    private static void replay(CachedResponse cached, HttpServletResponse response, boolean head, long now)
+            throws IOException {
+        response.setStatus(cached.getStatus());
+        if (cached.getContentType() != null) {
+            response.setContentType(cached.getContentType());
+        }
+        List<String> headers = cached.getHeaders();
+        for (int i = 0; i < headers.size(); i += 2) {
+            response.addHeader(headers.get(i), headers.get(i + 1));
+        }
+        response.setHeader("Age", Long.toString(cached.getAgeSeconds(now)));
+        int length = cached.getBodyLength();
+        response.setContentLength(length);
+        if (head || length == 0) {
+            return;
+        }
+        cached.writeBody(response.getOutputStream());
+    }
+
+    /**
+     * Check whether the headers of a cached response mark it {@code Cache-Control: public}.
+     *
+     * @param headers The headers as alternating names and values.
+     * @return Value {@code true} if the response is public, or {@code false}.
+     */
+    private static boolean isPublic(List<String> headers) {
+        for (int i = 0; i < headers.size(); i += 2) {
+            if (headers.get(i).equalsIgnoreCase("Cache-Control") && hasDirective(headers.get(i + 1), "public")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether a {@code Cache-Control} header holds a directive.
+     *
+     * @param cacheControl The header.
+     * @param directive    The directive, in lower case.
+     * @return Value {@code true} if the directive is present, or {@code false}.
+     */
+    private static boolean hasDirective(String cacheControl, String directive) {
+        return directiveValue(cacheControl, directive) != null;
+    }
+
+    /**
+     * Get the value of a directive of a {@code Cache-Control} header.
+     *
+     * @param cacheControl The header.
+     * @param directive    The directive, in lower case.
+     * @return The value without quotes, an empty string if the directive has none, or {@code null} if it is absent.
+     */
+    private static String directiveValue(String cacheControl, String directive) {
+        for (String token : cacheControl.split(",")) {
+            token = token.trim();
+            int separator = token.indexOf('=');
+            String name = separator < 0 ? token : token.substring(0, separator).trim();
+            if (name.equalsIgnoreCase(directive)) {
+                if (separator < 0) {
+                    return "";
+                }
+                String value = token.substring(separator + 1).trim();
+                if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get how long a shared cache may keep a response.
+     *
+     * @param cacheControl The {@code Cache-Control} header of the response, might be {@code null}.
+     * @param defaultTtl   The lifetime in seconds when the header declares none.
+     * @return The lifetime in seconds, {@code 0} if the response must not be cached.
+     */
+    static long freshness(String cacheControl, long defaultTtl) {
+        if (cacheControl == null) {
+            return defaultTtl;
+        }
+        if (hasDirective(cacheControl, "no-store") || hasDirective(cacheControl, "private")
+                || hasDirective(cacheControl, "no-cache")) {
+            return 0;
+        }
+        String maxAge = directiveValue(cacheControl, "s-maxage");
+        if (maxAge == null) {
+            maxAge = directiveValue(cacheControl, "max-age");
+        }
+        if (maxAge == null) {
+            return defaultTtl;
+        }
+        try {
+            return Math.max(0L, Long.parseLong(maxAge));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        log.info("Response Cache Filter initializing...");
+
+        try {
+            this.maxBytes = Optional.ofNullable(filterConfig.getInitParameter("maxBytes"))
+                    .map(RequestSizeFilter::parseSize)
+                    .orElse(maxBytes);
+            this.maxEntryBytes = Optional.ofNullable(filterConfig.getInitParameter("maxEntryBytes"))
+                    .map(RequestSizeFilter::parseSize)
+                    .map(size -> (int) Math.min(Integer.MAX_VALUE - 8, size))
+                    .orElse(maxEntryBytes);
+            this.offHeap = Optional.ofNullable(filterConfig.getInitParameter("offHeap"))
+                    .map(Boolean::parseBoolean)
+                    .orElse(offHeap);
+            this.varyHeaders = Optional.ofNullable(filterConfig.getInitParameter("varyHeaders"))
+                    .map(headers -> headers.trim().isEmpty() ? new String[0] : headers.trim().split(",( )?"))
+                    .orElse(varyHeaders);
+            this.keyedHeaders = keyedHeaders(varyHeaders);
+            this.defaultTtl = Optional.ofNullable(filterConfig.getInitParameter("defaultTtl"))
+                    .map(Long::parseLong)
+                    .orElse(defaultTtl);
+            this.cache = createCache(maxBytes);
+            this.pool = offHeap ? createPool(maxBytes, maxEntryBytes) : null;
+        } catch (IllegalArgumentException e) {
+            throw new ServletException("Invalid response cache configuration: " + e.getMessage(), e);
+        }
+        log.debug("Responses cached in {} bytes{}, up to {} bytes each, varying on {}", maxBytes,
+                offHeap ? " off heap" : "", maxEntryBytes, String.join(", ", varyHeaders));
+    }
+
+    @Override
+    public void destroy() {
+        cache.clear();
+        if (pool != null) {
+            pool.clear();
+        }
+        log.info("Response Cache Filter destroyed...");
+    }
+
+    /**
+     * A buffering wrapper recording the headers set by the chain, so they can be replayed with the body.
+     */
+    private static final class CachingResponseWrapper extends BufferingResponseWrapper {
+
+        /**
+         * The replayable headers as alternating names and values.
+         */
+        private final List<String> headers = new ArrayList<>();
+
+        /**
+         * The lower case names of the request headers in the key.
+         */
+        private final Set<String> keyedHeaders;
+
+        private String cacheControl;
+
+        private boolean uncacheable;
+
+        private CachingResponseWrapper(HttpServletResponse response, int limit, Set<String> keyedHeaders) {
+            super(response, limit);
+            this.keyedHeaders = keyedHeaders;
+        }
+
+        private void record(String name, String value, boolean replace) {
+            String lowerCase = name.toLowerCase(Locale.ROOT);
+            switch (lowerCase) {
+                case "content-length":
+                case "content-type":
+                case "date":
+                case "connection":
+                case "transfer-encoding":
+                    return;
+                case "set-cookie":
+                    uncacheable = true;
+                    return;
+                case "vary":
+                    // A response varying on a header outside the key would be served to the wrong clients.
+                    for (String field : value.split(",")) {
+                        String fieldName = field.trim().toLowerCase(Locale.ROOT);
+                        uncacheable |= !fieldName.isEmpty() && !keyedHeaders.contains(fieldName);
+                    }
+                    break;
+                case "cache-control":
+                    cacheControl = replace || cacheControl == null ? value : cacheControl + ", " + value;
+                    break;
+                default:
+                    break;
+            }
+            if (replace) {
+                for (int i = headers.size() - 2; i >= 0; i -= 2) {
+                    if (headers.get(i).equalsIgnoreCase(name)) {
+                        headers.remove(i + 1);
+                        headers.remove(i);
+                    }
+                }
+            }
+            headers.add(name);
+            headers.add(value);
+        }
+
+        @Override
+        public void addCookie(Cookie cookie) {
+            super.addCookie(cookie);
+            uncacheable = true;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            super.setHeader(name, value);
+            record(name, value, true);
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            super.addHeader(name, value);
+            record(name, value, false);
+        }
+
+        @Override
+        public void setIntHeader(String name, int value) {
+            super.setIntHeader(name, value);
+            record(name, Integer.toString(value), true);
+        }
+
+        @Override
+        public void addIntHeader(String name, int value) {
+            super.addIntHeader(name, value);
+            record(name, Integer.toString(value), false);
+        }
+
+        @Override
+        public void setDateHeader(String name, long date) {
+            super.setDateHeader(name, date);
+            record(name, formatDate(date), true);
+        }
+
+        @Override
+        public void addDateHeader(String name, long date) {
+            super.addDateHeader(name, date);
+            record(name, formatDate(date), false);
+        }
+
+        private static String formatDate(long date) {
+            return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(date).atZone(ZoneOffset.UTC));
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            headers.clear();
+            cacheControl = null;
+            uncacheable = false;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package cn.vorbote.web.filter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.*;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A bounded pool of {@link Transcoder}s converting bytes of one charset to bytes of another. Each transcoder owns a
+ * {@link CharsetDecoder}/{@link CharsetEncoder} pair and fixed size input, char and output chunks, so converting a
+ * body of any size takes a constant amount of memory and creates no buffer once the pool is warm. When every pooled
+ * transcoder is in use a new one is created, and it is dropped on release if the pool is full.
+ *
+ * @author vorbote
+ */
+public final class TranscoderPool {
+
+    /**
+     * The default size of the byte chunks.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    private final Charset source;
+
+    private final Charset target;
+
+    private final int chunkSize;
+
+    private final ArrayBlockingQueue<Transcoder> idle;
+
+    /**
+     * Create a pool.
+     *
+     * @param source    The charset of the bytes written by the application.
+     * @param target    The charset of the bytes sent to the client.
+     * @param maxIdle   The maximum number of idle transcoders kept.
+     * @param chunkSize The size of the byte chunks.
+     */
+    public TranscoderPool(Charset source, Charset target, int maxIdle, int chunkSize) {
+        this.source = source;
+        this.target = target;
+        this.chunkSize = chunkSize;
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, maxIdle));
+    }
+
+    /**
+     * Get the charset of the bytes written by the application.
+     *
+     * @return The source charset.
+     */
+    public Charset getSource() {
+        return source;
+    }
+
+    /**
+     * Get the charset of the bytes sent to the client.
+     *
+     * @return The target charset.
+     */
+    public Charset getTarget() {
+        return target;
+    }
+
+    /**
+     * Take a transcoder out of the pool.
+     *
+     * @return A reset transcoder.
+     */
+    Transcoder acquire() {
+        Transcoder transcoder = idle.poll();
+        return transcoder != null ? transcoder : new Transcoder();
+    }
+
+    /**
+     * Return a transcoder to the pool.
+     *
+     * @param transcoder The transcoder.
+     */
+    void release(Transcoder transcoder) {
+        transcoder.reset();
+        idle.offer(transcoder);
+    }
+
+    /**
+     * A decoder/encoder pair with its chunks. Not thread safe, a transcoder serves one response at a time.
+     */
+    final class Transcoder {
+
+        private final CharsetDecoder decoder = source.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        private final CharsetEncoder encoder = target.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        /**
+         * Bytes of the source charset waiting to be decoded, kept in write mode.
+         */
+        private final ByteBuffer input = ByteBuffer.allocate(chunkSize);
+
+        /**
+         * Decoded chars waiting to be encoded, kept in write mode.
+         */
+        private final CharBuffer chars = CharBuffer.allocate(chunkSize);
+
+        /**
+         * Bytes of the target charset waiting to be sent, kept in write mode.
+         */
+        private final ByteBuffer output = ByteBuffer.allocate(
+                Math.max(chunkSize, (int) Math.ceil(encoder.maxBytesPerChar() * 2)));
+
+        /**
+         * Convert bytes of the source charset.
+         *
+         * @param bytes  The bytes.
+         * @param offset The offset of the bytes.
+         * @param length The number of the bytes.
+         * @param sink   The receiver of the converted bytes.
+         * @throws IOException If the sink fails.
+         */
+        void write(byte[] bytes, int offset, int length, ByteSink sink) throws IOException {
+            while (length > 0) {
+                int count = Math.min(length, input.remaining());
+                input.put(bytes, offset, count);
+                offset += count;
+                length -= count;
+                drain(false, sink);
+            }
+        }
+
+        /**
+         * Send the converted bytes buffered so far, bytes not converted yet stay buffered.
+         *
+         * @param sink The receiver of the converted bytes.
+         * @throws IOException If the sink fails.
+         */
+        void flush(ByteSink sink) throws IOException {
+            send(sink);
+        }
+
+        /**
+         * Convert everything still buffered, including the state kept by the decoder and the encoder.
+         *
+         * @param sink The receiver of the converted bytes.
+         * @throws IOException If the sink fails.
+         */
+        void finish(ByteSink sink) throws IOException {
+            drain(true, sink);
+            decoder.flush(chars);
+            encode(true, sink);
+            while (encoder.flush(output) == CoderResult.OVERFLOW) {
+                send(sink);
+            }
+            send(sink);
+        }
+
+        private void drain(boolean endOfInput, ByteSink sink) throws IOException {
+            input.flip();
+            CoderResult result;
+            do {
+                result = decoder.decode(input, chars, endOfInput);
+                encode(false, sink);
+            } while (result.isOverflow());
+            // A partial multi-byte sequence stays in the input for the next write.
+            input.compact();
+        }
+
+        private void encode(boolean endOfInput, ByteSink sink) throws IOException {
+            chars.flip();
+            while (encoder.encode(chars, output, endOfInput).isOverflow()) {
+                send(sink);
+            }
+            chars.compact();
+        }
+
+        private void send(ByteSink sink) throws IOException {
+            if (output.position() > 0) {
+                sink.write(output.array(), output.arrayOffset(), output.position());
+                output.clear();
+            }
+        }
+
+        private void reset() {
+            decoder.reset();
+            encoder.reset();
+            input.clear();
+            chars.clear();
+            output.clear();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package cn.vorbote.web.filter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+
+/**
+ * A response wrapper converting the bytes an application writes in a legacy charset (e.g. {@code GBK} or
+ * {@code ISO-8859-1} content proxied from an upstream system) to the charset declared to the client, incrementally
+ * while they are written.<br>
+ * Only the bytes written to {@link #getOutputStream()} are converted, chars written to {@link #getWriter()} are
+ * already encoded with the target charset by the container. The content length set by the application is dropped
+ * because converting changes it, and every charset the application declares is replaced by the target charset.<br>
+ * {@link #finish()} must be called once the chain returns, it converts the bytes still buffered and returns the
+ * transcoder to its pool.
+ *
+ * @author vorbote
+ */
+public class TranscodingResponseWrapper extends HttpServletResponseWrapper {
+
+    private final TranscoderPool pool;
+
+    private TranscodingOutputStream outputStream;
+
+    /**
+     * Wrap a response.
+     *
+     * @param response The response.
+     * @param pool     The pool providing the transcoder.
+     */
+    public TranscodingResponseWrapper(HttpServletResponse response, TranscoderPool pool) {
+        super(response);
+        this.pool = pool;
+        response.setCharacterEncoding(pool.getTarget().name());
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (outputStream == null) {
+            outputStream = new TranscodingOutputStream(super.getOutputStream(), pool);
+        }
+        return outputStream;
+    }
+
+    @Override
+    public void setCharacterEncoding(String charset) {
+        // The client always receives the target charset.
+    }
+
+    @Override
+    public void setContentType(String type) {
+        super.setContentType(type);
+        super.setCharacterEncoding(pool.getTarget().name());
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        // The length changes while converting.
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        // The length changes while converting.
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (!"Content-Length".equalsIgnoreCase(name)) {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (!"Content-Length".equalsIgnoreCase(name)) {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (outputStream != null) {
+            outputStream.flush();
+        }
+        super.flushBuffer();
+    }
+
+    @Override
+    public void resetBuffer() {
+        if (outputStream != null) {
+            outputStream.discard();
+        }
+        super.resetBuffer();
+    }
+
+    @Override
+    public void reset() {
+        if (outputStream != null) {
+            outputStream.discard();
+        }
+        super.reset();
+        super.setCharacterEncoding(pool.getTarget().name());
+    }
+
+    /**
+     * Convert the bytes still buffered and release the transcoder. Calling it more than once has no further effect.
+     *
+     * @throws IOException If the converted bytes cannot be written.
+     */
+    public void finish() throws IOException {
+        if (outputStream != null) {
+            outputStream.finish();
+        }
+    }
+
+    /**
+     * An output stream converting the bytes through a pooled transcoder, acquired on the first write.
+     */
+    private static final class TranscodingOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream delegate;
+
+        private final TranscoderPool pool;
+
+        private final ByteSink sink;
+
+        private final byte[] single = new byte[1];
+
+        private TranscoderPool.Transcoder transcoder;
+
+        private boolean finished;
+
+        private TranscodingOutputStream(ServletOutputStream delegate, TranscoderPool pool) {
+            this.delegate = delegate;
+            this.pool = pool;
+            this.sink = delegate::write;
+        }
+
+        private TranscoderPool.Transcoder transcoder() throws IOException {
+            if (finished) {
+                throw new IOException("Stream has been closed");
+            }
+            if (transcoder == null) {
+                transcoder = pool.acquire();
+            }
+            return transcoder;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            transcoder().write(b, off, len, sink);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (transcoder != null) {
+                transcoder.flush(sink);
+            }
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            delegate.close();
+        }
+
+        private void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (transcoder != null) {
+                try {
+                    transcoder.finish(sink);
+                } finally {
+                    pool.release(transcoder);
+                    transcoder = null;
+                }
+            }
+        }
+
+        private void discard() {
+            if (transcoder != null) {
+                pool.release(transcoder);
+                transcoder = null;
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package cn.vorbote.web.filter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * A stage of {@link WebSuiteFilter}. A stage works on the request and the response before they are passed down the
+ * chain, it may answer the request itself and stop the pipeline, as a CORS preflight request is answered.
+ *
+ * @author vorbote
+ */
+public interface WebSuiteStage {
+
+    /**
+     * Apply this stage to a request.
+     *
+     * @param request  The request.
+     * @param response The response.
+     * @return Value {@code true} if the request should be passed to the next stage, or {@code false} if it has been
+     * answered.
+     * @throws IOException      If an I/O error occurs.
+     * @throws ServletException If the request cannot be handled.
+     */
+    boolean apply(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException;
+}
@@ -0,0 +1,36 @@
+package cn.vorbote.web.listener;
+
+import cn.vorbote.web.model.ResponseResult;
+import cn.vorbote.web.time.CoarseClock;
+import cn.vorbote.web.time.TimeSource;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * CoarseClockListener stops the shared {@link CoarseClock} when the web application is destroyed, so its ticker
+ * thread does not keep the class loader of the application alive after an undeploy. The results created afterwards,
+ * e.g. by the requests still draining, are stamped from {@link TimeSource#system()} instead of the stopped clock.<br>
+ * Register it in the {@code web.xml} of the application, or as a listener bean in Spring Boot.
+ *
+ * @author vorbote
+ */
+@Slf4j
+public class CoarseClockListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        log.info("Coarse Clock Listener initializing...");
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        TimeSource timeSource = ResponseResult.getTimeSource();
+        if (timeSource == CoarseClock.sharedSource() || timeSource instanceof CoarseClock) {
+            ResponseResult.setTimeSource(TimeSource.system());
+        }
+        CoarseClock.shutdownShared();
+        log.info("Coarse Clock Listener destroyed...");
+    }
+}
@@ -0,0 +1,104 @@
+package cn.vorbote.web.metrics;
+
+import cn.vorbote.web.cors.CorsDecision;
+import cn.vorbote.web.cors.DecisionCache;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Metrics of a CORS filter.
+ *
+ * @author vorbote
+ */
+public class CorsMetrics extends FilterMetrics implements CorsMetricsMBean {
+
+    private final LongAdder preflights = new LongAdder();
+
+    /**
+     * Counters of the decisions, indexed by {@link CorsDecision#ordinal()}.
+     */
+    private final LongAdder[] decisions = new LongAdder[CorsDecision.values().length];
+
+    private final Supplier<DecisionCache> originCache;
+
+    /**
+     * Create the metrics of a CORS filter.
+     *
+     * @param originCache The supplier of the origin cache currently in effect, the supplier may return {@code null}.
+     */
+    public CorsMetrics(Supplier<DecisionCache> originCache) {
+        this.originCache = originCache;
+        for (int i = 0; i < decisions.length; i++) {
+            decisions[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Count a preflight request answered by the filter.
+     */
+    public void recordPreflight() {
+        preflights.increment();
+    }
+
+    /**
+     * Count the decision made for a cross-origin request.
+     *
+     * @param decision The decision.
+     */
+    public void recordDecision(CorsDecision decision) {
+        decisions[decision.ordinal()].increment();
+    }
+
+    @Override
+    public long getPreflightCount() {
+        return preflights.sum();
+    }
+
+    @Override
+    public long getAllowedCount() {
+        return decisions[CorsDecision.ALLOWED.ordinal()].sum();
+    }
+
+    @Override
+    public long getOriginRejectedCount() {
+        return decisions[CorsDecision.ORIGIN_NOT_ALLOWED.ordinal()].sum();
+    }
+
+    @Override
+    public long getMethodRejectedCount() {
+        return decisions[CorsDecision.METHOD_NOT_ALLOWED.ordinal()].sum();
+    }
+
+    @Override
+    public long getHeadersRejectedCount() {
+        return decisions[CorsDecision.HEADERS_NOT_ALLOWED.ordinal()].sum();
+    }
+
+    @Override
+    public long getOriginCacheHitCount() {
+        DecisionCache cache = originCache.get();
+        return cache == null ? 0 : cache.getHitCount();
+    }
+
+    @Override
+    public long getOriginCacheMissCount() {
+        DecisionCache cache = originCache.get();
+        return cache == null ? 0 : cache.getMissCount();
+    }
+
+    @Override
+    public long getOriginCacheEvictionCount() {
+        DecisionCache cache = originCache.get();
+        return cache == null ? 0 : cache.getEvictionCount();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        preflights.reset();
+        for (LongAdder decision : decisions) {
+            decision.reset();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package cn.vorbote.web.metrics;
+
+/**
+ * Management interface of {@link CorsMetrics}.
+ *
+ * @author vorbote
+ */
+public interface CorsMetricsMBean extends FilterMetricsMBean {
+
+    /**
+     * Get the number of preflight requests answered, allowed or rejected.
+     *
+     * @return The number of preflight requests.
+     */
+    long getPreflightCount();
+
+    /**
+     * Get the number of cross-origin requests whose origin was allowed.
+     *
+     * @return The number of allowed requests.
+     */
+    long getAllowedCount();
+
+    /**
+     * Get the number of cross-origin requests rejected because of their origin.
+     *
+     * @return The number of rejected requests.
+     */
+    long getOriginRejectedCount();
+
+    /**
+     * Get the number of preflight requests rejected because of the requested method.
+     *
+     * @return The number of rejected requests.
+     */
+    long getMethodRejectedCount();
+
+    /**
+     * Get the number of preflight requests rejected because of the requested headers.
+     *
+     * @return The number of rejected requests.
+     */
+    long getHeadersRejectedCount();
+
+    /**
+     * Get the number of origin decisions answered by the cache of the filter-level policy.
+     *
+     * @return The number of hits.
+     */
+    long getOriginCacheHitCount();
+
+    /**
+     * Get the number of origin decisions not answered by the cache of the filter-level policy.
+     *
+     * @return The number of misses.
+     */
+    long getOriginCacheMissCount();
+
+    /**
+     * Get the number of origin decisions evicted from the cache of the filter-level policy.
+     *
+     * @return The number of evictions.
+     */
+    long getOriginCacheEvictionCount();
+}
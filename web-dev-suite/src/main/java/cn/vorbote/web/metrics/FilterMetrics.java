@@ -0,0 +1,127 @@
+package cn.vorbote.web.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free metrics of a filter, registered as a platform MBean named
+ * {@code cn.vorbote.web:type=<filter type>,name=<filter name>}.<br>
+ * Every counter is a striped {@link LongAdder}, so recording never contends between request threads. A filter keeps
+ * a {@code null} reference while its metrics are disabled, which makes the disabled recording path a single null
+ * check.
+ *
+ * @author vorbote
+ */
+@Slf4j
+public class FilterMetrics implements FilterMetricsMBean {
+
+    /**
+     * The domain of the object names.
+     */
+    public static final String DOMAIN = "cn.vorbote.web";
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    private ObjectName objectName;
+
+    /**
+     * Count a request seen by the filter and the time the filter spent on it.
+     *
+     * @param nanos The time in nanoseconds, excluding the rest of the chain.
+     */
+    public void record(long nanos) {
+        requests.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    @Override
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getTotalTimeNanos() {
+        return totalNanos.sum();
+    }
+
+    @Override
+    public long getMaxTimeNanos() {
+        return maxNanos.get();
+    }
+
+    @Override
+    public long getAverageTimeNanos() {
+        long count = requests.sum();
+        return count == 0 ? 0 : totalNanos.sum() / count;
+    }
+
+    @Override
+    public void reset() {
+        requests.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+    /**
+     * Register these metrics to the platform MBean server. If the name is already taken, e.g. by the same filter of
+     * another application of the container, the metrics are registered under the name suffixed with {@code -2},
+     * {@code -3} and so on, never in place of the existing ones. A registration failure is logged and otherwise
+     * ignored, metrics must never prevent a filter from working.
+     *
+     * @param type The type of the filter.
+     * @param name The name of the filter.
+     * @return The metrics itself.
+     */
+    public FilterMetrics register(String type, String name) {
+        String baseName = name == null ? type : name;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (int instance = 1; ; instance++) {
+                ObjectName objectName = new ObjectName(DOMAIN + ":type=" + ObjectName.quote(type)
+                        + ",name=" + ObjectName.quote(instance == 1 ? baseName : baseName + "-" + instance));
+                try {
+                    server.registerMBean(this, objectName);
+                } catch (InstanceAlreadyExistsException e) {
+                    continue;
+                }
+                this.objectName = objectName;
+                if (instance == 1) {
+                    log.debug("Metrics registered as [{}]", objectName);
+                } else {
+                    log.warn("Metrics of [{}] already registered, registered as [{}]", baseName, objectName);
+                }
+                break;
+            }
+        } catch (JMException e) {
+            log.error("Failed to register metrics of [{}]: {}", baseName, e.getMessage());
+        }
+        return this;
+    }
+
+    /**
+     * Unregister these metrics from the platform MBean server.
+     */
+    public void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            log.error("Failed to unregister metrics [{}]: {}", objectName, e.getMessage());
+        }
+        objectName = null;
+    }
+}
@@ -0,0 +1,42 @@
+package cn.vorbote.web.metrics;
+
+/**
+ * Management interface of {@link FilterMetrics}.
+ *
+ * @author vorbote
+ */
+public interface FilterMetricsMBean {
+
+    /**
+     * Get the number of requests seen by the filter.
+     *
+     * @return The number of requests.
+     */
+    long getRequestCount();
+
+    /**
+     * Get the total time the filter spent on requests, excluding the rest of the chain.
+     *
+     * @return The total time in nanoseconds.
+     */
+    long getTotalTimeNanos();
+
+    /**
+     * Get the longest time the filter spent on a single request, excluding the rest of the chain.
+     *
+     * @return The longest time in nanoseconds.
+     */
+    long getMaxTimeNanos();
+
+    /**
+     * Get the average time the filter spent on a request, excluding the rest of the chain.
+     *
+     * @return The average time in nanoseconds.
+     */
+    long getAverageTimeNanos();
+
+    /**
+     * Reset every counter.
+     */
+    void reset();
+}
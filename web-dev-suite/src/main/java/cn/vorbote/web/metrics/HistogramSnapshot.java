@@ -0,0 +1,99 @@
+package cn.vorbote.web.metrics;
+
+/**
+ * A snapshot of a {@link LatencyHistogram}. Percentiles are the highest value of the bucket they fall in, never above
+ * the recorded maximum.
+ *
+ * @author vorbote
+ */
+public final class HistogramSnapshot {
+
+    private final long[] buckets;
+
+    private final long count;
+
+    private final long sum;
+
+    private final long max;
+
+    HistogramSnapshot(long[] buckets, long count, long sum, long max) {
+        this.buckets = buckets;
+        this.count = count;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    /**
+     * Get the number of recorded values.
+     *
+     * @return The number of values.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get the largest recorded value.
+     *
+     * @return The maximum in microseconds.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Get the average of the recorded values.
+     *
+     * @return The mean in microseconds, or {@code 0} if nothing has been recorded.
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Get the value below which a given share of the recorded values falls.
+     *
+     * @param percentile The percentile, from {@code 0} to {@code 100}.
+     * @return The value in microseconds, or {@code 0} if nothing has been recorded.
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (long bucket : buckets) {
+            total += bucket;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.highestOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    public long getP90() {
+        return getPercentile(90);
+    }
+
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    public long getP999() {
+        return getPercentile(99.9);
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + ", mean=" + Math.round(getMean()) + "us, p50=" + getP50() + "us, p90=" + getP90()
+                + "us, p99=" + getP99() + "us, p999=" + getP999() + "us, max=" + max + "us";
+    }
+}
@@ -0,0 +1,146 @@
+package cn.vorbote.web.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size log-linear histogram of latencies in microseconds, in the manner of HdrHistogram.<br>
+ * Every power of two is divided into {@value #SUB_BUCKETS} linear buckets, so a recorded value is off by at most
+ * {@code 1/16} of itself, from one microsecond up to {@value #MAX_VALUE} microseconds (about 19 hours), larger values
+ * are clamped. The buckets of all stripes live in one primitive array; a writer picks the stripe of its thread and
+ * increments a bucket, the count, the sum and the maximum of that stripe, so recording allocates nothing and writers
+ * of different stripes never share a cache line. Reading merges the stripes into a {@link HistogramSnapshot}.
+ *
+ * @author vorbote
+ */
+public final class LatencyHistogram {
+
+    /**
+     * The number of linear buckets per power of two.
+     */
+    public static final int SUB_BUCKETS = 16;
+
+    /**
+     * The largest value recorded as it is.
+     */
+    public static final long MAX_VALUE = (1L << 36) - 1;
+
+    private static final int SUB_BITS = 4;
+
+    /**
+     * The number of buckets: the values below {@link #SUB_BUCKETS}, then {@link #SUB_BUCKETS} per power of two.
+     */
+    static final int BUCKETS = (64 - Long.numberOfLeadingZeros(MAX_VALUE) - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private static final int COUNT = BUCKETS;
+
+    private static final int SUM = BUCKETS + 1;
+
+    private static final int MAX = BUCKETS + 2;
+
+    /**
+     * The longs of a stripe, rounded up to whole cache lines plus one line of padding.
+     */
+    private static final int STRIDE = ((BUCKETS + 3 + 7) & ~7) + 8;
+
+    private final AtomicLongArray cells;
+
+    private final int mask;
+
+    /**
+     * Create a histogram with one stripe per four processors, at most 8, which keeps a histogram within 35 KB.
+     */
+    public LatencyHistogram() {
+        this(Math.min(8, Math.max(1, Runtime.getRuntime().availableProcessors() / 4)));
+    }
+
+    /**
+     * Create a histogram.
+     *
+     * @param stripes The number of stripes, rounded up to a power of two.
+     */
+    public LatencyHistogram(int stripes) {
+        int count = 1;
+        while (count < stripes) {
+            count <<= 1;
+        }
+        this.mask = count - 1;
+        this.cells = new AtomicLongArray(count * STRIDE);
+    }
+
+    /**
+     * Get the bucket of a value.
+     *
+     * @param value The value, not negative.
+     * @return The index of the bucket.
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Get the highest value of a bucket.
+     *
+     * @param bucket The index of the bucket.
+     * @return The highest value.
+     */
+    static long highestOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BITS) - 1;
+        long base = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+        return base + (1L << shift) - 1;
+    }
+
+    /**
+     * Record a latency.
+     *
+     * @param micros The latency in microseconds.
+     */
+    public void record(long micros) {
+        long value = Math.max(0L, Math.min(micros, MAX_VALUE));
+        int base = ((int) Thread.currentThread().getId() & mask) * STRIDE;
+        cells.getAndIncrement(base + bucketOf(value));
+        cells.getAndIncrement(base + COUNT);
+        cells.getAndAdd(base + SUM, value);
+        int max = base + MAX;
+        long current;
+        while (value > (current = cells.get(max)) && !cells.compareAndSet(max, current, value)) {
+            // Retry until the maximum is at least the value.
+        }
+    }
+
+    /**
+     * Merge the stripes into a snapshot. Writers keep going meanwhile, so the snapshot is only consistent per bucket.
+     *
+     * @return The snapshot.
+     */
+    public HistogramSnapshot snapshot() {
+        long[] buckets = new long[BUCKETS];
+        long count = 0;
+        long sum = 0;
+        long max = 0;
+        for (int base = 0; base < cells.length(); base += STRIDE) {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] += cells.get(base + i);
+            }
+            count += cells.get(base + COUNT);
+            sum += cells.get(base + SUM);
+            max = Math.max(max, cells.get(base + MAX));
+        }
+        return new HistogramSnapshot(buckets, count, sum, max);
+    }
+
+    /**
+     * Clear every stripe.
+     */
+    public void reset() {
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, 0L);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package cn.vorbote.web.metrics;
+
+import java.util.Collection;
+
+/**
+ * Metrics of a latency filter: the per-route statistics, plus the overhead of the filter itself as
+ * {@link FilterMetrics}.
+ *
+ * @author vorbote
+ */
+public class LatencyMetrics extends FilterMetrics implements LatencyMetricsMBean {
+
+    private final RouteStatsTable routes;
+
+    /**
+     * Create the metrics of a latency filter.
+     *
+     * @param routes The table of the route statistics.
+     */
+    public LatencyMetrics(RouteStatsTable routes) {
+        this.routes = routes;
+    }
+
+    /**
+     * Get the table of the route statistics.
+     *
+     * @return The table.
+     */
+    public RouteStatsTable getRouteStats() {
+        return routes;
+    }
+
+    @Override
+    public String[] getRoutes() {
+        Collection<RouteStats> stats = routes.getRoutes();
+        String[] names = new String[stats.size()];
+        int i = 0;
+        for (RouteStats route : stats) {
+            names[i++] = route.getRoute();
+        }
+        return names;
+    }
+
+    @Override
+    public long[] getLatencyPercentiles(String route) {
+        RouteStats stats = routes.get(route);
+        if (stats == null) {
+            return null;
+        }
+        HistogramSnapshot snapshot = stats.getLatency().snapshot();
+        return new long[]{snapshot.getP50(), snapshot.getP90(), snapshot.getP99(), snapshot.getP999(),
+                snapshot.getMax()};
+    }
+
+    @Override
+    public String getLatencySummary(String route) {
+        RouteStats stats = routes.get(route);
+        return stats == null ? null : stats.getLatency().snapshot().toString();
+    }
+
+    @Override
+    public String getCodeCounts(String route) {
+        RouteStats stats = routes.get(route);
+        if (stats == null) {
+            return null;
+        }
+        String counts = stats.getCodeCounts().toString();
+        counts = counts.substring(1, counts.length() - 1);
+        long others = stats.getOtherCodeCount();
+        return others == 0 ? counts : counts + ", others=" + others;
+    }
+
+    @Override
+    public void resetRoutes() {
+        routes.clear();
+    }
+}
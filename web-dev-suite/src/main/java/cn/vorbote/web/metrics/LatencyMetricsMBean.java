@@ -0,0 +1,45 @@
+package cn.vorbote.web.metrics;
+
+/**
+ * Management interface of {@link LatencyMetrics}.
+ *
+ * @author vorbote
+ */
+public interface LatencyMetricsMBean extends FilterMetricsMBean {
+
+    /**
+     * Get the normalized routes seen so far.
+     *
+     * @return The routes.
+     */
+    String[] getRoutes();
+
+    /**
+     * Get the latency percentiles of a route.
+     *
+     * @param route The normalized route.
+     * @return The p50, p90, p99, p999 and maximum latencies in microseconds, or {@code null} if the route is unknown.
+     */
+    long[] getLatencyPercentiles(String route);
+
+    /**
+     * Describe the latency of a route.
+     *
+     * @param route The normalized route.
+     * @return The description, or {@code null} if the route is unknown.
+     */
+    String getLatencySummary(String route);
+
+    /**
+     * Describe the number of requests of a route per result code.
+     *
+     * @param route The normalized route.
+     * @return The counts, like {@code 200=42, 40001=3}, or {@code null} if the route is unknown.
+     */
+    String getCodeCounts(String route);
+
+    /**
+     * Forget every route.
+     */
+    void resetRoutes();
+}
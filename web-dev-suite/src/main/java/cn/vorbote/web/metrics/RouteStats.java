@@ -0,0 +1,104 @@
+package cn.vorbote.web.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The statistics of a route: a {@link LatencyHistogram} of its requests and the number of requests per result code.
+ * <br>
+ * Result codes are counted in a small open-addressing table claimed with compare-and-set, so counting an
+ * application-level code boxes nothing. Codes beyond the capacity of the table are counted together as others.
+ *
+ * @author vorbote
+ */
+public final class RouteStats {
+
+    private static final int CODE_SLOTS = 32;
+
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private final String route;
+
+    private final LatencyHistogram latency;
+
+    private final AtomicIntegerArray codes = new AtomicIntegerArray(CODE_SLOTS);
+
+    private final AtomicLongArray codeCounts = new AtomicLongArray(CODE_SLOTS);
+
+    private final LongAdder otherCodes = new LongAdder();
+
+    RouteStats(String route, LatencyHistogram latency) {
+        this.route = route;
+        this.latency = latency;
+        for (int i = 0; i < CODE_SLOTS; i++) {
+            codes.set(i, EMPTY);
+        }
+    }
+
+    /**
+     * Get the normalized route.
+     *
+     * @return The route.
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * Get the latency histogram.
+     *
+     * @return The histogram.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Record a request.
+     *
+     * @param micros The latency in microseconds.
+     * @param code   The result code.
+     */
+    public void record(long micros, int code) {
+        latency.record(micros);
+        int slot = (code * 0x9e3779b9) >>> 27;
+        for (int probe = 0; probe < CODE_SLOTS; probe++) {
+            int current = codes.get(slot);
+            if (current == code || current == EMPTY && (codes.compareAndSet(slot, EMPTY, code)
+                    || codes.get(slot) == code)) {
+                codeCounts.incrementAndGet(slot);
+                return;
+            }
+            slot = (slot + 1) & (CODE_SLOTS - 1);
+        }
+        otherCodes.increment();
+    }
+
+    /**
+     * Get the number of requests per result code.
+     *
+     * @return The counts by code, codes beyond the capacity of the table are not included.
+     */
+    public Map<Integer, Long> getCodeCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        for (int i = 0; i < CODE_SLOTS; i++) {
+            int code = codes.get(i);
+            if (code != EMPTY) {
+                counts.put(code, codeCounts.get(i));
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Get the number of requests whose code did not fit in the table.
+     *
+     * @return The number of requests.
+     */
+    public long getOtherCodeCount() {
+        return otherCodes.sum();
+    }
+}
@@ -0,0 +1,342 @@
+package cn.vorbote.web.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The {@link RouteStats} of normalized routes.<br>
+ * A request path is normalized by replacing each segment looking like an identifier (digits only, a UUID, or at least
+ * 16 hexadecimal chars with a digit) by {@value #ID_SEGMENT}, and by dropping the matrix and query parts, e.g.
+ * {@code /api/users/42/orders} becomes {@code /api/users/{id}/orders}. The normalized form is hashed and compared
+ * straight from the path, so resolving a known route allocates nothing; the table itself is copied on the rare
+ * insertion of a new route. Past {@code maxRoutes} routes, every new one is counted under {@value #OTHER_ROUTE}, which
+ * bounds the cardinality whatever the clients send. Since routes are never evicted, the caller should only let the
+ * requests known to match a route of the application insert one, see {@link #resolve(String, int, boolean)}, or a
+ * scan of random paths fills the table and sends the real routes to {@value #OTHER_ROUTE}.
+ *
+ * @author vorbote
+ */
+public final class RouteStatsTable {
+
+    /**
+     * The replacement of an identifier segment.
+     */
+    public static final String ID_SEGMENT = "{id}";
+
+    /**
+     * The route of the requests beyond the capacity of the table.
+     */
+    public static final String OTHER_ROUTE = "OTHER";
+
+    private final int maxRoutes;
+
+    private final int stripes;
+
+    private final RouteStats other;
+
+    /**
+     * The open-addressing table, copied on write.
+     */
+    private volatile Entry[] table = new Entry[16];
+
+    private int size;
+
+    /**
+     * Whether the table has reached its capacity, so unknown routes are neither normalized nor inserted.
+     */
+    private volatile boolean full;
+
+    /**
+     * Create a table.
+     *
+     * @param maxRoutes The maximum number of routes.
+     * @param stripes   The number of stripes of each histogram.
+     */
+    public RouteStatsTable(int maxRoutes, int stripes) {
+        this.maxRoutes = maxRoutes;
+        this.stripes = stripes;
+        this.other = new RouteStats(OTHER_ROUTE, new LatencyHistogram(stripes));
+        this.full = maxRoutes <= 0;
+    }
+
+    /**
+     * Create a table with histograms of the default stripes.
+     *
+     * @param maxRoutes The maximum number of routes.
+     */
+    public RouteStatsTable(int maxRoutes) {
+        this(maxRoutes, Math.min(8, Math.max(1, Runtime.getRuntime().availableProcessors() / 4)));
+    }
+
+    /**
+     * Resolve the statistics of a request path, inserting its route if it is unknown.
+     *
+     * @param path The request path.
+     * @param from The index where the route starts, usually the length of the context path.
+     * @return The statistics, those of {@value #OTHER_ROUTE} if the table is full.
+     */
+    public RouteStats resolve(String path, int from) {
+        return resolve(path, from, true);
+    }
+
+    /**
+     * Resolve the statistics of a request path.
+     *
+     * @param path   The request path.
+     * @param from   The index where the route starts, usually the length of the context path.
+     * @param insert Whether an unknown route is inserted, {@code false} for the requests which may not match any
+     *               route of the application, e.g. those answered with a {@code 404}.
+     * @return The statistics, those of {@value #OTHER_ROUTE} if the route is unknown and either the table is full or
+     * the route is not to be inserted.
+     */
+    public RouteStats resolve(String path, int from, boolean insert) {
+        int end = path.length();
+        for (int i = from; i < end; i++) {
+            char c = path.charAt(i);
+            if (c == ';' || c == '?') {
+                end = i;
+                break;
+            }
+        }
+        int hash = hash(path, from, end);
+        Entry[] table = this.table;
+        for (int i = hash & (table.length - 1); table[i] != null; i = (i + 1) & (table.length - 1)) {
+            Entry entry = table[i];
+            if (entry.hash == hash && matches(path, from, end, entry.stats.getRoute())) {
+                return entry.stats;
+            }
+        }
+        return full || !insert ? other : insert(normalize(path, from, end), hash);
+    }
+
+    private synchronized RouteStats insert(String route, int hash) {
+        Entry[] table = this.table;
+        for (int i = hash & (table.length - 1); table[i] != null; i = (i + 1) & (table.length - 1)) {
+            if (table[i].hash == hash && table[i].stats.getRoute().equals(route)) {
+                return table[i].stats;
+            }
+        }
+        if (size >= maxRoutes) {
+            return other;
+        }
+        int capacity = table.length;
+        while ((size + 1) * 2 > capacity) {
+            capacity <<= 1;
+        }
+        Entry[] copy = new Entry[capacity];
+        for (Entry entry : table) {
+            if (entry != null) {
+                place(copy, entry);
+            }
+        }
+        RouteStats stats = new RouteStats(route, new LatencyHistogram(stripes));
+        place(copy, new Entry(hash, stats));
+        size++;
+        full = size >= maxRoutes;
+        this.table = copy;
+        return stats;
+    }
+
+    private static void place(Entry[] table, Entry entry) {
+        int i = entry.hash & (table.length - 1);
+        while (table[i] != null) {
+            i = (i + 1) & (table.length - 1);
+        }
+        table[i] = entry;
+    }
+
+    /**
+     * Get the statistics of every route, including {@value #OTHER_ROUTE}.
+     *
+     * @return The statistics.
+     */
+    public Collection<RouteStats> getRoutes() {
+        List<RouteStats> routes = new ArrayList<>();
+        for (Entry entry : table) {
+            if (entry != null) {
+                routes.add(entry.stats);
+            }
+        }
+        routes.add(other);
+        return routes;
+    }
+
+    /**
+     * Get the statistics of a normalized route.
+     *
+     * @param route The normalized route.
+     * @return The statistics, or {@code null} if the route is unknown.
+     */
+    public RouteStats get(String route) {
+        if (OTHER_ROUTE.equals(route)) {
+            return other;
+        }
+        for (Entry entry : table) {
+            if (entry != null && entry.stats.getRoute().equals(route)) {
+                return entry.stats;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Forget every route.
+     */
+    public synchronized void clear() {
+        this.table = new Entry[16];
+        this.size = 0;
+        this.full = maxRoutes <= 0;
+        other.getLatency().reset();
+    }
+
+    /**
+     * Normalize a path.
+     *
+     * @param path The path.
+     * @param from The index where the route starts.
+     * @param end  The index where the route ends.
+     * @return The normalized route.
+     */
+    static String normalize(String path, int from, int end) {
+        if (from >= end) {
+            return "/";
+        }
+        StringBuilder builder = new StringBuilder(end - from);
+        int start = from;
+        while (start <= end) {
+            int slash = indexOf(path, '/', start, end);
+            if (isId(path, start, slash)) {
+                builder.append(ID_SEGMENT);
+            } else {
+                builder.append(path, start, slash);
+            }
+            if (slash < end) {
+                builder.append('/');
+            }
+            start = slash + 1;
+        }
+        return builder.toString();
+    }
+
+    private static int hash(String path, int from, int end) {
+        if (from >= end) {
+            return '/';
+        }
+        int hash = 0;
+        int start = from;
+        while (start <= end) {
+            int slash = indexOf(path, '/', start, end);
+            if (isId(path, start, slash)) {
+                for (int i = 0; i < ID_SEGMENT.length(); i++) {
+                    hash = 31 * hash + ID_SEGMENT.charAt(i);
+                }
+            } else {
+                for (int i = start; i < slash; i++) {
+                    hash = 31 * hash + path.charAt(i);
+                }
+            }
+            if (slash < end) {
+                hash = 31 * hash + '/';
+            }
+            start = slash + 1;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String path, int from, int end, String route) {
+        if (from >= end) {
+            return "/".equals(route);
+        }
+        int position = 0;
+        int length = route.length();
+        int start = from;
+        while (start <= end) {
+            int slash = indexOf(path, '/', start, end);
+            if (isId(path, start, slash)) {
+                if (!route.startsWith(ID_SEGMENT, position)) {
+                    return false;
+                }
+                position += ID_SEGMENT.length();
+            } else {
+                int count = slash - start;
+                if (position + count > length || !route.regionMatches(position, path, start, count)) {
+                    return false;
+                }
+                position += count;
+            }
+            if (slash < end) {
+                if (position >= length || route.charAt(position) != '/') {
+                    return false;
+                }
+                position++;
+            }
+            start = slash + 1;
+        }
+        return position == length;
+    }
+
+    private static int indexOf(String path, char c, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (path.charAt(i) == c) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Check whether a segment looks like an identifier.
+     *
+     * @param path  The path.
+     * @param start The start of the segment.
+     * @param end   The end of the segment.
+     * @return Value {@code true} if the segment is an identifier, or {@code false}.
+     */
+    private static boolean isId(String path, int start, int end) {
+        int length = end - start;
+        if (length == 0) {
+            return false;
+        }
+        boolean digits = true;
+        boolean hex = true;
+        boolean hasDigit = false;
+        int hyphens = 0;
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            if (c >= '0' && c <= '9') {
+                hasDigit = true;
+            } else {
+                digits = false;
+                if (c == '-') {
+                    hyphens++;
+                } else if (!(c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F')) {
+                    hex = false;
+                }
+            }
+        }
+        if (digits) {
+            return true;
+        }
+        if (!hex) {
+            return false;
+        }
+        if (length == 36 && hyphens == 4) {
+            return path.charAt(start + 8) == '-' && path.charAt(start + 13) == '-'
+                    && path.charAt(start + 18) == '-' && path.charAt(start + 23) == '-';
+        }
+        return hyphens == 0 && length >= 16 && hasDigit;
+    }
+
+    private static final class Entry {
+
+        private final int hash;
+
+        private final RouteStats stats;
+
+        private Entry(int hash, RouteStats stats) {
+            this.hash = hash;
+            this.stats = stats;
+        }
+    }
+}
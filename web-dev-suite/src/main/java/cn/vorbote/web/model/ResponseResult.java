@@ -1,17 +1,27 @@
 package cn.vorbote.web.model;
 
-import cn.vorbote.core.time.DateTime;
 import cn.vorbote.core.utils.StringUtil;
+import cn.vorbote.web.codec.ResultTemplate;
 import cn.vorbote.web.constants.WebStatus;
-import lombok.AllArgsConstructor;
+import cn.vorbote.web.time.CoarseClock;
+import cn.vorbote.web.time.TimeSource;
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.ToString;
 
+import java.util.Objects;
 import java.util.function.Supplier;
 
 /**
- * Response model for response body.
+ * Response model for response body.<br>
+ * The timestamp of a new result is read from a pluggable {@link TimeSource}, by default the shared
+ * {@link CoarseClock}, started by the first result actually stamped, see {@link #setTimeSource(TimeSource)}; a web
+ * application registers {@link cn.vorbote.web.listener.CoarseClockListener} to stop it on undeploy. In lazy mode, see
+ * {@link #setLazyTimestamp(boolean)}, a result is only stamped when its timestamp is first read, usually as it is
+ * serialized, so the results created and dropped on the way cost no clock read at all.
  *
  * @param <T> The type of the result.
  * @author vorbote thills@vorbote.cn
@@ -19,14 +29,56 @@ import java.util.function.Supplier;
 @Data
 @ToString
 @EqualsAndHashCode
-@AllArgsConstructor
 public final class ResponseResult<T> {
 
+    /**
+     * The timestamp of a result which has not been stamped yet in lazy mode.
+     */
+    private static final long UNSTAMPED = Long.MIN_VALUE;
+
+    private static volatile TimeSource timeSource = CoarseClock.sharedSource();
+
+    private static volatile boolean lazyTimestamp;
+
     private int code;
     private T data;
     private long timestamp;
     private String message;
 
+    /**
+     * The template this result has been created from, see {@link ResultTemplate#register(ResponseResult)}.
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient ResultTemplate template;
+
+    /**
+     * Generate a new Response Result instance.
+     *
+     * @param code      The status.
+     * @param data      The result.
+     * @param timestamp The timestamp.
+     * @param message   The message.
+     */
+    public ResponseResult(int code, T data, long timestamp, String message) {
+        this.code = code;
+        this.data = data;
+        this.timestamp = timestamp;
+        this.message = message;
+    }
+
+    /**
+     * Get the template this result has been created from. The template only encodes the result as long as
+     * {@link ResultTemplate#matches(ResponseResult)} tells so.
+     *
+     * @return The template, or {@code null} if none.
+     */
+    public ResultTemplate template() {
+        return template;
+    }
+
     /**
      * Get the data of status.
      *
@@ -68,14 +120,26 @@ public final class ResponseResult<T> {
     }
 
     /**
-     * Get the data of timestamp.
+     * Get the data of timestamp, stamping the result first if it has been created in lazy mode.
      *
      * @return The timestamp.
      */
     public long timestamp() {
+        if (timestamp == UNSTAMPED) {
+            timestamp = timeSource.unix();
+        }
         return timestamp;
     }
 
+    /**
+     * Get the data of timestamp, stamping the result first if it has been created in lazy mode.
+     *
+     * @return The timestamp.
+     */
+    public long getTimestamp() {
+        return timestamp();
+    }
+
     /**
      * Set the data of timestamp.
      *
@@ -124,7 +188,43 @@ public final class ResponseResult<T> {
      * Generate a new Response Result instance.
      */
     public ResponseResult() {
-        this.timestamp = DateTime.now().unix();
+        this.timestamp = lazyTimestamp ? UNSTAMPED : timeSource.unix();
+    }
+
+    /**
+     * Set the time source of the timestamps, e.g. a deterministic one in tests.
+     *
+     * @param timeSource The time source.
+     */
+    public static void setTimeSource(TimeSource timeSource) {
+        ResponseResult.timeSource = Objects.requireNonNull(timeSource, "timeSource");
+    }
+
+    /**
+     * Get the time source of the timestamps.
+     *
+     * @return The time source.
+     */
+    public static TimeSource getTimeSource() {
+        return timeSource;
+    }
+
+    /**
+     * Choose when new results are stamped: on creation (the default), or lazily when their timestamp is first read.
+     *
+     * @param lazy Value {@code true} to stamp the results lazily.
+     */
+    public static void setLazyTimestamp(boolean lazy) {
+        lazyTimestamp = lazy;
+    }
+
+    /**
+     * Get the current time from the time source of the timestamps, e.g. for a result written from a template.
+     *
+     * @return The seconds since the epoch.
+     */
+    public static long currentTimestamp() {
+        return timeSource.unix();
     }
 
     /**
@@ -149,10 +249,7 @@ public final class ResponseResult<T> {
      * @return The instance itself.
      */
     public static <T> ResponseResult<T> success(String message) {
-        ResponseResult<T> result = new ResponseResult<>();
-        result.code = WebStatus.OK;
-        result.message = message;
-        return result;
+        return of(WebStatus.OK, message);
     }
 
     /**
@@ -163,10 +260,7 @@ public final class ResponseResult<T> {
      * @return The instance itself.
      */
     public static <T> ResponseResult<T> success(Supplier<String> messageSupplier) {
-        ResponseResult<T> result = new ResponseResult<>();
-        result.code = WebStatus.OK;
-        result.message = messageSupplier.get();
-        return result;
+        return of(WebStatus.OK, messageSupplier.get());
     }
 
     /**
@@ -209,10 +303,7 @@ public final class ResponseResult<T> {
      * @return The instance itself.
      */
     public static <T> ResponseResult<T> timeout(Supplier<String> messageSupplier) {
-        ResponseResult<T> result = new ResponseResult<>();
-        result.code = WebStatus.REQUEST_TIMEOUT;
-        result.message = messageSupplier.get();
-        return result;
+        return of(WebStatus.REQUEST_TIMEOUT, messageSupplier.get());
     }
 
     /**
@@ -223,10 +314,7 @@ public final class ResponseResult<T> {
      * @return The instance itself.
      */
     public static <T> ResponseResult<T> timeout(String message) {
-        ResponseResult<T> result = new ResponseResult<>();
-        result.code = WebStatus.REQUEST_TIMEOUT;
-        result.message = message;
-        return result;
+        return of(WebStatus.REQUEST_TIMEOUT, message);
     }
 
     /**
@@ -237,10 +325,7 @@ public final class ResponseResult<T> {
      * @return The instance itself.
      */
     public static <T> ResponseResult<T> error(Supplier<String> messageSupplier) {
-        ResponseResult<T> result = new ResponseResult<>();
-        result.code = WebStatus.INTERNAL_SERVER_ERROR;
-        result.message = messageSupplier.get();
-        return result;
+        return of(WebStatus.INTERNAL_SERVER_ERROR, messageSupplier.get());
     }
 
     /**
@@ -251,10 +336,7 @@ public final class ResponseResult<T> {
      * @return The instance itself.
      */
     public static <T> ResponseResult<T> error(String message) {
-        ResponseResult<T> result = new ResponseResult<>();
-        result.code = WebStatus.INTERNAL_SERVER_ERROR;
-        result.message = message;
-        return result;
+        return of(WebStatus.INTERNAL_SERVER_ERROR, message);
     }
 
     /**
@@ -265,10 +347,7 @@ public final class ResponseResult<T> {
      * @return The instance itself.
      */
     public static <T> ResponseResult<T> unauthorized(String message) {
-        ResponseResult<T> result = new ResponseResult<>();
-        result.code = WebStatus.UNAUTHORIZED;
-        result.message = message;
-        return result;
+        return of(WebStatus.UNAUTHORIZED, message);
     }
 
     /**
@@ -279,10 +358,7 @@ public final class ResponseResult<T> {
      * @return The instance itself.
      */
     public static <T> ResponseResult<T> unauthorized(Supplier<String> messageSupplier) {
-        ResponseResult<T> result = new ResponseResult<>();
-        result.code = WebStatus.UNAUTHORIZED;
-        result.message = messageSupplier.get();
-        return result;
+        return of(WebStatus.UNAUTHORIZED, messageSupplier.get());
     }
 
     /**
@@ -293,10 +369,7 @@ public final class ResponseResult<T> {
      * @return The instance itself.
      */
     public static <T> ResponseResult<T> forbidden(String message) {
-        ResponseResult<T> result = new ResponseResult<>();
-        result.code = WebStatus.FORBIDDEN;
-        result.message = message;
-        return result;
+        return of(WebStatus.FORBIDDEN, message);
     }
 
     /**
@@ -307,9 +380,28 @@ public final class ResponseResult<T> {
      * @return The instance itself.
      */
     public static <T> ResponseResult<T> forbidden(Supplier<String> messageSupplier) {
+        return of(WebStatus.FORBIDDEN, messageSupplier.get());
+    }
+
+    /**
+     * Generate a new Response Result instance with a status and a message, backed by the registered template of the
+     * status and the message if any.
+     *
+     * @param code    The status.
+     * @param message The message.
+     * @param <T>     The type of the result.
+     * @return The instance itself.
+     */
+    private static <T> ResponseResult<T> of(int code, String message) {
         ResponseResult<T> result = new ResponseResult<>();
-        result.code = WebStatus.FORBIDDEN;
-        result.message = messageSupplier.get();
+        result.code = code;
+        ResultTemplate template = ResultTemplate.lookup(code, message);
+        if (template != null) {
+            result.template = template;
+            result.message = template.getMessage();
+        } else {
+            result.message = message;
+        }
         return result;
     }
 }
@@ -0,0 +1,242 @@
+package cn.vorbote.web.model;
+
+import cn.vorbote.web.constants.WebStatus;
+import cn.vorbote.web.exceptions.BizException;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * The streaming variant of {@link ResponseResult}, for results too large to be held in memory: its data is a sequence
+ * of elements pulled one at a time from an {@link Iterator}, a {@link Stream} or a cursor, and written as they come
+ * as the array of the {@code data} field.<br>
+ * Since the data is written before the outcome is known, the envelope puts {@code code} and {@code message} after it:
+ * {@code {"data":[...],"timestamp":...,"code":...,"message":...}}. When the source fails partway, the array is closed
+ * after the last complete element and the failure is reported by these trailing fields (and by the HTTP trailers when
+ * the client accepts them), see {@link #fail(Throwable)}. The timestamp is taken when the data is complete.<br>
+ * A result is written once, then closed, which closes the stream or the resource it has been created from.
+ *
+ * @param <E> The type of the elements.
+ * @author vorbote
+ */
+public final class StreamingResult<E> implements AutoCloseable {
+
+    /**
+     * The default number of elements written between two flushes.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final Iterator<? extends E> source;
+
+    private final AutoCloseable resource;
+
+    private int code = WebStatus.OK;
+
+    private String message;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private Throwable failure;
+
+    private StreamingResult(Iterator<? extends E> source, AutoCloseable resource) {
+        this.source = source;
+        this.resource = resource;
+    }
+
+    /**
+     * Generate a streaming result over an iterator.
+     *
+     * @param source The iterator.
+     * @param <E>    The type of the elements.
+     * @return The instance itself.
+     */
+    public static <E> StreamingResult<E> of(Iterator<? extends E> source) {
+        return new StreamingResult<>(source, null);
+    }
+
+    /**
+     * Generate a streaming result over an iterator of a resource, e.g. a database cursor, closed with the result.
+     *
+     * @param source   The iterator.
+     * @param resource The resource.
+     * @param <E>      The type of the elements.
+     * @return The instance itself.
+     */
+    public static <E> StreamingResult<E> of(Iterator<? extends E> source, AutoCloseable resource) {
+        return new StreamingResult<>(source, resource);
+    }
+
+    /**
+     * Generate a streaming result over a stream, closed with the result.
+     *
+     * @param source The stream.
+     * @param <E>    The type of the elements.
+     * @return The instance itself.
+     */
+    public static <E> StreamingResult<E> of(Stream<? extends E> source) {
+        return new StreamingResult<>(source.iterator(), source);
+    }
+
+    /**
+     * Generate a streaming result over a cursor, a supplier called for the next element until it returns
+     * {@code null}.
+     *
+     * @param cursor The cursor.
+     * @param <E>    The type of the elements.
+     * @return The instance itself.
+     */
+    public static <E> StreamingResult<E> fromCursor(Supplier<? extends E> cursor) {
+        return new StreamingResult<>(new CursorIterator<>(cursor), null);
+    }
+
+    /**
+     * Get the source of the elements.
+     *
+     * @return The iterator.
+     */
+    public Iterator<? extends E> source() {
+        return source;
+    }
+
+    /**
+     * Get the data of status.
+     *
+     * @return The status.
+     */
+    public int code() {
+        return code;
+    }
+
+    /**
+     * Set the data of status, written once the data is complete.
+     *
+     * @param code The status.
+     * @return The instance itself.
+     */
+    public StreamingResult<E> code(int code) {
+        this.code = code;
+        return this;
+    }
+
+    /**
+     * Get the data of message.
+     *
+     * @return The message.
+     */
+    public String message() {
+        return message;
+    }
+
+    /**
+     * Set the data of message, written once the data is complete.
+     *
+     * @param message The message.
+     * @return The instance itself.
+     */
+    public StreamingResult<E> message(String message) {
+        this.message = message;
+        return this;
+    }
+
+    /**
+     * Get the number of elements written between two flushes.
+     *
+     * @return The number of elements.
+     */
+    public int batchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set the number of elements written between two flushes, which bounds what is buffered before the client gets
+     * it.
+     *
+     * @param batchSize The number of elements.
+     * @return The instance itself.
+     * @throws IllegalArgumentException If the number is not positive.
+     */
+    public StreamingResult<E> batchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive, got " + batchSize);
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Record that the source has failed partway: the code and message of a {@link BizException} are kept, any other
+     * failure becomes an {@link WebStatus#INTERNAL_SERVER_ERROR}.
+     *
+     * @param failure The failure.
+     */
+    public void fail(Throwable failure) {
+        this.failure = failure;
+        if (failure instanceof BizException) {
+            this.code = ((BizException) failure).getCode();
+            this.message = failure.getMessage();
+        } else {
+            this.code = WebStatus.INTERNAL_SERVER_ERROR;
+            this.message = "The result has been cut short by an internal error";
+        }
+    }
+
+    /**
+     * Get the failure of the source.
+     *
+     * @return The failure, or {@code null} if the source has not failed.
+     */
+    public Throwable failure() {
+        return failure;
+    }
+
+    /**
+     * Close the resource the result has been created from, if any.
+     *
+     * @throws Exception If the resource cannot be closed.
+     */
+    @Override
+    public void close() throws Exception {
+        if (resource != null) {
+            resource.close();
+        }
+    }
+
+    /**
+     * An iterator over a cursor, looking one element ahead.
+     *
+     * @param <E> The type of the elements.
+     */
+    private static final class CursorIterator<E> implements Iterator<E> {
+
+        private final Supplier<? extends E> cursor;
+
+        private E next;
+
+        private boolean done;
+
+        private CursorIterator(Supplier<? extends E> cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                next = cursor.get();
+                done = next == null;
+            }
+            return !done;
+        }
+
+        @Override
+        public E next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            E element = next;
+            next = null;
+            return element;
+        }
+    }
+}
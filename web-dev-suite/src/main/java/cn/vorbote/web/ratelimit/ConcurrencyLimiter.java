@@ -0,0 +1,168 @@
+package cn.vorbote.web.ratelimit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A limit of the requests in flight which adapts itself to the observed latency with a gradient algorithm.<br>
+ * Latencies are collected per window. When a window closes, its average latency (the short one) is compared with a
+ * slowly moving average of the previous windows (the long one): while they are equal the limit grows by the square
+ * root of itself, the queue a server is expected to absorb, and when the short latency rises the limit is scaled down
+ * by their ratio, at most halved per window. The limit does not grow while the requests in flight stay below half of
+ * it, since such a window says nothing about the capacity.<br>
+ * Acquiring a slot is a compare-and-set on the in-flight counter, collecting a latency is a couple of adders, and the
+ * thread closing a window computes the new limit, so no lock is taken and no thread is needed.
+ *
+ * @author vorbote
+ */
+public final class ConcurrencyLimiter {
+
+    /**
+     * The tolerated ratio of the short latency to the long one before the limit is reduced.
+     */
+    private static final double TOLERANCE = 1.5;
+
+    /**
+     * The weight of a window in the long latency.
+     */
+    private static final double LONG_WEIGHT = 0.05;
+
+    /**
+     * The weight of a new limit against the current one.
+     */
+    private static final double SMOOTHING = 0.2;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long windowNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final LongAdder latencySum = new LongAdder();
+
+    private final LongAdder latencyCount = new LongAdder();
+
+    private final LongAccumulator maxInFlight = new LongAccumulator(Math::max, 0L);
+
+    private final AtomicLong nextUpdate;
+
+    private volatile double limit;
+
+    /**
+     * The long latency in nanoseconds, {@code 0} until the first window closes. Only written by the thread closing a
+     * window.
+     */
+    private volatile double longLatency;
+
+    /**
+     * Create a limiter.
+     *
+     * @param initialLimit The limit to start with.
+     * @param minLimit     The lowest limit.
+     * @param maxLimit     The highest limit.
+     * @param windowNanos  The length of a window, in nanoseconds.
+     * @throws IllegalArgumentException If the limits are not in order.
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long windowNanos) {
+        if (minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Expecting 0 < minLimit <= initialLimit <= maxLimit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.windowNanos = windowNanos;
+        this.limit = initialLimit;
+        this.nextUpdate = new AtomicLong(System.nanoTime() + windowNanos);
+    }
+
+    /**
+     * Try to take a slot.
+     *
+     * @return Value {@code true} if the request may proceed, it must then call {@link #release(long)}, or
+     * {@code false} if it should be shed.
+     */
+    public boolean tryAcquire() {
+        int limit = (int) this.limit;
+        for (; ; ) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                maxInFlight.accumulate(current + 1);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release a slot.
+     *
+     * @param latencyNanos The latency of the request, in nanoseconds.
+     */
+    public void release(long latencyNanos) {
+        inFlight.decrementAndGet();
+        latencySum.add(latencyNanos);
+        latencyCount.increment();
+
+        long now = System.nanoTime();
+        long due = nextUpdate.get();
+        if (now - due >= 0 && nextUpdate.compareAndSet(due, now + windowNanos)) {
+            update();
+        }
+    }
+
+    /**
+     * Close the window and compute the new limit.
+     */
+    private void update() {
+        long count = latencyCount.sumThenReset();
+        long sum = latencySum.sumThenReset();
+        long peak = maxInFlight.getThenReset();
+        if (count == 0) {
+            return;
+        }
+        double shortLatency = (double) sum / count;
+        double longLatency = this.longLatency;
+        if (longLatency == 0) {
+            longLatency = shortLatency;
+        } else {
+            longLatency = longLatency * (1 - LONG_WEIGHT) + shortLatency * LONG_WEIGHT;
+            // After a long slow phase the long latency lags behind a recovered service, let it catch up faster.
+            if (longLatency > shortLatency * 2) {
+                longLatency *= 0.95;
+            }
+        }
+        this.longLatency = longLatency;
+
+        double limit = this.limit;
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatency / shortLatency));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        if (peak < limit / 2) {
+            newLimit = Math.min(newLimit, limit);
+        }
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    /**
+     * Get the current limit.
+     *
+     * @return The limit.
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Get the number of requests in flight.
+     *
+     * @return The number of requests.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
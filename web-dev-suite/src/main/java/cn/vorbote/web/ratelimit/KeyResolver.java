@@ -0,0 +1,121 @@
+package cn.vorbote.web.ratelimit;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.function.Predicate;
+
+/**
+ * Tells which client a request comes from, so the requests of a client share a rate limit.
+ *
+ * @author vorbote
+ */
+@FunctionalInterface
+public interface KeyResolver {
+
+    /**
+     * Resolve the key of a request.
+     *
+     * @param request The request.
+     * @return The key, or {@code null} if the request carries none.
+     */
+    String resolve(HttpServletRequest request);
+
+    /**
+     * Key requests by the address of the client. Behind a proxy, this is the address of the proxy unless the container
+     * has been configured to take it from a forwarding header.
+     *
+     * @return The resolver.
+     */
+    static KeyResolver clientIp() {
+        return HttpServletRequest::getRemoteAddr;
+    }
+
+    /**
+     * Key requests by the value of a header, e.g. an API key. The value is <b>not</b> checked here: a client sending
+     * a new value with every request gets a fresh bucket every time, so use {@link #header(String, Predicate)} with
+     * the check of the application, or keep the cap on new keys per client address of the filter.
+     *
+     * @param name The name of the header.
+     * @return The resolver.
+     */
+    static KeyResolver header(String name) {
+        return (request) -> request.getHeader(name);
+    }
+
+    /**
+     * Key requests by the value of a header the application has validated, e.g. a known API key. A request with an
+     * invalid value carries no key, and is counted by its client address.
+     *
+     * @param name      The name of the header.
+     * @param validator The check of the application, called with the value of the header.
+     * @return The resolver.
+     */
+    static KeyResolver header(String name, Predicate<String> validator) {
+        return (request) -> {
+            String value = request.getHeader(name);
+            return value != null && validator.test(value) ? value : null;
+        };
+    }
+
+    /**
+     * Key requests by the {@code sub} claim of the bearer JWT. The signature is <b>not</b> verified here, the key only
+     * decides which bucket a request is counted in, so a forged subject spreads a client over several buckets: use it
+     * behind the authentication, or together with a limit by client address.
+     *
+     * @return The resolver.
+     */
+    static KeyResolver jwtSubject() {
+        return (request) -> {
+            String authorization = request.getHeader("Authorization");
+            if (authorization == null || !authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+                return null;
+            }
+            int start = authorization.indexOf('.', 7);
+            int end = start < 0 ? -1 : authorization.indexOf('.', start + 1);
+            if (end < 0) {
+                return null;
+            }
+            String payload;
+            try {
+                payload = new String(Base64.getUrlDecoder().decode(authorization.substring(start + 1, end)),
+                        StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            return readStringClaim(payload, "sub");
+        };
+    }
+
+    /**
+     * Read a string claim of a JSON object without parsing the whole object.
+     *
+     * @param json  The JSON object.
+     * @param claim The name of the claim.
+     * @return The value, or {@code null} if the claim is absent or not a plain string.
+     */
+    static String readStringClaim(String json, String claim) {
+        String name = "\"" + claim + "\"";
+        int index = json.indexOf(name);
+        while (index >= 0) {
+            int i = index + name.length();
+            while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+                i++;
+            }
+            if (i < json.length() && json.charAt(i) == ':') {
+                i++;
+                while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+                    i++;
+                }
+                if (i >= json.length() || json.charAt(i) != '"') {
+                    return null;
+                }
+                int end = json.indexOf('"', i + 1);
+                // An escaped value is rare in a subject, it is not worth decoding.
+                return end < 0 || json.lastIndexOf('\\', end) > i ? null : json.substring(i + 1, end);
+            }
+            index = json.indexOf(name, index + 1);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,157 @@
+package cn.vorbote.web.ratelimit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A token-bucket rate limiter holding one bucket per key.<br>
+ * Each bucket is a single {@code long}, the theoretical arrival time of the generic cell rate algorithm: a permit is
+ * granted if pushing that time one emission interval forward keeps it within {@code burst} intervals of now. Both the
+ * refill and the consumption are that one compare-and-set, so acquiring a permit takes no lock.<br>
+ * Keys are spread over independent striped maps, so neither resizing nor eviction ever involves one structure shared
+ * by every key. A bucket which has been full for the idle timeout carries no state a fresh bucket would not, it is
+ * evicted by a sweep of its stripe, amortized over the requests hitting that stripe.
+ *
+ * @author vorbote
+ */
+public final class RateLimiter {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final long emissionInterval;
+
+    private final long tolerance;
+
+    private final long idleTimeout;
+
+    private final Stripe[] stripes;
+
+    private final int mask;
+
+    /**
+     * Create a limiter.
+     *
+     * @param permitsPerSecond The sustained rate of each key.
+     * @param burst            The number of permits a key may use at once.
+     * @param idleTimeoutNanos How long a full bucket is kept before it is evicted, in nanoseconds.
+     * @throws IllegalArgumentException If the rate or the burst is not positive.
+     */
+    public RateLimiter(double permitsPerSecond, int burst, long idleTimeoutNanos) {
+        if (!(permitsPerSecond > 0) || burst <= 0) {
+            throw new IllegalArgumentException("The rate and the burst must be positive");
+        }
+        this.emissionInterval = Math.max(1L, (long) (NANOS_PER_SECOND / permitsPerSecond));
+        this.tolerance = emissionInterval * burst;
+        this.idleTimeout = Math.max(0L, idleTimeoutNanos);
+
+        int count = 1;
+        while (count < Runtime.getRuntime().availableProcessors() * 4) {
+            count <<= 1;
+        }
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.mask = count - 1;
+    }
+
+    /**
+     * Try to take a permit for a key.
+     *
+     * @param key The key.
+     * @return Value {@code 0} if the permit is granted, or else the nanoseconds to wait before one is available.
+     */
+    public long tryAcquire(String key) {
+        long now = System.nanoTime();
+        int hash = key.hashCode();
+        Stripe stripe = stripes[(hash ^ (hash >>> 16)) & mask];
+        stripe.sweepIfDue(now, idleTimeout);
+
+        Bucket bucket = stripe.buckets.get(key);
+        if (bucket == null) {
+            bucket = stripe.buckets.computeIfAbsent(key, (k) -> new Bucket(now));
+        }
+        for (; ; ) {
+            long tat = bucket.tat;
+            long next = Math.max(tat, now) + emissionInterval;
+            long wait = next - now - tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (Bucket.TAT.compareAndSet(bucket, tat, next)) {
+                return 0L;
+            }
+        }
+    }
+
+    /**
+     * Check whether a key has a bucket, without creating one.
+     *
+     * @param key The key.
+     * @return Value {@code true} if the key is tracked, or {@code false}.
+     */
+    public boolean isTracked(String key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & mask].buckets.containsKey(key);
+    }
+
+    /**
+     * Get the number of keys currently tracked.
+     *
+     * @return The number of keys.
+     */
+    public int getKeyCount() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.buckets.size();
+        }
+        return count;
+    }
+
+    /**
+     * The state of one key.
+     */
+    private static final class Bucket {
+
+        private static final AtomicLongFieldUpdater<Bucket> TAT =
+                AtomicLongFieldUpdater.newUpdater(Bucket.class, "tat");
+
+        /**
+         * The theoretical arrival time, the bucket is full when it is not after now.
+         */
+        private volatile long tat;
+
+        private Bucket(long tat) {
+            this.tat = tat;
+        }
+    }
+
+    /**
+     * A map of buckets with its own eviction schedule.
+     */
+    private static final class Stripe {
+
+        private static final AtomicLongFieldUpdater<Stripe> NEXT_SWEEP =
+                AtomicLongFieldUpdater.newUpdater(Stripe.class, "nextSweep");
+
+        private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+        private volatile long nextSweep = System.nanoTime();
+
+        /**
+         * Evict the buckets idle for the timeout, at most once per timeout. Only the thread winning the schedule
+         * sweeps, the others go on.
+         *
+         * @param now         The current time.
+         * @param idleTimeout The idle timeout.
+         */
+        private void sweepIfDue(long now, long idleTimeout) {
+            long due = nextSweep;
+            if (now - due < 0 || !NEXT_SWEEP.compareAndSet(this, due, now + Math.max(idleTimeout, 1_000_000L))) {
+                return;
+            }
+            long threshold = now - idleTimeout;
+            buckets.values().removeIf((bucket) -> bucket.tat - threshold < 0);
+        }
+    }
+}
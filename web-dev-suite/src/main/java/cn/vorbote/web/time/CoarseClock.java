@@ -0,0 +1,132 @@
+package cn.vorbote.web.time;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A clock reading the system clock on a single daemon ticker thread every few milliseconds, so that telling the time
+ * is a plain volatile read: no call into the system and no allocation, however many results are created. The time is
+ * at most one tick late, which does not show in a timestamp of seconds.<br>
+ * The {@link #shared() shared} clock ticks every {@value #DEFAULT_TICK_MILLIS} milliseconds; its thread is only
+ * started once it is first used, and runs until {@link #shutdownShared()}. In a web application, the thread would
+ * otherwise keep the class loader of the application alive after it has been undeployed: register
+ * {@link cn.vorbote.web.listener.CoarseClockListener}, which stops the shared clock with the context.
+ *
+ * @author vorbote
+ */
+public final class CoarseClock implements TimeSource, AutoCloseable {
+
+    /**
+     * The default interval between two ticks.
+     */
+    public static final long DEFAULT_TICK_MILLIS = 5;
+
+    private final long tickNanos;
+
+    private final Thread ticker;
+
+    private volatile long millis;
+
+    private volatile boolean closed;
+
+    private static volatile CoarseClock shared;
+
+    /**
+     * The time source reading the shared clock, see {@link #sharedSource()}.
+     */
+    private static final TimeSource SHARED_SOURCE = () -> shared().unix();
+
+    /**
+     * Create a clock and start its ticker.
+     *
+     * @param tickMillis The interval between two ticks.
+     * @throws IllegalArgumentException If the interval is not positive.
+     */
+    public CoarseClock(long tickMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("The tick of a clock must be positive, got " + tickMillis);
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.millis = System.currentTimeMillis();
+        this.ticker = new Thread(this::tick, "coarse-clock-ticker");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /**
+     * Get the clock shared by the whole JVM, starting it if it is not running.
+     *
+     * @return The clock.
+     */
+    public static CoarseClock shared() {
+        CoarseClock clock = shared;
+        if (clock != null) {
+            return clock;
+        }
+        synchronized (CoarseClock.class) {
+            if (shared == null) {
+                shared = new CoarseClock(DEFAULT_TICK_MILLIS);
+            }
+            return shared;
+        }
+    }
+
+    /**
+     * Get a time source reading the shared clock, which is only started by the first read, not by taking the source.
+     *
+     * @return The time source, always the same instance.
+     */
+    public static TimeSource sharedSource() {
+        return SHARED_SOURCE;
+    }
+
+    /**
+     * Stop the shared clock and wait for its ticker to end. The holders of the stopped clock read a frozen time, they
+     * should be given another time source first; a later call to {@link #shared()} starts a new clock.
+     *
+     * @return The stopped clock, or {@code null} if the shared clock was not running.
+     */
+    public static synchronized CoarseClock shutdownShared() {
+        CoarseClock clock = shared;
+        shared = null;
+        if (clock != null) {
+            clock.close();
+            try {
+                clock.ticker.join(TimeUnit.NANOSECONDS.toMillis(clock.tickNanos) * 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return clock;
+    }
+
+    private void tick() {
+        while (!closed) {
+            LockSupport.parkNanos(this, tickNanos);
+            millis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Get the current time.
+     *
+     * @return The milliseconds since the epoch, at most one tick late.
+     */
+    public long millis() {
+        return millis;
+    }
+
+    @Override
+    public long unix() {
+        return millis / 1000;
+    }
+
+    /**
+     * Stop the ticker, the clock stops too. The shared clock is stopped with {@link #shutdownShared()} instead.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(ticker);
+    }
+}
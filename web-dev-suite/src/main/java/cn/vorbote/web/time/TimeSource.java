@@ -0,0 +1,37 @@
+package cn.vorbote.web.time;
+
+/**
+ * A source of the current time in unix seconds, the timestamps of the results. The default one is the shared
+ * {@link CoarseClock}; tests inject a deterministic one, e.g. {@link #fixed(long)} or a lambda reading a counter.
+ *
+ * @author vorbote
+ */
+@FunctionalInterface
+public interface TimeSource {
+
+    /**
+     * Get the current time.
+     *
+     * @return The seconds since the epoch.
+     */
+    long unix();
+
+    /**
+     * Get the time source reading the system clock on every call.
+     *
+     * @return The time source.
+     */
+    static TimeSource system() {
+        return () -> System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * Get a time source which always tells the same time.
+     *
+     * @param unix The seconds since the epoch.
+     * @return The time source.
+     */
+    static TimeSource fixed(long unix) {
+        return () -> unix;
+    }
+}
@@ -0,0 +1,231 @@
+package cn.vorbote.web.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * ConfigFileWatcher loads a flat configuration file and loads it again every time the file changes. The file is either
+ * a {@code .properties} file or a {@code .yml}/{@code .yaml} file; nested YAML keys are flattened with dots and YAML
+ * lists are joined with commas, e.g.
+ * <pre class="code">
+ * allowOrigin:
+ *   - https://a.example.com
+ *   - https://*.tenant.example.com
+ * admin:
+ *   allowCredentials: true
+ * </pre>
+ * is loaded as {@code allowOrigin=https://a.example.com,https://*.tenant.example.com} and
+ * {@code admin.allowCredentials=true}.<br>
+ * The file is watched by a {@link WatchService} on a daemon thread, the listener is invoked on that thread and never on
+ * the thread of a request. A listener should throw an exception to reject the loaded content, the exception is logged
+ * and nothing else happens.
+ *
+ * @author vorbote
+ */
+@Slf4j
+public final class ConfigFileWatcher implements Closeable {
+
+    /**
+     * Changes of a file usually arrive as a burst of events, they are coalesced within this delay.
+     */
+    private static final long SETTLE_MILLIS = 100;
+
+    private final Path file;
+
+    private final Consumer<Map<String, String>> listener;
+
+    private final WatchService watchService;
+
+    private final Thread thread;
+
+    private volatile boolean closed;
+
+    /**
+     * Start watching a file.
+     *
+     * @param file     The file.
+     * @param listener The listener receiving the content of the file after each change.
+     * @throws IOException If the directory of the file cannot be watched.
+     */
+    public ConfigFileWatcher(Path file, Consumer<Map<String, String>> listener) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.listener = listener;
+        this.watchService = this.file.getFileSystem().newWatchService();
+        this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::watch, "config-watcher-" + this.file.getFileName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Load a configuration file.
+     *
+     * @param file The file.
+     * @return The flattened content of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    public static Map<String, String> load(Path file) throws IOException {
+        String fileName = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (fileName.endsWith(".yml") || fileName.endsWith(".yaml")) {
+                return loadYaml(reader);
+            }
+            return loadProperties(reader);
+        }
+    }
+
+    private static Map<String, String> loadProperties(Reader reader) throws IOException {
+        Properties properties = new Properties();
+        properties.load(reader);
+        Map<String, String> content = new LinkedHashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            content.put(name, properties.getProperty(name).trim());
+        }
+        return content;
+    }
+
+    private static Map<String, String> loadYaml(BufferedReader reader) throws IOException {
+        Map<String, String> content = new LinkedHashMap<>();
+        // The keys of the enclosing blocks and their indentations.
+        Deque<String> keys = new ArrayDeque<>();
+        Deque<Integer> indents = new ArrayDeque<>();
+        String listKey = null;
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String text = stripComment(line);
+            if (text.trim().isEmpty() || text.trim().equals("---")) {
+                continue;
+            }
+            int indent = 0;
+            while (indent < text.length() && text.charAt(indent) == ' ') {
+                indent++;
+            }
+            String item = text.trim();
+
+            if (item.startsWith("- ") || item.equals("-")) {
+                if (listKey == null) {
+                    throw new IOException("Unexpected list item at line " + lineNumber);
+                }
+                String value = unquote(item.substring(1).trim());
+                String joined = content.get(listKey);
+                content.put(listKey, joined == null || joined.isEmpty() ? value : joined + "," + value);
+                continue;
+            }
+
+            while (!indents.isEmpty() && indents.peek() >= indent) {
+                indents.pop();
+                keys.pop();
+            }
+            int colon = item.indexOf(':');
+            if (colon <= 0) {
+                throw new IOException("Expected 'key: value' at line " + lineNumber);
+            }
+            String key = keys.isEmpty() ? item.substring(0, colon).trim()
+                    : keys.peek() + "." + item.substring(0, colon).trim();
+            String value = item.substring(colon + 1).trim();
+            if (value.isEmpty()) {
+                // Either a nested block or a list follows.
+                keys.push(key);
+                indents.push(indent);
+                listKey = key;
+                content.put(key, "");
+            } else {
+                listKey = null;
+                content.put(key, unquote(value));
+            }
+        }
+        // Keys which only opened a nested block carry no value.
+        content.values().removeIf(String::isEmpty);
+        return content;
+    }
+
+    private static String stripComment(String line) {
+        boolean quoted = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                quoted = c != quote;
+            } else if (c == '\'' || c == '"') {
+                quoted = true;
+                quote = c;
+            } else if (c == '#' && (i == 0 || Character.isWhitespace(line.charAt(i - 1)))) {
+                return line.substring(0, i);
+            }
+        }
+        return line;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2) {
+            char first = value.charAt(0);
+            if ((first == '"' || first == '\'') && value.charAt(value.length() - 1) == first) {
+                return value.substring(1, value.length() - 1);
+            }
+        }
+        return value;
+    }
+
+    private void watch() {
+        while (!closed) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+                // Let the writer finish, then drain the burst of events it caused.
+                TimeUnit.MILLISECONDS.sleep(SETTLE_MILLIS);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            boolean changed = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                        || file.getFileName().equals(event.context())) {
+                    changed = true;
+                }
+            }
+            if (!key.reset()) {
+                log.error("Directory of [{}] is no longer accessible, stop watching it.", file);
+                return;
+            }
+            if (changed) {
+                reload();
+            }
+        }
+    }
+
+    private void reload() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            listener.accept(load(file));
+            log.info("Configuration [{}] reloaded.", file);
+        } catch (Exception e) {
+            log.error("Configuration [{}] rejected, the previous one stays in effect: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Stop watching the file.
+     *
+     * @throws IOException If the watch service cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        thread.interrupt();
+        watchService.close();
+    }
+}
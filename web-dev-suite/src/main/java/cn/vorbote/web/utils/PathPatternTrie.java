@@ -0,0 +1,282 @@
+package cn.vorbote.web.utils;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * PathPatternTrie maps path patterns to values through a trie over the path segments. Two kinds of patterns are
+ * supported:
+ * <ul>
+ *     <li>an exact path such as {@code /api/health}, which only matches itself;</li>
+ *     <li>a prefix path ending with {@code /**} such as {@code /api/public/**}, which matches {@code /api/public} and
+ *     everything beneath it. {@code /**} on its own matches every path.</li>
+ * </ul>
+ * An exact pattern beats a prefix pattern and a longer prefix beats a shorter one. A lookup walks the segments of the
+ * path in place, therefore it allocates nothing and costs {@code O(length of the path)} no matter how many patterns are
+ * registered. No regular expressions are involved.<br>
+ * Patterns are registered while the owner is being configured, the trie is only read afterwards and has to be
+ * published safely, e.g. through a final or volatile field.<br>
+ * A request must be matched through {@link #match(HttpServletRequest)}, which sees the path the container dispatches
+ * on: the request URI is neither decoded nor normalised, so {@code /public/../admin} or {@code /public/%2e%2e/admin}
+ * would match the patterns of {@code /public} while the container serves {@code /admin}.
+ *
+ * @param <V> The type of the values.
+ * @author vorbote
+ */
+public final class PathPatternTrie<V> {
+
+    private static final String PREFIX_SUFFIX = "/**";
+
+    private final Node<V> root = new Node<>();
+
+    private int size;
+
+    /**
+     * Register a pattern, the value of an equal pattern will be replaced.
+     *
+     * @param pattern The path pattern, must start with {@code /}.
+     * @param value   The value.
+     * @throws IllegalArgumentException If the pattern is malformed.
+     */
+    public void put(String pattern, V value) {
+        if (pattern == null || !pattern.startsWith("/")) {
+            throw new IllegalArgumentException("Path pattern must start with '/', got [" + pattern + "]");
+        }
+        boolean prefix = pattern.endsWith(PREFIX_SUFFIX);
+        int end = prefix ? pattern.length() - PREFIX_SUFFIX.length() : pattern.length();
+        if (pattern.indexOf('*') >= 0 && pattern.indexOf('*') < end) {
+            throw new IllegalArgumentException("Wildcards are only supported as a trailing '/**', got [" + pattern + "]");
+        }
+
+        Node<V> node = root;
+        int index = 0;
+        while (index < end) {
+            // Skip the separator, empty segments are ignored.
+            if (pattern.charAt(index) == '/') {
+                index++;
+                continue;
+            }
+            int segmentEnd = pattern.indexOf('/', index);
+            if (segmentEnd < 0 || segmentEnd > end) {
+                segmentEnd = end;
+            }
+            node = node.child(pattern.substring(index, segmentEnd));
+            index = segmentEnd;
+        }
+        if (prefix) {
+            if (node.prefixValue == null) {
+                size++;
+            }
+            node.prefixValue = value;
+        } else {
+            if (node.exactValue == null) {
+                size++;
+            }
+            node.exactValue = value;
+        }
+    }
+
+    /**
+     * Get the number of registered patterns.
+     *
+     * @return The number of patterns.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Check whether no pattern is registered.
+     *
+     * @return Value {@code true} if no pattern is registered, or {@code false}.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Find the value of the best pattern matching the whole path.
+     *
+     * @param path The path.
+     * @return The value, or {@code null} if no pattern matches.
+     */
+    public V match(String path) {
+        return match(path, 0);
+    }
+
+    /**
+     * Find the value of the best pattern matching the path of a request within the application, see
+     * {@link #requestPath(HttpServletRequest)}.
+     *
+     * @param request The request.
+     * @return The value, or {@code null} if no pattern matches.
+     */
+    public V match(HttpServletRequest request) {
+        return match(requestPath(request), 0);
+    }
+
+    /**
+     * Get the path of a request within the application, the one the container has mapped the request with: the
+     * servlet path followed by the path info, both decoded, stripped of path parameters and normalised by the
+     * container. A dot-segment still left by a lenient container is resolved here.
+     *
+     * @param request The request.
+     * @return The path, starting with {@code /} unless it is empty.
+     */
+    public static String requestPath(HttpServletRequest request) {
+        String servletPath = request.getServletPath();
+        String pathInfo = request.getPathInfo();
+        String path = servletPath == null ? "" : servletPath;
+        if (pathInfo != null) {
+            path = path.concat(pathInfo);
+        }
+        return path.contains("/.") ? normalize(path) : path;
+    }
+
+    /**
+     * Resolve the {@code .} and {@code ..} segments of a decoded path, a {@code ..} above the root is dropped.
+     *
+     * @param path The path.
+     * @return The normalised path.
+     */
+    public static String normalize(String path) {
+        StringBuilder normalized = new StringBuilder(path.length());
+        int index = 0;
+        int length = path.length();
+        while (index < length) {
+            int segmentEnd = path.indexOf('/', index + 1);
+            if (segmentEnd < 0) {
+                segmentEnd = length;
+            }
+            String segment = path.substring(index, segmentEnd);
+            if ("/..".equals(segment)) {
+                int parent = normalized.lastIndexOf("/");
+                normalized.setLength(Math.max(parent, 0));
+            } else if (!"/.".equals(segment)) {
+                normalized.append(segment);
+            }
+            index = segmentEnd;
+        }
+        return normalized.length() == 0 && length > 0 ? "/" : normalized.toString();
+    }
+
+    /**
+     * Find the value of the best pattern matching the path which starts at the given index. A path parameter
+     * ({@code ;...}) or a query string ends the path. The path must already be decoded and normalised, requests are
+     * matched through {@link #match(HttpServletRequest)}.
+     *
+     * @param path The text containing the path.
+     * @param from The index the path starts at.
+     * @return The value, or {@code null} if no pattern matches.
+     */
+    public V match(String path, int from) {
+        Node<V> node = root;
+        V best = root.prefixValue;
+        int length = path.length();
+        int index = from;
+        while (index < length) {
+            char c = path.charAt(index);
+            if (c == ';' || c == '?') {
+                break;
+            }
+            if (c == '/') {
+                index++;
+                continue;
+            }
+            int segmentEnd = index;
+            while (segmentEnd < length) {
+                char s = path.charAt(segmentEnd);
+                if (s == '/' || s == ';' || s == '?') {
+                    break;
+                }
+                segmentEnd++;
+            }
+            node = node.get(path, index, segmentEnd);
+            if (node == null) {
+                return best;
+            }
+            if (node.prefixValue != null) {
+                best = node.prefixValue;
+            }
+            index = segmentEnd;
+        }
+        return node.exactValue != null ? node.exactValue : best;
+    }
+
+    /**
+     * A node of the trie, the children are kept in an open addressing table which is probed with regions of the path.
+     */
+    private static final class Node<V> {
+
+        private String[] keys;
+
+        private Node<V>[] children;
+
+        private int childCount;
+
+        private V exactValue;
+
+        private V prefixValue;
+
+        private static int hash(String text, int from, int to) {
+            int h = 0;
+            for (int i = from; i < to; i++) {
+                h = 31 * h + text.charAt(i);
+            }
+            return h ^ (h >>> 16);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Node<V> child(String segment) {
+            Node<V> child = get(segment, 0, segment.length());
+            if (child != null) {
+                return child;
+            }
+            if (keys == null || (childCount + 1) * 2 > keys.length) {
+                String[] oldKeys = keys;
+                Node<V>[] oldChildren = children;
+                int capacity = keys == null ? 4 : keys.length << 1;
+                keys = new String[capacity];
+                children = (Node<V>[]) new Node[capacity];
+                childCount = 0;
+                if (oldKeys != null) {
+                    for (int i = 0; i < oldKeys.length; i++) {
+                        if (oldKeys[i] != null) {
+                            insert(oldKeys[i], oldChildren[i]);
+                        }
+                    }
+                }
+            }
+            child = new Node<>();
+            insert(segment, child);
+            return child;
+        }
+
+        private void insert(String segment, Node<V> child) {
+            int mask = keys.length - 1;
+            int index = hash(segment, 0, segment.length()) & mask;
+            while (keys[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = segment;
+            children[index] = child;
+            childCount++;
+        }
+
+        private Node<V> get(String text, int from, int to) {
+            if (keys == null) {
+                return null;
+            }
+            int length = to - from;
+            int mask = keys.length - 1;
+            int index = hash(text, from, to) & mask;
+            String key;
+            while ((key = keys[index]) != null) {
+                if (key.length() == length && key.regionMatches(0, text, from, length)) {
+                    return children[index];
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+    }
+}
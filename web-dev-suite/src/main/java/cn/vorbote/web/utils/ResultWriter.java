@@ -0,0 +1,214 @@
+package cn.vorbote.web.utils;
+
+import cn.vorbote.web.codec.JsonDataEncoder;
+import cn.vorbote.web.codec.JsonResultEncoder;
+import cn.vorbote.web.codec.JsonWriter;
+import cn.vorbote.web.codec.ResultEncoder;
+import cn.vorbote.web.codec.ResultTemplate;
+import cn.vorbote.web.filter.LatencyFilter;
+import cn.vorbote.web.model.ResponseResult;
+import cn.vorbote.web.model.StreamingResult;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes a {@link ResponseResult} as the JSON body of a response, for filters answering a request before it reaches
+ * the framework and its message converters, or in the binary format the request accepts, and a
+ * {@link StreamingResult} for handlers exporting large results.<br>
+ * The methods taking the request also publish the code of the result with
+ * {@link LatencyFilter#setResultCode(javax.servlet.ServletRequest, int)}, so the requests are counted by result code
+ * rather than by HTTP status.
+ *
+ * @author vorbote
+ */
+@Slf4j
+public final class ResultWriter {
+
+    /**
+     * The HTTP trailer holding the final code of a streaming result.
+     */
+    public static final String CODE_TRAILER = "X-Result-Code";
+
+    /**
+     * The HTTP trailer holding the final message of a streaming result.
+     */
+    public static final String MESSAGE_TRAILER = "X-Result-Message";
+
+    /**
+     * Private constructor, to hide the constructor to prevent some build a instance of this util class.
+     */
+    private ResultWriter() {
+    }
+
+    /**
+     * Answer a request with a result. The response is reset first, the status of the response is set to the given
+     * one, the body is the result as JSON.
+     *
+     * @param response The response, which must not be committed.
+     * @param status   The HTTP status.
+     * @param result   The result.
+     * @throws IOException If the body cannot be written.
+     */
+    public static void write(HttpServletResponse response, int status, ResponseResult<?> result) throws IOException {
+        ResultTemplate template = result.template();
+        if (template != null && template.matches(result)) {
+            write(response, status, template, result.timestamp());
+            return;
+        }
+        JsonWriter writer = JsonWriter.accumulating();
+        JsonResultEncoder.simple().encode(result, writer);
+        response.resetBuffer();
+        response.setStatus(status);
+        response.setContentType(JsonResultEncoder.CONTENT_TYPE);
+        response.setContentLength(writer.size());
+        writer.writeTo(response.getOutputStream());
+    }
+
+    /**
+     * Answer a request with a result in the format negotiated from its {@code Accept} header, see
+     * {@link ResultEncoder#negotiate(String)}: CBOR or MessagePack for the clients preferring them, JSON otherwise.
+     * The code of the result is published to the request.
+     *
+     * @param request  The request.
+     * @param response The response, which must not be committed.
+     * @param status   The HTTP status.
+     * @param result   The result.
+     * @throws IOException If the body cannot be written.
+     */
+    public static void write(HttpServletRequest request, HttpServletResponse response, int status,
+                             ResponseResult<?> result) throws IOException {
+        LatencyFilter.setResultCode(request, result.code());
+        ResultEncoder encoder = ResultEncoder.negotiate(request.getHeader("Accept"));
+        response.addHeader("Vary", "Accept");
+        if (encoder instanceof JsonResultEncoder) {
+            write(response, status, result);
+            return;
+        }
+        byte[] body = encoder.toBytes(result);
+        response.resetBuffer();
+        response.setStatus(status);
+        response.setContentType(encoder.getContentType());
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    /**
+     * Answer a request with a constant result. The response is reset first, the status of the response is set to the
+     * given one, the body is the template with the timestamp.
+     *
+     * @param response  The response, which must not be committed.
+     * @param status    The HTTP status.
+     * @param template  The template of the result.
+     * @param timestamp The timestamp of the result.
+     * @throws IOException If the body cannot be written.
+     */
+    public static void write(HttpServletResponse response, int status, ResultTemplate template, long timestamp)
+            throws IOException {
+        byte[] body = template.toBytes(timestamp);
+        response.resetBuffer();
+        response.setStatus(status);
+        response.setContentType(JsonResultEncoder.CONTENT_TYPE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    /**
+     * Answer a request with a constant result as JSON, see {@link #write(HttpServletResponse, int, ResultTemplate,
+     * long)}, and publish the code of the template to the request.
+     *
+     * @param request   The request.
+     * @param response  The response, which must not be committed.
+     * @param status    The HTTP status.
+     * @param template  The template of the result.
+     * @param timestamp The timestamp of the result.
+     * @throws IOException If the body cannot be written.
+     */
+    public static void write(HttpServletRequest request, HttpServletResponse response, int status,
+                             ResultTemplate template, long timestamp) throws IOException {
+        LatencyFilter.setResultCode(request, template.getCode());
+        write(response, status, template, timestamp);
+    }
+
+    /**
+     * Convert a result to JSON, with the fields in declaration order, see {@link JsonDataEncoder#simple()} for how the
+     * data is written.
+     *
+     * @param result The result.
+     * @return The JSON text.
+     */
+    public static String toJson(ResponseResult<?> result) {
+        return new String(JsonResultEncoder.simple().toBytes(result), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Answer a request with a streaming result. The body is sent with chunked transfer encoding and flushed after
+     * every batch of elements, see {@link JsonResultEncoder#encode(StreamingResult, java.io.OutputStream)}. The final
+     * code and message are also sent as the HTTP trailers {@value #CODE_TRAILER} and {@value #MESSAGE_TRAILER} when
+     * the container supports trailers on this response. The code of the result only goes in the body and the trailers,
+     * the HTTP status is sent before the first element and is usually {@link HttpServletResponse#SC_OK}. The result is
+     * closed once written.
+     *
+     * @param response The response, which must not be committed.
+     * @param status   The HTTP status.
+     * @param result   The streaming result.
+     * @throws IOException If the body cannot be written.
+     */
+    public static void stream(HttpServletResponse response, int status, StreamingResult<?> result)
+            throws IOException {
+        try {
+            response.resetBuffer();
+            response.setStatus(status);
+            response.setContentType(JsonResultEncoder.CONTENT_TYPE);
+            try {
+                response.setTrailerFields(() -> trailers(result));
+                response.setHeader("Trailer", CODE_TRAILER + ", " + MESSAGE_TRAILER);
+            } catch (IllegalStateException | UnsupportedOperationException e) {
+                log.debug("Trailers are not supported on this response: {}", e.getMessage());
+            }
+            JsonResultEncoder.simple().encode(result, response.getOutputStream());
+            if (result.failure() != null) {
+                log.error("Streaming result cut short with code {}", result.code(), result.failure());
+            }
+        } finally {
+            try {
+                result.close();
+            } catch (Exception e) {
+                log.warn("Failed to close the source of a streaming result", e);
+            }
+        }
+    }
+
+    /**
+     * Answer a request with a streaming result, see {@link #stream(HttpServletResponse, int, StreamingResult)}, and
+     * publish its final code to the request once written.
+     *
+     * @param request  The request.
+     * @param response The response, which must not be committed.
+     * @param status   The HTTP status.
+     * @param result   The streaming result.
+     * @throws IOException If the body cannot be written.
+     */
+    public static void stream(HttpServletRequest request, HttpServletResponse response, int status,
+                              StreamingResult<?> result) throws IOException {
+        try {
+            stream(response, status, result);
+        } finally {
+            LatencyFilter.setResultCode(request, result.code());
+        }
+    }
+
+    private static Map<String, String> trailers(StreamingResult<?> result) {
+        Map<String, String> trailers = new HashMap<>(4);
+        trailers.put(CODE_TRAILER, Integer.toString(result.code()));
+        if (result.message() != null) {
+            trailers.put(MESSAGE_TRAILER, result.message().replace('\r', ' ').replace('\n', ' '));
+        }
+        return trailers;
+    }
+}
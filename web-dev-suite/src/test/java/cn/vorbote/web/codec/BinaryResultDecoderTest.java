@@ -0,0 +1,181 @@
+package cn.vorbote.web.codec;
+
+import cn.vorbote.web.model.ResponseResult;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Round trips of the binary envelopes and decoding of malformed or malicious input, which must always end with an
+ * {@link IllegalArgumentException}, never with a {@link StackOverflowError} or an allocation of the declared size.
+ *
+ * @author vorbote
+ */
+public class BinaryResultDecoderTest {
+
+    private static final int DEPTH_BOMB = 100_000;
+
+    @Test
+    public void roundTripsEveryFormat() {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("small", 5);
+        data.put("negative", -1000);
+        data.put("long", 1L << 40);
+        data.put("min", Long.MIN_VALUE);
+        data.put("text", "héllo 世界 😀");
+        data.put("list", Arrays.asList(1, null, true, 2.5, "x"));
+        data.put("bytes", new byte[]{1, 2, 3});
+        for (BinaryFormat format : BinaryFormat.values()) {
+            ResponseResult<Object> result = new ResponseResult<>(200, data, 1234567890123L, "ok");
+            byte[] bytes = BinaryResultEncoder.of(format).toBytes(result);
+            ResponseResult<Object> decoded = new BinaryResultDecoder(format).decode(bytes);
+
+            assertEquals(200, decoded.code());
+            assertEquals(1234567890123L, decoded.timestamp());
+            assertEquals("ok", decoded.message());
+            Map<?, ?> decodedData = (Map<?, ?>) decoded.data();
+            assertEquals(5, decodedData.get("small"));
+            assertEquals(-1000, decodedData.get("negative"));
+            assertEquals(1L << 40, decodedData.get("long"));
+            assertEquals(Long.MIN_VALUE, decodedData.get("min"));
+            assertEquals(data.get("text"), decodedData.get("text"));
+            assertEquals(data.get("list"), decodedData.get("list"));
+            assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) decodedData.get("bytes"));
+        }
+    }
+
+    @Test
+    public void roundTripsNullDataAndMessage() {
+        for (BinaryFormat format : BinaryFormat.values()) {
+            byte[] bytes = BinaryResultEncoder.of(format).toBytes(new ResponseResult<>(500, null, 1L, null));
+            ResponseResult<Object> decoded = new BinaryResultDecoder(format).decode(bytes);
+
+            assertEquals(500, decoded.code());
+            assertNull(decoded.data());
+            assertNull(decoded.message());
+        }
+    }
+
+    @Test
+    public void skipsLongRunsOfCborTags() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(0xa4);
+        writeCborText(bytes, "code");
+        for (int i = 0; i < DEPTH_BOMB; i++) {
+            bytes.write(0xc0);
+        }
+        bytes.write(0x18);
+        bytes.write(200);
+        writeCborText(bytes, "data");
+        bytes.write(0xf6);
+        writeCborText(bytes, "timestamp");
+        bytes.write(0x01);
+        writeCborText(bytes, "message");
+        bytes.write(0xf6);
+
+        ResponseResult<Object> decoded = new BinaryResultDecoder(BinaryFormat.CBOR).decode(bytes.toByteArray());
+
+        assertEquals(200, decoded.code());
+    }
+
+    @Test
+    public void rejectsADanglingRunOfCborTags() {
+        byte[] bytes = new byte[DEPTH_BOMB];
+        Arrays.fill(bytes, (byte) 0xc0);
+
+        assertMalformed(BinaryFormat.CBOR, bytes);
+    }
+
+    @Test
+    public void rejectsDeeplyNestedArrays() {
+        byte[] cbor = new byte[DEPTH_BOMB];
+        Arrays.fill(cbor, (byte) 0x81);
+        byte[] indefiniteCbor = new byte[DEPTH_BOMB];
+        Arrays.fill(indefiniteCbor, (byte) 0x9f);
+        byte[] messagePack = new byte[DEPTH_BOMB];
+        Arrays.fill(messagePack, (byte) 0x91);
+
+        assertMalformed(BinaryFormat.CBOR, cbor);
+        assertMalformed(BinaryFormat.CBOR, indefiniteCbor);
+        assertMalformed(BinaryFormat.MESSAGE_PACK, messagePack);
+    }
+
+    @Test
+    public void rejectsDeeplyNestedMaps() {
+        ByteArrayOutputStream cbor = new ByteArrayOutputStream();
+        ByteArrayOutputStream messagePack = new ByteArrayOutputStream();
+        for (int i = 0; i < DEPTH_BOMB; i++) {
+            cbor.write(0xa1);
+            cbor.write(0x61);
+            cbor.write('k');
+            messagePack.write(0x81);
+            messagePack.write(0xa1);
+            messagePack.write('k');
+        }
+
+        assertMalformed(BinaryFormat.CBOR, cbor.toByteArray());
+        assertMalformed(BinaryFormat.MESSAGE_PACK, messagePack.toByteArray());
+    }
+
+    @Test
+    public void rejectsLengthsBeyondTheInput() {
+        // An array, a string and a byte string each declaring about 2^32 entries or bytes.
+        assertMalformed(BinaryFormat.CBOR, new byte[]{(byte) 0x9a, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff});
+        assertMalformed(BinaryFormat.CBOR, new byte[]{0x7a, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff});
+        assertMalformed(BinaryFormat.CBOR, new byte[]{0x5b, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff,
+                (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff});
+        assertMalformed(BinaryFormat.MESSAGE_PACK,
+                new byte[]{(byte) 0xdd, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff});
+        assertMalformed(BinaryFormat.MESSAGE_PACK,
+                new byte[]{(byte) 0xdb, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff});
+    }
+
+    @Test
+    public void rejectsTruncatedAndTrailingBytes() {
+        for (BinaryFormat format : BinaryFormat.values()) {
+            byte[] bytes = BinaryResultEncoder.of(format).toBytes(new ResponseResult<>(200, "data", 1L, "ok"));
+            byte[] trailing = Arrays.copyOf(bytes, bytes.length + 1);
+
+            for (int length = 0; length < bytes.length; length++) {
+                assertMalformed(format, Arrays.copyOf(bytes, length));
+            }
+            assertMalformed(format, trailing);
+        }
+    }
+
+    @Test
+    public void rejectsEnvelopesWhichAreNotResults() {
+        List<byte[]> cbor = Arrays.asList(new byte[]{(byte) 0x80}, new byte[]{(byte) 0xa0},
+                new byte[]{(byte) 0xa2, 0x64, 'c', 'o', 'd', 'e', 0x61, 'x', 0x69, 't', 'i', 'm', 'e', 's', 't', 'a',
+                        'm', 'p', 0x00});
+        for (byte[] bytes : cbor) {
+            assertMalformed(BinaryFormat.CBOR, bytes);
+        }
+        assertMalformed(BinaryFormat.MESSAGE_PACK, new byte[]{(byte) 0xc1});
+    }
+
+    private static void writeCborText(ByteArrayOutputStream out, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.write(0x60 | bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void assertMalformed(BinaryFormat format, byte[] bytes) {
+        try {
+            new BinaryResultDecoder(format).decode(bytes);
+            fail("Decoded malformed input " + Arrays.toString(Arrays.copyOf(bytes, Math.min(bytes.length, 16))));
+        } catch (IllegalArgumentException expected) {
+            // Malformed input is reported as such.
+        }
+    }
+}